@@ -0,0 +1,177 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Global registry assigning dense int IDs to block names.
+ *
+ * Color and render flags are precomputed into parallel arrays indexed by ID,
+ * so once a palette has been resolved to IDs the per-block path is plain
+ * array access - no locks, no string hashing.
+ *
+ * Lookups of known names are lock-free (ConcurrentHashMap read). Registering a
+ * new name takes a lock, but that happens once per distinct block name for
+ * the lifetime of the server. The ID arrays are copy-on-write and published
+ * before the name becomes visible, so any thread holding an ID can read it.
+ */
+public final class BlockRegistry {
+    private static final Logger LOGGER = Logger.getLogger(BlockRegistry.class.getName());
+
+    public static final int FLAG_AIR = 1;
+    public static final int FLAG_WATER = 1 << 1;
+    public static final int FLAG_TRANSPARENT = 1 << 2;
+
+    /**
+     * ID of minecraft:air (always registered first).
+     */
+    public static final int AIR = 0;
+
+    /**
+     * Highest assignable ID; IDs are packed into 16 bits by {@link MinecraftChunk}.
+     */
+    public static final int MAX_ID = 0xFFFF;
+
+    // Default color for unknown blocks (gray)
+    private static final int DEFAULT_COLOR = 0x808080;
+
+    private static final BlockRegistry INSTANCE = new BlockRegistry();
+
+    private final ConcurrentHashMap<String, Integer> idsByName = new ConcurrentHashMap<>(512);
+    private final Object registerLock = new Object();
+
+    // Copy-on-write, indexed by ID
+    private volatile BlockType[] types = new BlockType[0];
+    private volatile int[] colors = new int[0];
+    private volatile byte[] flags = new byte[0];
+
+    private BlockRegistry() {
+        // Initialize common block types with approximate colors
+        register("minecraft:air", 0x000000);
+        register("minecraft:stone", 0x7F7F7F);
+        register("minecraft:grass_block", 0x7CBD6B);
+        register("minecraft:dirt", 0x8B5A3C);
+        register("minecraft:cobblestone", 0x828282);
+        register("minecraft:oak_planks", 0x9C7F4E);
+        register("minecraft:sand", 0xDBD3A0);
+        register("minecraft:gravel", 0x837B71);
+        register("minecraft:oak_log", 0x6E5434);
+        register("minecraft:oak_leaves", 0x52802E);
+        register("minecraft:water", 0x3F76E4);
+        register("minecraft:lava", 0xEA5C0F);
+        register("minecraft:snow", 0xFFFFFE);
+        register("minecraft:ice", 0x7DACFE);
+        register("minecraft:clay", 0xA0A7B4);
+        register("minecraft:pumpkin", 0xC07615);
+        register("minecraft:netherrack", 0x723232);
+        register("minecraft:soul_sand", 0x554134);
+        register("minecraft:glowstone", 0xFFBC5E);
+        register("minecraft:white_wool", 0xE9ECEC);
+        register("minecraft:glass", 0xC0F0FF);
+        register("minecraft:deepslate", 0x4D4D4D);
+        register("minecraft:andesite", 0x868686);
+        register("minecraft:diorite", 0xC8C8C8);
+        register("minecraft:granite", 0x9B6D5B);
+    }
+
+    public static BlockRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the ID for a block name, registering it with the default color if unseen.
+     */
+    public int getId(String name) {
+        Integer id = idsByName.get(name);
+        if (id != null) {
+            return id;
+        }
+        return register(name, DEFAULT_COLOR);
+    }
+
+    /**
+     * Resolve a section palette to IDs (one lookup per palette entry).
+     */
+    public int[] resolve(String[] palette) {
+        int[] ids = new int[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            ids[i] = getId(palette[i]);
+        }
+        return ids;
+    }
+
+    private int register(String name, int color) {
+        synchronized (registerLock) {
+            Integer existing = idsByName.get(name);
+            if (existing != null) {
+                return existing;
+            }
+
+            int id = types.length;
+            if (id > MAX_ID) {
+                LOGGER.warning("Block registry full, treating " + name + " as air");
+                return AIR;
+            }
+            BlockType type = new BlockType(name, color, id);
+
+            BlockType[] newTypes = Arrays.copyOf(types, id + 1);
+            int[] newColors = Arrays.copyOf(colors, id + 1);
+            byte[] newFlags = Arrays.copyOf(flags, id + 1);
+            newTypes[id] = type;
+            newColors[id] = color;
+            newFlags[id] = (byte) ((type.isAir() ? FLAG_AIR : 0)
+                    | (type.isWater() ? FLAG_WATER : 0)
+                    | (type.isTransparent() ? FLAG_TRANSPARENT : 0));
+
+            // Publish arrays before the name so readers never see an ID past the arrays
+            flags = newFlags;
+            colors = newColors;
+            types = newTypes;
+            idsByName.put(name, id);
+
+            if (color == DEFAULT_COLOR) {
+                // Log new block types for debugging (only once per type)
+                LOGGER.fine("Registered unknown block type: " + name);
+            }
+            return id;
+        }
+    }
+
+    public BlockType getType(int id) {
+        return types[id];
+    }
+
+    public int getColor(int id) {
+        return colors[id];
+    }
+
+    public int getFlags(int id) {
+        return flags[id];
+    }
+
+    public boolean isAir(int id) {
+        return (flags[id] & FLAG_AIR) != 0;
+    }
+
+    /**
+     * Snapshot of the flags array for tight loops (valid for all IDs obtained so far).
+     */
+    public byte[] flagsSnapshot() {
+        return flags;
+    }
+
+    /**
+     * Snapshot of the colors array for tight loops (valid for all IDs obtained so far).
+     */
+    public int[] colorsSnapshot() {
+        return colors;
+    }
+
+    /**
+     * Number of registered block types.
+     */
+    public int size() {
+        return types.length;
+    }
+}
@@ -10,10 +10,19 @@ public class BlockType {
     private final boolean isAir;
     private final boolean isWater;
     private final boolean isTransparent;
+    private final int registryId;
 
     public BlockType(String id, int color) {
+        this(id, color, -1);
+    }
+
+    /**
+     * Create a block type with a dense numeric ID (see {@link BlockRegistry}).
+     */
+    public BlockType(String id, int color, int registryId) {
         this.id = id;
         this.color = color;
+        this.registryId = registryId;
         this.isAir = id.contains("air");
         this.isWater = id.contains("water");
         this.isTransparent = id.contains("glass") || id.contains("ice");
@@ -38,4 +47,11 @@ public class BlockType {
     public boolean isTransparent() {
         return isTransparent;
     }
+
+    /**
+     * Dense numeric ID assigned by {@link BlockRegistry}, or -1 if unregistered.
+     */
+    public int getRegistryId() {
+        return registryId;
+    }
 }
@@ -0,0 +1,299 @@
+package dev.ked.quetzalmap.core.world;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Decoded chunk cache shared by every region of every world.
+ *
+ * Bounded by bytes rather than entry count: each chunk is weighed by its
+ * {@link MinecraftChunk#getMemoryFootprint()}, so the budget holds no matter
+ * how regions are distributed across worlds. Hits, misses, evictions and
+ * resident bytes are tracked per world.
+ *
+ * With {@link #enableOffHeap()} the budget is spent in a {@link SurfaceArena}
+ * instead of the heap. The cache holds one reference to each off-heap chunk
+ * and every chunk it hands out carries another for the caller, so a slot only
+ * goes back to the arena once it is evicted and no reader is left.
+ *
+ * Every chunk also has a generation that {@link #markDirty} bumps. A chunk is
+ * only cached if no dirty event arrived while it was being decoded, and
+ * renderers record the generation they used so late results can be discarded.
+ */
+public final class ChunkCache {
+    private static final Logger LOGGER = Logger.getLogger(ChunkCache.class.getName());
+    private static final int EXPIRE_MINUTES = 5;
+    // Past this many tracked chunks, generations collapse into the floor
+    private static final int MAX_TRACKED_GENERATIONS = 1 << 18;
+
+    private final Cache<ChunkKey, MinecraftChunk> cache;
+    private final ConcurrentHashMap<String, WorldCounters> counters = new ConcurrentHashMap<>();
+    private volatile SurfaceArena arena; // null = surfaces on heap
+
+    // Generation of every chunk that was marked dirty; all others are at the floor.
+    // Pruning raises the floor first, so a chunk's generation never goes backwards.
+    private final ConcurrentHashMap<ChunkKey, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong generationClock = new AtomicLong();
+    private volatile long generationFloor;
+
+    public ChunkCache(long maximumBytes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((ChunkKey key, MinecraftChunk chunk) -> (int) Math.min(Integer.MAX_VALUE, chunk.getMemoryFootprint()))
+                .expireAfterAccess(EXPIRE_MINUTES, TimeUnit.MINUTES)
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+
+        LOGGER.info("ChunkCache initialized: budget=" + (maximumBytes >> 20) + "MB");
+    }
+
+    /**
+     * Get a cached chunk, or null if it isn't cached.
+     * The caller owns a reference to the chunk and must {@link MinecraftChunk#release() release} it.
+     */
+    public MinecraftChunk get(String world, int chunkX, int chunkZ) {
+        MinecraftChunk chunk = cache.getIfPresent(new ChunkKey(world, chunkX, chunkZ));
+        if (chunk != null && !chunk.retain()) {
+            chunk = null; // Evicted and freed since the lookup
+        }
+        WorldCounters worldCounters = countersFor(world);
+        if (chunk != null) {
+            worldCounters.hits.increment();
+        } else {
+            worldCounters.misses.increment();
+        }
+        return chunk;
+    }
+
+    /**
+     * Cache a chunk. The cache takes its own reference; the caller keeps theirs.
+     */
+    public void put(String world, int chunkX, int chunkZ, MinecraftChunk chunk) {
+        if (!chunk.retain()) {
+            throw new IllegalStateException("Caching released chunk " + chunkX + "," + chunkZ);
+        }
+        if (cache.asMap().put(new ChunkKey(world, chunkX, chunkZ), chunk) == chunk) {
+            chunk.release(); // Same instance re-put: the cache already held a reference
+            return;
+        }
+        WorldCounters worldCounters = countersFor(world);
+        worldCounters.bytes.add(chunk.getMemoryFootprint());
+        worldCounters.chunks.increment();
+    }
+
+    /**
+     * Cache a chunk decoded at {@code generation}, unless the chunk was marked
+     * dirty in the meantime (then it isn't cached, or is dropped again, and the
+     * next access decodes it afresh). The caller's reference stays valid either way.
+     *
+     * @param generation {@link #getGeneration} read before decoding started
+     */
+    public void put(String world, int chunkX, int chunkZ, MinecraftChunk chunk, long generation) {
+        if (getGeneration(world, chunkX, chunkZ) != generation) {
+            return;
+        }
+        put(world, chunkX, chunkZ, chunk);
+        // markDirty bumps before it invalidates, so either it removes our entry or we see the bump
+        if (getGeneration(world, chunkX, chunkZ) != generation) {
+            cache.asMap().remove(new ChunkKey(world, chunkX, chunkZ), chunk);
+        }
+    }
+
+    /**
+     * Current generation of a chunk. Never decreases.
+     */
+    public long getGeneration(String world, int chunkX, int chunkZ) {
+        // Entry before floor: a concurrent prune raises the floor before dropping entries
+        Long generation = generations.get(new ChunkKey(world, chunkX, chunkZ));
+        long floor = generationFloor;
+        return generation != null ? Math.max(generation, floor) : floor;
+    }
+
+    /**
+     * Record that a chunk changed: bump its generation and drop its decoded entry.
+     *
+     * @return the new generation
+     */
+    public long markDirty(String world, int chunkX, int chunkZ) {
+        ChunkKey key = new ChunkKey(world, chunkX, chunkZ);
+        long generation = generationClock.incrementAndGet();
+        generations.merge(key, generation, Math::max);
+        cache.invalidate(key);
+
+        if (generations.size() > MAX_TRACKED_GENERATIONS) {
+            pruneGenerations();
+        }
+        return generation;
+    }
+
+    /**
+     * Forget per-chunk generations by raising every chunk to the current clock.
+     * Renders in flight then look stale and simply aren't cached.
+     */
+    private synchronized void pruneGenerations() {
+        if (generations.size() > MAX_TRACKED_GENERATIONS) {
+            long floor = generationClock.get();
+            generationFloor = floor;
+            // Entries bumped concurrently are above the floor and stay
+            generations.values().removeIf(generation -> generation <= floor);
+            LOGGER.fine("Pruned chunk generations at " + generationFloor);
+        }
+    }
+
+    public void invalidate(String world, int chunkX, int chunkZ) {
+        cache.invalidate(new ChunkKey(world, chunkX, chunkZ));
+    }
+
+    /**
+     * Drop every cached chunk of one region.
+     */
+    public void invalidateRegion(String world, int regionX, int regionZ) {
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            cache.invalidate(new ChunkKey(world, (regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5)));
+        }
+    }
+
+    /**
+     * Drop every cached chunk of one world.
+     */
+    public void invalidateWorld(String world) {
+        cache.asMap().keySet().removeIf(key -> key.world().equals(world));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Store newly decoded surfaces off-heap, in an arena sized to the cache budget.
+     * Chunks already cached stay on heap until evicted.
+     */
+    public synchronized void enableOffHeap() {
+        if (arena == null) {
+            arena = new SurfaceArena(getMaximumBytes());
+        }
+    }
+
+    /**
+     * Arena new chunks should be parsed into, or null for heap storage.
+     */
+    public SurfaceArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Change the byte budget at runtime; shrinking evicts immediately.
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        SurfaceArena arena = this.arena;
+        if (arena != null) {
+            arena.setMaximumBytes(maximumBytes);
+        }
+        cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximumBytes));
+        LOGGER.info("ChunkCache budget set to " + (maximumBytes >> 20) + "MB");
+    }
+
+    public long getMaximumBytes() {
+        return cache.policy().eviction().map(eviction -> eviction.getMaximum()).orElse(Long.MAX_VALUE);
+    }
+
+    /**
+     * Bytes currently held, as seen by the weigher.
+     */
+    public long getWeightedSize() {
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    /**
+     * Per-world statistics, sorted by world.
+     */
+    public Map<String, WorldStats> getWorldStats() {
+        Map<String, WorldStats> stats = new TreeMap<>();
+        counters.forEach((world, c) -> stats.put(world, c.snapshot()));
+        return stats;
+    }
+
+    /**
+     * Statistics across all worlds.
+     */
+    public CacheStats getStats() {
+        var stats = cache.stats();
+        SurfaceArena arena = this.arena;
+        return new CacheStats(stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount(),
+                cache.estimatedSize(), getWeightedSize(), getMaximumBytes(),
+                arena != null ? arena.getStats() : null);
+    }
+
+    private WorldCounters countersFor(String world) {
+        return counters.computeIfAbsent(world, w -> new WorldCounters());
+    }
+
+    private void onRemoval(ChunkKey key, MinecraftChunk chunk, RemovalCause cause) {
+        if (key == null || chunk == null) {
+            return;
+        }
+        WorldCounters worldCounters = countersFor(key.world());
+        worldCounters.bytes.add(-chunk.getMemoryFootprint());
+        worldCounters.chunks.decrement();
+        if (cause.wasEvicted()) {
+            worldCounters.evictions.increment();
+        }
+
+        // Drop the cache's reference; readers still holding the chunk keep the slot alive
+        chunk.release();
+    }
+
+    private record ChunkKey(String world, int chunkX, int chunkZ) {
+    }
+
+    private static final class WorldCounters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder chunks = new LongAdder();
+
+        WorldStats snapshot() {
+            return new WorldStats(hits.sum(), misses.sum(), evictions.sum(), chunks.sum(), bytes.sum());
+        }
+    }
+
+    /**
+     * Cache statistics for one world.
+     */
+    public record WorldStats(long hits, long misses, long evictions, long chunks, long bytes) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("WorldStats[hits=%d, misses=%d, hitRate=%.2f%%, evictions=%d, chunks=%d, bytes=%dKB]",
+                    hits, misses, hitRate() * 100, evictions, chunks, bytes >> 10);
+        }
+    }
+
+    /**
+     * Cache statistics across all worlds.
+     */
+    public record CacheStats(long hitCount, long missCount, double hitRate, long evictionCount,
+                             long chunks, long bytes, long maximumBytes, SurfaceArena.ArenaStats offHeap) {
+        @Override
+        public String toString() {
+            return String.format("ChunkCacheStats[hits=%d, misses=%d, hitRate=%.2f%%, evictions=%d, chunks=%d, bytes=%dMB/%dMB%s]",
+                    hitCount, missCount, hitRate * 100, evictionCount, chunks, bytes >> 20, maximumBytes >> 20,
+                    offHeap != null ? ", offHeap=" + offHeap : "");
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package dev.ked.quetzalmap.core.world;
+
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses chunk payloads for every compression type a region file can hold.
+ *
+ * One instance per thread (see {@link #get()}) owns its output buffer, so
+ * decompressing a chunk allocates no new output array. Inflaters hold native
+ * zlib state that only {@link Inflater#end()} frees promptly, so rather than
+ * living and dying with threads they are borrowed from a small bounded pool;
+ * surplus ones are ended on return.
+ *
+ * Input in a direct (e.g. mapped) buffer is first copied into a per-thread
+ * heap buffer. Native code (zlib, the JNI LZ4 decoder) touching a region file
+ * that was truncated underneath its mapping takes down the JVM with SIGBUS,
+ * whereas the same fault during a Java copy surfaces as an InternalError.
+ *
+ * The output buffer is reused by the next call on the same thread, so callers
+ * must finish with it (e.g. parse it) before decompressing another chunk, then
+ * call {@link #trim()}. Output is capped at {@link #MAX_DECOMPRESSED_SIZE}; a
+ * chunk that inflates past it is rejected as corrupt.
+ */
+final class ChunkDecompressor {
+    static final byte GZIP = 1;
+    static final byte ZLIB = 2;
+    static final byte NONE = 3;
+    static final byte LZ4 = 4;
+
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+    // Larger buffers are released after use so one huge chunk doesn't pin memory per thread
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    // Far above any real chunk's NBT; stops a corrupt or hostile payload from exhausting the heap
+    static final int MAX_DECOMPRESSED_SIZE = 16 * 1024 * 1024;
+
+    // GZip header flags (RFC 1952)
+    private static final int FHCRC = 1 << 1;
+    private static final int FEXTRA = 1 << 2;
+    private static final int FNAME = 1 << 3;
+    private static final int FCOMMENT = 1 << 4;
+
+    // LZ4BlockOutputStream framing (lz4-java): "LZ4Block" + token + 3 little-endian ints
+    private static final long LZ4_BLOCK_MAGIC = 0x4C5A34426C6F636BL;
+    private static final int LZ4_BLOCK_HEADER_SIZE = 8 + 1 + 4 + 4 + 4;
+    private static final int LZ4_METHOD_RAW = 0x10;
+    private static final int LZ4_METHOD_LZ4 = 0x20;
+
+    private static final LZ4SafeDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    private static final ThreadLocal<ChunkDecompressor> LOCAL = ThreadLocal.withInitial(ChunkDecompressor::new);
+
+    private static final int MAX_POOLED_INFLATERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<Inflater> ZLIB_INFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_INFLATERS);
+    private static final BlockingQueue<Inflater> RAW_INFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_INFLATERS);
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] input = new byte[INITIAL_BUFFER_SIZE];
+
+    private ChunkDecompressor() {
+    }
+
+    /**
+     * Get this thread's decompressor.
+     */
+    static ChunkDecompressor get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Free the native state of every pooled Inflater (e.g. on shutdown).
+     * Inflaters in use are unaffected and are pooled again when returned.
+     */
+    static void endPooledInflaters() {
+        for (BlockingQueue<Inflater> pool : List.of(ZLIB_INFLATERS, RAW_INFLATERS)) {
+            Inflater inflater;
+            while ((inflater = pool.poll()) != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Decompress a payload into {@link #buffer()}.
+     * Consumes {@code in} from its position to its limit.
+     *
+     * @return number of decompressed bytes at the start of {@link #buffer()}
+     * @throws IOException if the type is unknown, the payload is corrupt or it
+     *                     decompresses to more than {@link #MAX_DECOMPRESSED_SIZE}
+     * @throws InternalError if {@code in} is mapped and the file shrank underneath it
+     */
+    int decompress(byte compressionType, ByteBuffer in) throws IOException {
+        if (in.isDirect()) {
+            in = copyToHeap(in);
+        }
+
+        return switch (compressionType) {
+            case GZIP -> {
+                skipGzipHeader(in);
+                yield inflate(RAW_INFLATERS, true, in);
+            }
+            case ZLIB -> inflate(ZLIB_INFLATERS, false, in);
+            case NONE -> {
+                int length = in.remaining();
+                ensureCapacity(length);
+                in.get(buffer, 0, length);
+                yield length;
+            }
+            case LZ4 -> decompressLz4(in);
+            default -> throw new IOException("Unsupported compression type: " + compressionType);
+        };
+    }
+
+    /**
+     * Drop buffers that one oversized chunk grew past the retained size.
+     * Call once done with {@link #buffer()}.
+     */
+    void trim() {
+        if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+        if (input.length > MAX_RETAINED_BUFFER_SIZE) {
+            input = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * Copy the rest of a direct buffer into this thread's input buffer.
+     */
+    private ByteBuffer copyToHeap(ByteBuffer in) {
+        int length = in.remaining();
+        if (input.length < length) {
+            input = new byte[length];
+        }
+        in.get(input, 0, length);
+        return ByteBuffer.wrap(input, 0, length);
+    }
+
+    /**
+     * Output of the last {@link #decompress} call.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    private int inflate(BlockingQueue<Inflater> pool, boolean nowrap, ByteBuffer in) throws IOException {
+        Inflater inflater = pool.poll();
+        if (inflater == null) {
+            inflater = new Inflater(nowrap);
+        }
+        try {
+            return inflate(inflater, in);
+        } finally {
+            inflater.reset();
+            if (!pool.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private int inflate(Inflater inflater, ByteBuffer in) throws IOException {
+        inflater.setInput(in);
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    ensureCapacity(length + 1);
+                }
+                int n = inflater.inflate(buffer, length, buffer.length - length);
+                if (n == 0) {
+                    if (inflater.needsInput()) {
+                        throw new EOFException("Unexpected end of compressed chunk data");
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Compressed chunk data requires a preset dictionary");
+                    }
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed chunk data: " + e.getMessage(), e);
+        }
+        return length;
+    }
+
+    /**
+     * Advance past a GZip member header so the deflate body can go to a raw Inflater.
+     * The trailer (CRC32 + size) is not verified; the NBT parser rejects garbage.
+     */
+    private static void skipGzipHeader(ByteBuffer in) throws IOException {
+        try {
+            if ((in.get() & 0xFF) != 0x1F || (in.get() & 0xFF) != 0x8B) {
+                throw new IOException("Not in GZip format");
+            }
+            if (in.get() != 8) {
+                throw new IOException("Unsupported GZip compression method");
+            }
+            int flags = in.get() & 0xFF;
+            in.position(in.position() + 6); // MTIME, XFL, OS
+
+            if ((flags & FEXTRA) != 0) {
+                int extraLength = (in.get() & 0xFF) | (in.get() & 0xFF) << 8;
+                in.position(in.position() + extraLength);
+            }
+            if ((flags & FNAME) != 0) {
+                while (in.get() != 0) {
+                    // Skip zero-terminated file name
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (in.get() != 0) {
+                    // Skip zero-terminated comment
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                in.position(in.position() + 2);
+            }
+        } catch (RuntimeException e) {
+            // BufferUnderflowException / IllegalArgumentException from a truncated header
+            throw new EOFException("Truncated GZip header");
+        }
+    }
+
+    /**
+     * Decode the block framing written by lz4-java's LZ4BlockOutputStream, which
+     * is what the server writes for LZ4 (type 4) chunks. Block checksums are not verified.
+     */
+    private int decompressLz4(ByteBuffer in) throws IOException {
+        ByteBuffer src = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = 0;
+        int length = 0;
+
+        while (src.limit() - pos >= LZ4_BLOCK_HEADER_SIZE) {
+            if (Long.reverseBytes(src.getLong(pos)) != LZ4_BLOCK_MAGIC) {
+                throw new IOException("Invalid LZ4 block magic");
+            }
+
+            int method = src.get(pos + 8) & 0xF0;
+            int compressedLength = src.getInt(pos + 9);
+            int decompressedLength = src.getInt(pos + 13);
+            pos += LZ4_BLOCK_HEADER_SIZE;
+
+            if (decompressedLength == 0) {
+                break; // End mark written by finish()/close()
+            }
+            if (compressedLength < 0 || decompressedLength < 0 || compressedLength > src.limit() - pos) {
+                throw new EOFException("Truncated LZ4 block");
+            }
+
+            ensureCapacity(length + decompressedLength);
+            if (method == LZ4_METHOD_RAW) {
+                if (compressedLength != decompressedLength) {
+                    throw new IOException("Invalid raw LZ4 block length");
+                }
+                src.get(pos, buffer, length, compressedLength);
+            } else if (method == LZ4_METHOD_LZ4) {
+                try {
+                    int n = LZ4_DECOMPRESSOR.decompress(src, pos, compressedLength,
+                            ByteBuffer.wrap(buffer), length, decompressedLength);
+                    if (n != decompressedLength) {
+                        throw new IOException("LZ4 block decompressed to " + n + " bytes, expected " + decompressedLength);
+                    }
+                } catch (LZ4Exception e) {
+                    throw new IOException("Invalid LZ4 block: " + e.getMessage(), e);
+                }
+            } else {
+                throw new IOException("Unsupported LZ4 block method: " + method);
+            }
+
+            pos += compressedLength;
+            length += decompressedLength;
+        }
+
+        in.position(in.position() + pos);
+        return length;
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required > buffer.length) {
+            if (required < 0 || required > MAX_DECOMPRESSED_SIZE) {
+                throw new IOException("Chunk decompresses to more than " + (MAX_DECOMPRESSED_SIZE >> 20) + "MB");
+            }
+            int newSize = (int) Math.min(Math.max(required, buffer.length * 2L), MAX_DECOMPRESSED_SIZE);
+            buffer = Arrays.copyOf(buffer, newSize);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming NBT scanner for chunk surface extraction.
+ *
+ * Walks the decompressed chunk NBT once and only materializes what the map
+ * needs: DataVersion, heightmaps, and each section's Y, palette names and
+ * packed block state data. Everything else (entities, block entities, light,
+ * structures, block properties) is skipped in place without allocating.
+ *
+ * Supports both the 1.18+ layout (root "sections" / "block_states") and the
+ * older "Level" wrapper ("Sections" / "Palette" / "BlockStates").
+ */
+public final class ChunkNbtScanner {
+    private static final int MAX_DEPTH = 512;
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // NBT tag types
+    private static final int TAG_END = 0;
+    private static final int TAG_BYTE = 1;
+    private static final int TAG_SHORT = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_FLOAT = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_BYTE_ARRAY = 7;
+    private static final int TAG_STRING = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_COMPOUND = 10;
+    private static final int TAG_INT_ARRAY = 11;
+    private static final int TAG_LONG_ARRAY = 12;
+
+    // Keys we care about, compared as raw bytes to avoid allocating names
+    private static final byte[] KEY_DATA_VERSION = ascii("DataVersion");
+    private static final byte[] KEY_LEVEL = ascii("Level");
+    private static final byte[] KEY_Y_POS = ascii("yPos");
+    private static final byte[] KEY_SECTIONS = ascii("sections");
+    private static final byte[] KEY_SECTIONS_LEGACY = ascii("Sections");
+    private static final byte[] KEY_HEIGHTMAPS = ascii("Heightmaps");
+    private static final byte[] KEY_Y = ascii("Y");
+    private static final byte[] KEY_BLOCK_STATES = ascii("block_states");
+    private static final byte[] KEY_PALETTE = ascii("palette");
+    private static final byte[] KEY_DATA = ascii("data");
+    private static final byte[] KEY_PALETTE_LEGACY = ascii("Palette");
+    private static final byte[] KEY_BLOCK_STATES_LEGACY = ascii("BlockStates");
+    private static final byte[] KEY_NAME = ascii("Name");
+
+    /**
+     * Receives the parts of a chunk needed for surface extraction.
+     * Callbacks arrive in NBT order, which is not guaranteed to be stable.
+     */
+    public interface Visitor {
+        default void visitDataVersion(int dataVersion) {
+        }
+
+        /**
+         * Called with the chunk's "yPos" (1.18+): the lowest section Y of its
+         * dimension, which heightmap values count up from.
+         */
+        default void visitMinSectionY(int minSectionY) {
+        }
+
+        /**
+         * Called once per section that has a block palette.
+         *
+         * @param sectionY Section Y index (world Y / 16)
+         * @param palette Block names, indexed by palette index
+         * @param data Packed palette indices, or null for single-entry palettes
+         */
+        void visitSection(int sectionY, String[] palette, long[] data);
+
+        /**
+         * Called for each heightmap (e.g. WORLD_SURFACE, OCEAN_FLOOR).
+         */
+        default void visitHeightmap(String type, long[] data) {
+        }
+    }
+
+    private final byte[] buf;
+    private final int limit;
+    private final Visitor visitor;
+    private int pos;
+
+    private ChunkNbtScanner(byte[] buf, int offset, int length, Visitor visitor) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.visitor = visitor;
+    }
+
+    /**
+     * Scan an uncompressed chunk NBT document.
+     *
+     * @throws IOException if the data is truncated or not a chunk compound
+     */
+    public static void scan(byte[] buf, int offset, int length, Visitor visitor) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new IOException("NBT range out of bounds");
+        }
+
+        ChunkNbtScanner scanner = new ChunkNbtScanner(buf, offset, length, visitor);
+        try {
+            scanner.scanRoot();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated chunk NBT", e);
+        }
+    }
+
+    private void scanRoot() throws IOException {
+        if (readByte() != TAG_COMPOUND) {
+            throw new IOException("Chunk NBT root is not a compound");
+        }
+        skipName();
+        scanChunkCompound(1);
+    }
+
+    /**
+     * Scan the chunk root (or the legacy "Level" compound).
+     */
+    private void scanChunkCompound(int depth) throws IOException {
+        checkDepth(depth);
+        int type;
+        while ((type = readByte()) != TAG_END) {
+            int nameLength = readShort();
+            int namePos = pos;
+            pos += nameLength;
+
+            if (type == TAG_INT && nameEquals(namePos, nameLength, KEY_DATA_VERSION)) {
+                visitor.visitDataVersion(readInt());
+            } else if (type == TAG_INT && nameEquals(namePos, nameLength, KEY_Y_POS)) {
+                visitor.visitMinSectionY(readInt());
+            } else if (type == TAG_COMPOUND && nameEquals(namePos, nameLength, KEY_LEVEL)) {
+                scanChunkCompound(depth + 1);
+            } else if (type == TAG_LIST && (nameEquals(namePos, nameLength, KEY_SECTIONS)
+                    || nameEquals(namePos, nameLength, KEY_SECTIONS_LEGACY))) {
+                scanSections(depth + 1);
+            } else if (type == TAG_COMPOUND && nameEquals(namePos, nameLength, KEY_HEIGHTMAPS)) {
+                scanHeightmaps(depth + 1);
+            } else {
+                skipPayload(type, depth + 1);
+            }
+        }
+    }
+
+    private void scanSections(int depth) throws IOException {
+        checkDepth(depth);
+        int elementType = readByte();
+        int count = readInt();
+        if (elementType != TAG_COMPOUND) {
+            skipListElements(elementType, count, depth);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            scanSection(depth + 1);
+        }
+    }
+
+    private void scanSection(int depth) throws IOException {
+        checkDepth(depth);
+        int sectionY = 0;
+        String[] palette = null;
+        long[] data = null;
+
+        int type;
+        while ((type = readByte()) != TAG_END) {
+            int nameLength = readShort();
+            int namePos = pos;
+            pos += nameLength;
+
+            if (nameEquals(namePos, nameLength, KEY_Y) && isNumeric(type)) {
+                sectionY = (int) readNumeric(type);
+            } else if (type == TAG_COMPOUND && nameEquals(namePos, nameLength, KEY_BLOCK_STATES)) {
+                // 1.18+: block_states { palette: [...], data: long[] }
+                int blockStatesType;
+                while ((blockStatesType = readByte()) != TAG_END) {
+                    int innerLength = readShort();
+                    int innerPos = pos;
+                    pos += innerLength;
+
+                    if (blockStatesType == TAG_LIST && nameEquals(innerPos, innerLength, KEY_PALETTE)) {
+                        palette = readPalette(depth + 2);
+                    } else if (blockStatesType == TAG_LONG_ARRAY && nameEquals(innerPos, innerLength, KEY_DATA)) {
+                        data = readLongArray();
+                    } else {
+                        skipPayload(blockStatesType, depth + 2);
+                    }
+                }
+            } else if (type == TAG_LIST && nameEquals(namePos, nameLength, KEY_PALETTE_LEGACY)) {
+                palette = readPalette(depth + 1);
+            } else if (type == TAG_LONG_ARRAY && nameEquals(namePos, nameLength, KEY_BLOCK_STATES_LEGACY)) {
+                data = readLongArray();
+            } else {
+                skipPayload(type, depth + 1);
+            }
+        }
+
+        if (palette != null && palette.length > 0) {
+            visitor.visitSection(sectionY, palette, data);
+        }
+    }
+
+    /**
+     * Read a block palette, keeping only each entry's "Name".
+     */
+    private String[] readPalette(int depth) throws IOException {
+        checkDepth(depth);
+        int elementType = readByte();
+        int count = readInt();
+        if (elementType != TAG_COMPOUND) {
+            skipListElements(elementType, count, depth);
+            return null;
+        }
+
+        String[] palette = new String[count];
+        for (int i = 0; i < count; i++) {
+            int type;
+            while ((type = readByte()) != TAG_END) {
+                int nameLength = readShort();
+                int namePos = pos;
+                pos += nameLength;
+
+                if (type == TAG_STRING && nameEquals(namePos, nameLength, KEY_NAME)) {
+                    palette[i] = readString();
+                } else {
+                    // Block properties (facing, waterlogged, ...) are irrelevant for the map
+                    skipPayload(type, depth + 1);
+                }
+            }
+            if (palette[i] == null) {
+                palette[i] = "minecraft:air";
+            }
+        }
+        return palette;
+    }
+
+    private void scanHeightmaps(int depth) throws IOException {
+        checkDepth(depth);
+        int type;
+        while ((type = readByte()) != TAG_END) {
+            int nameLength = readShort();
+            int namePos = pos;
+            pos += nameLength;
+
+            if (type == TAG_LONG_ARRAY) {
+                String name = new String(buf, namePos, nameLength, StandardCharsets.ISO_8859_1);
+                visitor.visitHeightmap(name, readLongArray());
+            } else {
+                skipPayload(type, depth + 1);
+            }
+        }
+    }
+
+    // ===== Skipping =====
+
+    private void skipPayload(int type, int depth) throws IOException {
+        switch (type) {
+            case TAG_BYTE -> pos += 1;
+            case TAG_SHORT -> pos += 2;
+            case TAG_INT, TAG_FLOAT -> pos += 4;
+            case TAG_LONG, TAG_DOUBLE -> pos += 8;
+            case TAG_BYTE_ARRAY -> skip(checkedLength(readInt(), 1));
+            case TAG_STRING -> skip(readShort());
+            case TAG_INT_ARRAY -> skip(checkedLength(readInt(), 4));
+            case TAG_LONG_ARRAY -> skip(checkedLength(readInt(), 8));
+            case TAG_LIST -> {
+                checkDepth(depth);
+                int elementType = readByte();
+                int count = readInt();
+                skipListElements(elementType, count, depth);
+            }
+            case TAG_COMPOUND -> {
+                checkDepth(depth);
+                int childType;
+                while ((childType = readByte()) != TAG_END) {
+                    skip(readShort());
+                    skipPayload(childType, depth + 1);
+                }
+            }
+            default -> throw new IOException("Unknown NBT tag type: " + type);
+        }
+        if (pos > limit) {
+            throw new IOException("Truncated chunk NBT");
+        }
+    }
+
+    private void skipListElements(int elementType, int count, int depth) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        switch (elementType) {
+            // Fixed-size elements: skip the whole list at once
+            case TAG_BYTE -> pos += checkedLength(count, 1);
+            case TAG_SHORT -> pos += checkedLength(count, 2);
+            case TAG_INT, TAG_FLOAT -> pos += checkedLength(count, 4);
+            case TAG_LONG, TAG_DOUBLE -> pos += checkedLength(count, 8);
+            default -> {
+                for (int i = 0; i < count; i++) {
+                    skipPayload(elementType, depth + 1);
+                }
+            }
+        }
+        if (pos > limit) {
+            throw new IOException("Truncated chunk NBT");
+        }
+    }
+
+    private int checkedLength(int count, int elementSize) throws IOException {
+        long bytes = (long) count * elementSize;
+        if (count < 0 || pos + bytes > limit) {
+            throw new IOException("Invalid NBT array length: " + count);
+        }
+        return (int) bytes;
+    }
+
+    private void checkDepth(int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new IOException("NBT nesting exceeds " + MAX_DEPTH);
+        }
+    }
+
+    // ===== Primitive reads =====
+
+    private int readByte() {
+        if (pos >= limit) {
+            throw new IndexOutOfBoundsException();
+        }
+        return buf[pos++];
+    }
+
+    private int readShort() {
+        if (pos + 2 > limit) {
+            throw new IndexOutOfBoundsException();
+        }
+        int value = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+        pos += 2;
+        return value;
+    }
+
+    private int readInt() {
+        if (pos + 4 > limit) {
+            throw new IndexOutOfBoundsException();
+        }
+        int value = (int) INT.get(buf, pos);
+        pos += 4;
+        return value;
+    }
+
+    private long readNumeric(int type) {
+        long value = switch (type) {
+            case TAG_BYTE -> buf[pos];
+            case TAG_SHORT -> (short) (((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF));
+            case TAG_INT -> (int) INT.get(buf, pos);
+            default -> (long) LONG.get(buf, pos);
+        };
+        pos += switch (type) {
+            case TAG_BYTE -> 1;
+            case TAG_SHORT -> 2;
+            case TAG_INT -> 4;
+            default -> 8;
+        };
+        return value;
+    }
+
+    private static boolean isNumeric(int type) {
+        return type == TAG_BYTE || type == TAG_SHORT || type == TAG_INT || type == TAG_LONG;
+    }
+
+    private long[] readLongArray() throws IOException {
+        int count = readInt();
+        checkedLength(count, 8);
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (long) LONG.get(buf, pos);
+            pos += 8;
+        }
+        return values;
+    }
+
+    /**
+     * Read a string tag payload. Block names are ASCII, so the common case
+     * is a straight byte copy; anything else goes through modified UTF-8.
+     */
+    private String readString() throws IOException {
+        int start = pos;
+        int length = readShort();
+        if (pos + length > limit) {
+            throw new IOException("Truncated chunk NBT");
+        }
+
+        for (int i = pos; i < pos + length; i++) {
+            if (buf[i] < 0) {
+                pos += length;
+                return new DataInputStream(new ByteArrayInputStream(buf, start, length + 2)).readUTF();
+            }
+        }
+
+        String value = new String(buf, pos, length, StandardCharsets.ISO_8859_1);
+        pos += length;
+        return value;
+    }
+
+    private void skipName() {
+        skip(readShort());
+    }
+
+    /**
+     * Advance past a payload. Kept as a method so the length read happens
+     * before pos is loaded (a bare {@code pos += readShort()} would lose the read).
+     */
+    private void skip(int bytes) {
+        pos += bytes;
+    }
+
+    private boolean nameEquals(int namePos, int nameLength, byte[] key) {
+        if (nameLength != key.length) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (buf[namePos + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,197 +1,249 @@
 package dev.ked.quetzalmap.core.world;
 
-import net.querz.nbt.tag.CompoundTag;
-import net.querz.nbt.tag.ListTag;
-import net.querz.nbt.tag.LongArrayTag;
-import net.querz.nbt.tag.StringTag;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
  * Parses Minecraft 1.18+ chunk format.
  * Simplified for map rendering - only reads surface blocks.
+ * NBT is read with {@link ChunkNbtScanner}, so nothing but the block
+ * palettes and packed block data is ever materialized, and the surface is
+ * located via heightmaps where possible (see {@link SurfaceExtractor}).
+ *
+ * Performance: Block names are interned in the lock-free {@link BlockRegistry},
+ * resolved once per palette entry rather than once per block.
  *
- * Performance: Uses block type interning to reduce allocations.
- * Unknown block types are cached on first encounter.
+ * Memory: The surface is stored as one packed int per column (registry ID in
+ * the high 16 bits, signed Y in the low 16 bits), about 1KB per chunk with no
+ * per-column objects. Use {@link #getBlockId}/{@link #getHeight} or
+ * {@link #getColumn} on hot paths; {@link #getBlock} allocates.
+ * When parsed with a {@link SurfaceArena} the columns live off-heap in an
+ * arena slot instead, and accessors read straight from the slab. Such a chunk
+ * is reference counted: whoever holds it (the cache, each reader) owns one
+ * reference, and the slot goes back to the arena when the last one is released.
  */
 public class MinecraftChunk {
     private static final Logger LOGGER = Logger.getLogger(MinecraftChunk.class.getName());
     private final int chunkX;
     private final int chunkZ;
-    private final BlockState[][] blocks = new BlockState[16][16]; // x, z
-
-    // Static registry of all block types - shared across all chunks
-    private static final Map<String, BlockType> BLOCK_TYPES = new HashMap<>(256);
-
-    // Default block type for unknowns (gray)
-    private static final BlockType DEFAULT_BLOCK_TYPE = new BlockType("unknown", 0x808080);
-
-    static {
-        // Initialize common block types with approximate colors
-        registerBlock("minecraft:air", 0x000000);
-        registerBlock("minecraft:stone", 0x7F7F7F);
-        registerBlock("minecraft:grass_block", 0x7CBD6B);
-        registerBlock("minecraft:dirt", 0x8B5A3C);
-        registerBlock("minecraft:cobblestone", 0x828282);
-        registerBlock("minecraft:oak_planks", 0x9C7F4E);
-        registerBlock("minecraft:sand", 0xDBD3A0);
-        registerBlock("minecraft:gravel", 0x837B71);
-        registerBlock("minecraft:oak_log", 0x6E5434);
-        registerBlock("minecraft:oak_leaves", 0x52802E);
-        registerBlock("minecraft:water", 0x3F76E4);
-        registerBlock("minecraft:lava", 0xEA5C0F);
-        registerBlock("minecraft:snow", 0xFFFFFE);
-        registerBlock("minecraft:ice", 0x7DACFE);
-        registerBlock("minecraft:clay", 0xA0A7B4);
-        registerBlock("minecraft:pumpkin", 0xC07615);
-        registerBlock("minecraft:netherrack", 0x723232);
-        registerBlock("minecraft:soul_sand", 0x554134);
-        registerBlock("minecraft:glowstone", 0xFFBC5E);
-        registerBlock("minecraft:white_wool", 0xE9ECEC);
-        registerBlock("minecraft:glass", 0xC0F0FF);
-        registerBlock("minecraft:deepslate", 0x4D4D4D);
-        registerBlock("minecraft:andesite", 0x868686);
-        registerBlock("minecraft:diorite", 0xC8C8C8);
-        registerBlock("minecraft:granite", 0x9B6D5B);
-    }
-
-    private static void registerBlock(String id, int color) {
-        BLOCK_TYPES.put(id, new BlockType(id, color));
-    }
-
-    /**
-     * Get or create a block type (thread-safe interning).
-     * Prevents creating duplicate BlockType objects for the same block name.
-     * Reduces garbage collection pressure by ~40%.
-     */
-    private static synchronized BlockType getOrCreateBlockType(String blockName) {
-        BlockType type = BLOCK_TYPES.get(blockName);
-        if (type != null) {
-            return type;
-        }
+    /**
+     * Packed value of a column with no non-air block.
+     * Never produced for a real block, since surface blocks are never air (ID 0).
+     */
+    public static final int EMPTY_COLUMN = 0;
+
+    // Object header + fields, plus the 256 packed columns (on or off heap)
+    private static final long MEMORY_FOOTPRINT = 48 + 16 + 256 * 4;
 
-        // Unknown block type - create and cache it
-        type = new BlockType(blockName, DEFAULT_BLOCK_TYPE.getColor());
-        BLOCK_TYPES.put(blockName, type);
+    // Scratch for off-heap parses, copied into the arena slot afterwards
+    private static final ThreadLocal<int[]> SCRATCH_COLUMNS = ThreadLocal.withInitial(() -> new int[256]);
 
-        // Log new block types for debugging (only once per type)
-        LOGGER.fine("Registered unknown block type: " + blockName);
+    private final int[] columns; // z * 16 + x, see packColumn; null when off-heap
 
-        return type;
+    // Off-heap storage: slot in an arena slab (slab is null when on heap)
+    private final SurfaceArena arena;
+    private final IntBuffer slab;
+    private final int slot;
+    private final int base;
+    private int references = 1; // guarded by this; starts with the creator's
+
+    private MinecraftChunk(int chunkX, int chunkZ, int[] columns) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.columns = columns;
+        this.arena = null;
+        this.slab = null;
+        this.slot = -1;
+        this.base = 0;
     }
 
-    public MinecraftChunk(CompoundTag root, int chunkX, int chunkZ) {
+    private MinecraftChunk(int chunkX, int chunkZ, SurfaceArena arena, int slot) {
         this.chunkX = chunkX;
         this.chunkZ = chunkZ;
-        parse(root);
+        this.columns = null;
+        this.arena = arena;
+        this.slab = arena.slab(slot);
+        this.slot = slot;
+        this.base = SurfaceArena.offset(slot);
     }
 
-    private void parse(CompoundTag root) {
-        LOGGER.fine("Parsing chunk " + chunkX + "," + chunkZ);
-        LOGGER.fine("Root keys: " + root.keySet());
+    /**
+     * Parse a chunk from its decompressed NBT bytes.
+     * Only the block palettes, packed block data and heightmaps are materialized.
+     *
+     * @throws IOException if the NBT is truncated or malformed
+     */
+    public static MinecraftChunk parse(byte[] nbt, int offset, int length, int chunkX, int chunkZ) throws IOException {
+        return parse(nbt, offset, length, chunkX, chunkZ, SurfaceMode.HEIGHTMAP);
+    }
 
-        // Minecraft 1.18+ has no "Level" tag, data is in root
-        ListTag<?> sections = root.getListTag("sections");
-        if (sections == null) {
-            // Try old format
-            CompoundTag level = root.getCompoundTag("Level");
-            if (level != null) {
-                sections = level.getListTag("Sections"); // Old format uses capital S
-            }
-            if (sections == null) {
-                LOGGER.severe("No sections found in chunk " + chunkX + "," + chunkZ);
-                return;
-            }
+    /**
+     * Parse a chunk using the given surface extraction mode.
+     *
+     * @throws IOException if the NBT is truncated or malformed
+     */
+    public static MinecraftChunk parse(byte[] nbt, int offset, int length, int chunkX, int chunkZ,
+                                       SurfaceMode mode) throws IOException {
+        return parse(nbt, offset, length, chunkX, chunkZ, mode, null);
+    }
+
+    /**
+     * Parse a chunk, storing its surface in {@code arena} if one is given and it has room.
+     * The caller owns the returned chunk's only reference and must {@link #release()} it.
+     *
+     * @throws IOException if the NBT is truncated or malformed
+     */
+    public static MinecraftChunk parse(byte[] nbt, int offset, int length, int chunkX, int chunkZ,
+                                       SurfaceMode mode, SurfaceArena arena) throws IOException {
+        LOGGER.fine("Parsing chunk " + chunkX + "," + chunkZ + " (mode=" + mode + ")");
+        SurfaceExtractor extractor = new SurfaceExtractor(mode);
+        ChunkNbtScanner.scan(nbt, offset, length, extractor);
+
+        if (arena == null) {
+            int[] columns = new int[256];
+            extractor.extract(columns);
+            return new MinecraftChunk(chunkX, chunkZ, columns);
         }
 
-        LOGGER.fine("Found " + sections.size() + " sections");
-        int blocksFound = 0;
-        int sectionsProcessed = 0;
+        int[] scratch = SCRATCH_COLUMNS.get();
+        Arrays.fill(scratch, EMPTY_COLUMN);
+        extractor.extract(scratch);
+        int slot = arena.store(scratch);
+        if (slot < 0) {
+            // Arena full - keep this one on heap
+            return new MinecraftChunk(chunkX, chunkZ, scratch.clone());
+        }
+        return new MinecraftChunk(chunkX, chunkZ, arena, slot);
+    }
 
-        // Find the highest non-air block for each x,z position
-        for (Object sectionObj : sections) {
-            CompoundTag section = (CompoundTag) sectionObj;
-            int sectionY = section.getByte("Y");
-            sectionsProcessed++;
+    /**
+     * Create a chunk from already packed columns (e.g. a persisted snapshot).
+     * The columns are copied.
+     *
+     * @param columns 256 columns indexed z * 16 + x, see {@link #packColumn}
+     */
+    public static MinecraftChunk fromColumns(int chunkX, int chunkZ, int[] columns) {
+        if (columns.length != 256) {
+            throw new IllegalArgumentException("Expected 256 columns, got " + columns.length);
+        }
+        return new MinecraftChunk(chunkX, chunkZ, columns.clone());
+    }
 
-            LOGGER.fine("Processing section Y=" + sectionY + " (section " + sectionsProcessed + "/" + sections.size() + ")");
+    /**
+     * Get the surface block of a column as an object.
+     * Allocates - renderers should use {@link #getBlockId} and {@link #getHeight}.
+     */
+    public BlockState getBlock(int x, int z) {
+        if (x < 0 || x >= 16 || z < 0 || z >= 16) {
+            return null;
+        }
+        int packed = getColumn((z << 4) | x);
+        if (packed == EMPTY_COLUMN) {
+            return null;
+        }
+        return new BlockState(BlockRegistry.getInstance().getType(columnBlockId(packed)), columnHeight(packed));
+    }
 
-            CompoundTag blockStates = section.getCompoundTag("block_states");
-            if (blockStates == null) {
-                // Empty section (likely air or void), skip silently
-                continue;
-            }
+    /**
+     * Registry ID of the surface block at x,z ({@link BlockRegistry#AIR} if the column is empty).
+     */
+    public int getBlockId(int x, int z) {
+        return columnBlockId(getColumn((z << 4) | x));
+    }
 
-            ListTag<?> palette = blockStates.getListTag("palette");
-            if (palette == null || palette.size() == 0) {
-                // Empty palette, skip silently
-                continue;
-            }
+    /**
+     * Y of the surface block at x,z (meaningless if the column is empty).
+     */
+    public int getHeight(int x, int z) {
+        return columnHeight(getColumn((z << 4) | x));
+    }
 
-            LOGGER.fine("Section Y=" + sectionY + " has palette size: " + palette.size());
-            LongArrayTag dataTag = blockStates.getLongArrayTag("data");
-
-            // Parse each block in the section
-            for (int y = 0; y < 16; y++) {
-                for (int z = 0; z < 16; z++) {
-                    for (int x = 0; x < 16; x++) {
-                        int blockIndex = getBlockIndex(x, y, z);
-                        int paletteIndex = getPaletteIndex(dataTag, blockIndex, palette.size());
-
-                        if (paletteIndex >= 0 && paletteIndex < palette.size()) {
-                            CompoundTag blockData = (CompoundTag) palette.get(paletteIndex);
-                            String blockName = ((StringTag) blockData.get("Name")).getValue();
-
-                            // Intern block types - reuse existing or create new (synchronized)
-                            BlockType type = getOrCreateBlockType(blockName);
-
-                            if (!type.isAir()) {
-                                int worldY = sectionY * 16 + y;
-                                BlockState existing = blocks[x][z];
-                                if (existing == null || worldY > existing.getY()) {
-                                    blocks[x][z] = new BlockState(type, worldY);
-                                    blocksFound++;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * Raw packed column at {@code index = z * 16 + x}.
+     */
+    public int getColumn(int index) {
+        int[] columns = this.columns;
+        return columns != null ? columns[index] : slab.get(base + index);
+    }
 
-        LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " parsing complete. Found " + blocksFound + " blocks across " + sectionsProcessed + " sections");
+    /**
+     * Pack a registry ID and block Y into a single column value.
+     */
+    public static int packColumn(int blockId, int y) {
+        return (blockId << 16) | (y & 0xFFFF);
     }
 
-    private int getBlockIndex(int x, int y, int z) {
-        return y * 16 * 16 + z * 16 + x;
+    public static int columnBlockId(int packed) {
+        return packed >>> 16;
     }
 
-    private int getPaletteIndex(LongArrayTag dataTag, int blockIndex, int paletteSize) {
-        if (dataTag == null || paletteSize == 1) {
-            return 0; // Single palette entry
-        }
+    public static int columnHeight(int packed) {
+        return (short) packed;
+    }
+
+    /**
+     * Approximate bytes held by this chunk (object plus its columns, on or off heap).
+     */
+    public long getMemoryFootprint() {
+        return MEMORY_FOOTPRINT;
+    }
 
-        long[] data = dataTag.getValue();
-        int bitsPerBlock = Math.max(4, (int) Math.ceil(Math.log(paletteSize) / Math.log(2)));
-        int blocksPerLong = 64 / bitsPerBlock;
-        int longIndex = blockIndex / blocksPerLong;
-        int bitIndex = (blockIndex % blocksPerLong) * bitsPerBlock;
+    /**
+     * Check if the columns are stored in a {@link SurfaceArena}.
+     */
+    public boolean isOffHeap() {
+        return columns == null;
+    }
 
-        if (longIndex >= data.length) {
-            return 0;
+    /**
+     * Take another reference to an off-heap chunk, keeping its slot valid until
+     * the matching {@link #release()}. Always succeeds for heap chunks.
+     *
+     * @return false if the last reference was already released
+     */
+    public boolean retain() {
+        if (arena == null) {
+            return true;
         }
+        synchronized (this) {
+            if (references == 0) {
+                return false;
+            }
+            references++;
+            return true;
+        }
+    }
 
-        long value = data[longIndex];
-        return (int) ((value >> bitIndex) & ((1L << bitsPerBlock) - 1));
+    /**
+     * Drop one reference; the last one hands the slot back to the arena.
+     * No-op for heap chunks.
+     */
+    public void release() {
+        if (arena == null) {
+            return;
+        }
+        synchronized (this) {
+            if (references == 0) {
+                throw new IllegalStateException("Chunk " + chunkX + "," + chunkZ + " released too often");
+            }
+            if (--references > 0) {
+                return;
+            }
+        }
+        arena.free(slot);
     }
 
-    public BlockState getBlock(int x, int z) {
-        if (x < 0 || x >= 16 || z < 0 || z >= 16) {
-            return null;
+    /**
+     * Release every non-null chunk of an array.
+     */
+    public static void releaseAll(MinecraftChunk[] chunks) {
+        for (MinecraftChunk chunk : chunks) {
+            if (chunk != null) {
+                chunk.release();
+            }
         }
-        return blocks[x][z];
     }
 
     public int getChunkX() {
@@ -201,4 +253,20 @@ public class MinecraftChunk {
     public int getChunkZ() {
         return chunkZ;
     }
+
+    /**
+     * How the surface block of each column is located.
+     */
+    public enum SurfaceMode {
+        /**
+         * Jump to the block named by the WORLD_SURFACE heightmap, falling back
+         * to a top-down scan for columns where it is missing or stale.
+         */
+        HEIGHTMAP,
+
+        /**
+         * Ignore heightmaps and scan sections top-down.
+         */
+        SCAN
+    }
 }
@@ -1,42 +1,72 @@
 package dev.ked.quetzalmap.core.world;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import net.querz.nbt.io.NBTInputStream;
-import net.querz.nbt.io.NamedTag;
-import net.querz.nbt.tag.CompoundTag;
-
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
 
 /**
  * Reads Minecraft region files (.mca format).
  * Anvil region file parser for efficient chunk loading.
  *
- * Performance: Uses bounded Caffeine cache to prevent memory leaks.
- * Maximum 256 chunks cached per region (~16MB), expires after 5 minutes.
+ * Performance: Decoded chunks live in the shared, byte-bounded {@link ChunkCache}
+ * (see {@link RegionCache}), so memory is capped across all regions and worlds.
+ * The file is memory-mapped once (see {@link RegionFile}) and chunks that are
+ * absent or fail to decode are remembered, so repeated lookups cost no I/O.
  */
 public class MinecraftRegion {
     private static final Logger LOGGER = Logger.getLogger(MinecraftRegion.class.getName());
-    private static final int MAX_CHUNKS_PER_REGION = 256; // 16x16 area, ~16MB
+
+    // Set on the compression type when the chunk lives in an external .mcc file
+    private static final int EXTERNAL_FLAG = 0x80;
+
+    // Bulk loads coalesce payloads into reads of up to 1MB,
+    // reading through gaps of up to 64KB rather than skipping ahead
+    private static final int MAX_RUN_BYTES = 1 << 20;
+    private static final int MAX_RUN_GAP = 16 * RegionFile.SECTOR_SIZE;
 
     private final Path regionFile;
     private final int regionX;
     private final int regionZ;
 
-    // Bounded cache prevents memory leaks from unbounded HashMap
-    private final Cache<ChunkPos, MinecraftChunk> chunks = Caffeine.newBuilder()
-            .maximumSize(MAX_CHUNKS_PER_REGION)
-            .expireAfterAccess(5, TimeUnit.MINUTES)
-            .build();
+    // Shared decoded chunk cache, keyed by world
+    private final ChunkCache chunks;
+    private final String world;
+
+    // Mapped on first chunk access
+    private volatile RegionFile file;
+
+    // Negative cache: one bit per chunk index that is absent or corrupt
+    private final AtomicLongArray absent = new AtomicLongArray(RegionFile.CHUNKS_PER_REGION / 64);
 
+    /**
+     * Create a region backed by the global chunk cache.
+     * The world key is the directory containing the region folder.
+     */
     public MinecraftRegion(Path regionFile, int regionX, int regionZ) {
+        this(regionFile, regionX, regionZ, RegionCache.getInstance().getChunkCache(), worldKey(regionFile));
+    }
+
+    /**
+     * @param chunks Cache for decoded chunks
+     * @param world  Key identifying this region's world in the cache
+     */
+    public MinecraftRegion(Path regionFile, int regionX, int regionZ, ChunkCache chunks, String world) {
         this.regionFile = regionFile;
         this.regionX = regionX;
         this.regionZ = regionZ;
+        this.chunks = chunks;
+        this.world = world;
         LOGGER.fine("Created MinecraftRegion: file=" + regionFile + ", regionX=" + regionX + ", regionZ=" + regionZ);
     }
 
@@ -44,12 +74,12 @@ public class MinecraftRegion {
      * Load a chunk from the region file.
      * Uses cache to avoid repeated I/O operations.
      * Returns null for corrupted/missing chunks instead of throwing exceptions.
+     * The caller owns a reference to the chunk and must {@link MinecraftChunk#release() release}
+     * it once done reading (a no-op unless the cache stores surfaces off-heap).
      */
     public MinecraftChunk getChunk(int chunkX, int chunkZ) {
-        ChunkPos pos = new ChunkPos(chunkX, chunkZ);
-
         // Try cache first
-        MinecraftChunk cached = chunks.getIfPresent(pos);
+        MinecraftChunk cached = chunks.get(world, chunkX, chunkZ);
         if (cached != null) {
             LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " found in cache");
             return cached;
@@ -57,10 +87,11 @@ public class MinecraftRegion {
 
         // Cache miss - load from disk
         LOGGER.fine("Loading chunk " + chunkX + "," + chunkZ + " from region file...");
+        long generation = chunks.getGeneration(world, chunkX, chunkZ);
         MinecraftChunk chunk = loadChunk(chunkX, chunkZ);
         if (chunk != null) {
             LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " loaded successfully");
-            chunks.put(pos, chunk);
+            chunks.put(world, chunkX, chunkZ, chunk, generation);
         } else {
             LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " does not exist in region");
         }
@@ -68,111 +99,389 @@ public class MinecraftRegion {
     }
 
     private MinecraftChunk loadChunk(int chunkX, int chunkZ) {
-        // Calculate chunk position within region (0-31)
-        int localX = chunkX & 31;
-        int localZ = chunkZ & 31;
+        int index = RegionFile.chunkIndex(chunkX, chunkZ);
 
-        LOGGER.fine("loadChunk: localX=" + localX + ", localZ=" + localZ);
+        // Known absent or corrupt - skip without touching the file
+        if (isAbsent(index)) {
+            return null;
+        }
 
-        try (RandomAccessFile raf = new RandomAccessFile(regionFile.toFile(), "r")) {
-            // Check file size - region files should be at least 8KB (header)
-            long fileSize = raf.length();
-            if (fileSize < 8192) {
-                LOGGER.warning("Region file too small or corrupted: " + regionFile + " (size=" + fileSize + " bytes)");
-                return null;
-            }
+        RegionFile file = getFile();
+        RegionFile.ChunkPayload payload = file.getPayload(index);
+        if (payload == null) {
+            // Chunk doesn't exist in region - this is normal for ungenerated chunks
+            markAbsent(index);
+            return null;
+        }
 
-            // Read chunk location from header
-            int headerOffset = 4 * ((localX & 31) + (localZ & 31) * 32);
+        return decodeChunk(payload.data(), payload.compressionType(), index, chunkX, chunkZ);
+    }
 
-            // Bounds check before seeking
-            if (headerOffset + 4 > fileSize) {
-                LOGGER.warning("Header offset out of bounds for chunk " + chunkX + "," + chunkZ);
-                return null;
+    /**
+     * Decompress and parse a chunk payload.
+     * Returns null (and remembers the chunk as corrupt) if it can't be decoded.
+     */
+    private MinecraftChunk decodeChunk(ByteBuffer data, byte compressionType, int index, int chunkX, int chunkZ) {
+        LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " length=" + data.remaining() + ", compressionType=" + compressionType);
+
+        try {
+            if ((compressionType & EXTERNAL_FLAG) != 0) {
+                // Oversized chunk stored in its own c.<x>.<z>.mcc file next to the region
+                Path external = regionFile.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc");
+                data = ByteBuffer.wrap(Files.readAllBytes(external));
+                compressionType = (byte) (compressionType & ~EXTERNAL_FLAG);
             }
 
-            raf.seek(headerOffset);
-            int location = raf.readInt();
-            LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " location header: " + location);
-            if (location == 0) {
-                // Chunk doesn't exist in region - this is normal for ungenerated chunks
-                return null;
+            // Decompress into this thread's reusable buffer, then parse before it is reused.
+            // A mapped payload is copied to the heap first, so a truncated file can't SIGBUS in zlib.
+            ChunkDecompressor decompressor = ChunkDecompressor.get();
+            try {
+                int length = decompressor.decompress(compressionType, data);
+                return MinecraftChunk.parse(decompressor.buffer(), 0, length, chunkX, chunkZ,
+                        MinecraftChunk.SurfaceMode.HEIGHTMAP, chunks.getArena());
+            } finally {
+                decompressor.trim();
             }
 
-            int offset = (location >> 8) * 4096;
-            int sectorCount = location & 0xFF;
+        } catch (java.io.EOFException e) {
+            // Corrupted or truncated chunk - log and skip
+            LOGGER.warning("Corrupted region file, chunk " + chunkX + "," + chunkZ + " truncated: " + regionFile);
+        } catch (IOException e) {
+            // Other I/O errors - log and skip
+            LOGGER.warning("Failed to load chunk " + chunkX + "," + chunkZ + ": " + e.getMessage());
+        } catch (InternalError e) {
+            // Region file was truncated underneath the mapping (SIGBUS)
+            LOGGER.warning("Region file changed while reading chunk " + chunkX + "," + chunkZ + ": " + regionFile);
+            return null;
+        } catch (Exception e) {
+            // NBT parsing errors - log and skip
+            LOGGER.warning("Failed to parse chunk " + chunkX + "," + chunkZ + ": " + e.getMessage());
+        }
 
-            LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " offset=" + offset + ", sectorCount=" + sectorCount);
+        // Don't retry corrupt chunks on every render
+        markAbsent(index);
+        return null;
+    }
 
-            if (offset == 0 || sectorCount == 0) {
-                // Invalid chunk data - silently skip
-                return null;
+    /**
+     * Load every chunk in the region in a single pass.
+     *
+     * Payloads are read in file order, with neighbouring chunks coalesced into
+     * large sequential reads, and decompression/parsing is fanned out to
+     * {@code executor}. Cached chunks are reused and newly decoded ones are
+     * cached. Blocks until every chunk has been decoded; when called from a
+     * worker of {@code executor} (a ForkJoinPool), it joins the decoding
+     * instead of parking, so it works on a pool that can't add threads.
+     *
+     * @return chunks indexed by {@link RegionFile#chunkIndex}, null where absent or corrupt
+     */
+    public MinecraftChunk[] loadAll(Executor executor) {
+        return loadAll(executor, null);
+    }
+
+    /**
+     * Load every chunk in the region, taking chunks from {@code snapshot} instead
+     * of the file wherever the snapshot was taken at the current header timestamp.
+     *
+     * @param snapshot Previously decoded surfaces, or null
+     * @return chunks indexed by {@link RegionFile#chunkIndex}, null where absent or corrupt;
+     *         the caller owns a reference to each (see {@link MinecraftChunk#releaseAll})
+     */
+    public MinecraftChunk[] loadAll(Executor executor, RegionSnapshot snapshot) {
+        MinecraftChunk[] result = new MinecraftChunk[RegionFile.CHUNKS_PER_REGION];
+        RegionFile file = getFile();
+
+        List<Runnable> decoding = new ArrayList<>();
+        List<PendingChunk> run = new ArrayList<>();
+        long runStart = 0;
+        long runEnd = 0;
+        int cachedCount = 0;
+        int snapshotCount = 0;
+
+        for (int index : file.chunksByOffset()) {
+            int chunkX = (regionX << 5) + (index & 31);
+            int chunkZ = (regionZ << 5) + (index >> 5);
+
+            if (snapshot != null && snapshot.isCurrent(index, file.getTimestamp(index))) {
+                // Unchanged since the snapshot - no need to touch the file
+                MinecraftChunk chunk = snapshot.getChunk(index);
+                if (chunk == null || chunk.retain()) {
+                    result[index] = chunk;
+                    snapshotCount++;
+                    continue;
+                }
             }
 
-            // Bounds check chunk offset
-            if (offset < 0 || offset + 5 > fileSize) {
-                LOGGER.warning("Chunk " + chunkX + "," + chunkZ + " offset out of bounds: " + offset + " (fileSize=" + fileSize + ")");
-                return null;
+            MinecraftChunk cached = chunks.get(world, chunkX, chunkZ);
+            if (cached != null) {
+                result[index] = cached;
+                cachedCount++;
+                continue;
             }
+            if (isAbsent(index)) {
+                continue;
+            }
+
+            RegionFile.ChunkPayload payload = file.getPayload(index);
+            if (payload == null) {
+                markAbsent(index);
+                continue;
+            }
+
+            long offset = file.getPayloadOffset(index);
+            int length = payload.data().remaining();
+            if (!run.isEmpty() && (offset - runEnd > MAX_RUN_GAP || offset + length - runStart > MAX_RUN_BYTES)) {
+                submitRun(file, run, runStart, runEnd, result, decoding);
+                run.clear();
+            }
+            if (run.isEmpty()) {
+                runStart = offset;
+                runEnd = offset;
+            }
+            run.add(new PendingChunk(index, chunkX, chunkZ, offset, length, payload.compressionType(),
+                    chunks.getGeneration(world, chunkX, chunkZ)));
+            runEnd = Math.max(runEnd, offset + length);
+        }
+        if (!run.isEmpty()) {
+            submitRun(file, run, runStart, runEnd, result, decoding);
+        }
+
+        runAll(decoding, executor);
+        LOGGER.fine("Bulk loaded region " + regionX + "," + regionZ + ": " + decoding.size()
+                + " decoded, " + cachedCount + " cached, " + snapshotCount + " from snapshot");
+        return result;
+    }
 
-            // Read chunk data
-            raf.seek(offset);
-            int length = raf.readInt();
-            byte compressionType = raf.readByte();
+    /**
+     * Decode the region's chunks into the cache one at a time on the calling
+     * thread, in file order, for background warming. {@code stop} is checked
+     * before each chunk, so a caller can back off mid-region.
+     *
+     * @return false if {@code stop} ended the load early
+     */
+    public boolean preload(BooleanSupplier stop) {
+        RegionFile file = getFile();
+        for (int index : file.chunksByOffset()) {
+            if (stop.getAsBoolean()) {
+                return false;
+            }
+            MinecraftChunk chunk = getChunk((regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5));
+            if (chunk != null) {
+                chunk.release(); // Only wanted in the cache
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a run of payloads with one sequential copy, then queue each chunk for decoding.
+     */
+    private void submitRun(RegionFile file, List<PendingChunk> run, long runStart, long runEnd,
+                           MinecraftChunk[] result, List<Runnable> decoding) {
+        byte[] buffer = new byte[(int) (runEnd - runStart)];
+        try {
+            file.read(runStart, buffer, 0, buffer.length);
+        } catch (InternalError e) {
+            // Region file was truncated underneath the mapping (SIGBUS)
+            LOGGER.warning("Region file changed while bulk reading " + regionFile);
+            return;
+        }
+
+        for (PendingChunk pending : run) {
+            int offset = (int) (pending.offset() - runStart);
+            decoding.add(() -> {
+                MinecraftChunk chunk = decodeChunk(ByteBuffer.wrap(buffer, offset, pending.length()),
+                        pending.compressionType(), pending.index(), pending.chunkX(), pending.chunkZ());
+                if (chunk != null) {
+                    chunks.put(world, pending.chunkX(), pending.chunkZ(), chunk, pending.generation());
+                    result[pending.index()] = chunk;
+                }
+            });
+        }
+    }
+
+    /**
+     * Run decode tasks on the executor and wait for all of them.
+     */
+    private static void runAll(List<Runnable> tasks, Executor executor) {
+        if (executor instanceof ForkJoinPool pool && ForkJoinTask.getPool() == pool) {
+            // Already on one of its workers: fork/join, so this thread decodes too rather than blocking
+            ForkJoinTask.invokeAll(tasks.stream().<ForkJoinTask<?>>map(ForkJoinTask::adapt).toList());
+            return;
+        }
+        CompletableFuture.allOf(tasks.stream()
+                .map(task -> CompletableFuture.runAsync(task, executor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
 
-            LOGGER.fine("Chunk " + chunkX + "," + chunkZ + " length=" + length + ", compressionType=" + compressionType);
+    /**
+     * Get the mapped region file, opening it on first access.
+     * Only the first caller pays for the open; later reads are lock-free.
+     */
+    private RegionFile getFile() {
+        RegionFile file = this.file;
+        if (file != null) {
+            return file;
+        }
 
-            if (length <= 0 || compressionType == 0) {
-                // Invalid chunk data - silently skip
-                return null;
+        synchronized (this) {
+            if (this.file == null) {
+                try {
+                    this.file = RegionFile.open(regionFile);
+                } catch (IOException e) {
+                    LOGGER.warning("Failed to open region file " + regionFile + ": " + e.getMessage());
+                    this.file = RegionFile.empty();
+                }
             }
+            return this.file;
+        }
+    }
 
-            // Bounds check for chunk data length
-            if (length > sectorCount * 4096 || offset + length > fileSize) {
-                LOGGER.warning("Chunk " + chunkX + "," + chunkZ + " length out of bounds: " + length + " bytes");
-                return null;
+    /**
+     * Re-read the region header and drop cached state for every chunk whose
+     * header entry changed since the last read, so the next access decodes the
+     * chunk as the server last wrote it. An unchanged file costs one stat;
+     * the file is only mapped again if it grew or was replaced.
+     *
+     * @return indices of changed chunks (empty if the file hasn't been opened yet or is unchanged)
+     */
+    public int[] refresh() {
+        synchronized (this) {
+            RegionFile previous = this.file;
+            if (previous == null) {
+                return new int[0];
             }
 
-            byte[] data = new byte[length - 1];
-            raf.readFully(data);
+            RegionFile current;
+            try {
+                current = RegionFile.open(regionFile, previous);
+            } catch (IOException e) {
+                LOGGER.warning("Failed to re-read region file " + regionFile + ": " + e.getMessage());
+                return new int[0];
+            }
+            if (current == previous) {
+                return new int[0];
+            }
 
-            // Parse NBT - decompress and read
-            java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(data);
-            java.io.InputStream decompressed;
+            int[] changed = new int[RegionFile.CHUNKS_PER_REGION];
+            int count = 0;
+            for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+                if (current.hasChunkChanged(previous, index)) {
+                    changed[count++] = index;
+                }
+            }
 
-            if (compressionType == 1) {
-                // GZip
-                LOGGER.fine("Using GZip decompression");
-                decompressed = new java.util.zip.GZIPInputStream(bais);
-            } else if (compressionType == 2) {
-                // Zlib
-                LOGGER.fine("Using Zlib decompression");
-                decompressed = new java.util.zip.InflaterInputStream(bais);
-            } else {
-                throw new IOException("Unsupported compression type: " + compressionType);
+            this.file = current;
+            for (int i = 0; i < count; i++) {
+                int index = changed[i];
+                chunks.invalidate(world, (regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5));
+                clearAbsent(index);
             }
 
-            LOGGER.fine("Reading NBT data for chunk " + chunkX + "," + chunkZ + "...");
-            try (NBTInputStream nbtIn = new NBTInputStream(decompressed)) {
-                NamedTag namedTag = nbtIn.readTag(512);
-                CompoundTag root = (CompoundTag) namedTag.getTag();
-                LOGGER.fine("NBT data read successfully, creating MinecraftChunk...");
-                return new MinecraftChunk(root, chunkX, chunkZ);
+            if (count > 0) {
+                LOGGER.fine("Region " + regionX + "," + regionZ + ": " + count + " chunks changed on disk");
             }
+            return Arrays.copyOf(changed, count);
+        }
+    }
 
-        } catch (java.io.EOFException e) {
-            // Corrupted or truncated region file - log and skip
-            LOGGER.warning("Corrupted region file, chunk " + chunkX + "," + chunkZ + " truncated: " + regionFile);
-            return null;
-        } catch (IOException e) {
-            // Other I/O errors - log and skip
-            LOGGER.warning("Failed to load chunk " + chunkX + "," + chunkZ + ": " + e.getMessage());
-            return null;
-        } catch (Exception e) {
-            // NBT parsing errors - log and skip
-            LOGGER.warning("Failed to parse chunk " + chunkX + "," + chunkZ + ": " + e.getMessage());
-            return null;
+    /**
+     * Check if the region file has been opened, i.e. there is a header to diff against.
+     */
+    public boolean isLoaded() {
+        return file != null;
+    }
+
+    /**
+     * Check if the region file currently exists on disk.
+     */
+    public boolean exists() {
+        return Files.isRegularFile(regionFile);
+    }
+
+    private boolean isAbsent(int index) {
+        return (absent.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    private void markAbsent(int index) {
+        long bit = 1L << index;
+        long current;
+        do {
+            current = absent.get(index >>> 6);
+        } while ((current & bit) == 0 && !absent.compareAndSet(index >>> 6, current, current | bit));
+    }
+
+    private void clearAbsent(int index) {
+        long bit = 1L << index;
+        long current;
+        do {
+            current = absent.get(index >>> 6);
+        } while ((current & bit) != 0 && !absent.compareAndSet(index >>> 6, current, current & ~bit));
+    }
+
+    /**
+     * Get the last modification time of every chunk in epoch seconds,
+     * indexed by {@link RegionFile#chunkIndex} (0 if never written).
+     */
+    public int[] getChunkTimestamps() {
+        return getFile().getTimestamps();
+    }
+
+    /**
+     * Get the last modification time of a chunk in epoch seconds (0 if never written).
+     */
+    public int getChunkTimestamp(int chunkX, int chunkZ) {
+        return getFile().getTimestamp(RegionFile.chunkIndex(chunkX, chunkZ));
+    }
+
+    /**
+     * Record that a chunk changed in the world: bump its generation, drop its
+     * decoded entry and forget that it was absent (it may have just been generated).
+     *
+     * @return the chunk's new generation
+     */
+    public long markChunkDirty(int chunkX, int chunkZ) {
+        clearAbsent(RegionFile.chunkIndex(chunkX, chunkZ));
+        return chunks.markDirty(world, chunkX, chunkZ);
+    }
+
+    /**
+     * Get the generation of a chunk (see {@link ChunkCache#getGeneration}).
+     * Read it before loading the chunk to tag what is rendered from it.
+     */
+    public long getChunkGeneration(int chunkX, int chunkZ) {
+        return chunks.getGeneration(world, chunkX, chunkZ);
+    }
+
+    /**
+     * Get the generation of every chunk, indexed by {@link RegionFile#chunkIndex}.
+     */
+    public long[] getChunkGenerations() {
+        long[] generations = new long[RegionFile.CHUNKS_PER_REGION];
+        for (int index = 0; index < generations.length; index++) {
+            generations[index] = chunks.getGeneration(world, (regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5));
         }
+        return generations;
+    }
+
+    /**
+     * Drop this region's decoded chunks from the shared cache.
+     */
+    public void invalidateChunks() {
+        chunks.invalidateRegion(world, regionX, regionZ);
+    }
+
+    /**
+     * World key for a region file at {world}/region/r.x.z.mca.
+     */
+    static String worldKey(Path regionFile) {
+        Path regionDir = regionFile.getParent();
+        Path worldDir = regionDir != null ? regionDir.getParent() : null;
+        return worldDir != null ? worldDir.toString() : "";
+    }
+
+    public String getWorld() {
+        return world;
     }
 
     public int getRegionX() {
@@ -183,5 +492,6 @@ public class MinecraftRegion {
         return regionZ;
     }
 
-    private record ChunkPos(int x, int z) {}
+    private record PendingChunk(int index, int chunkX, int chunkZ, long offset, int length, byte compressionType,
+                                long generation) {}
 }
@@ -0,0 +1,203 @@
+package dev.ked.quetzalmap.core.world;
+
+/**
+ * Unpacks Minecraft's packed long[] storage (block states, heightmaps).
+ *
+ * Two layouts exist:
+ * - Non-spanning (1.16+): each long holds floor(64 / bits) entries, leftover high bits unused.
+ * - Spanning (1.13-1.15): entries are packed back to back and may straddle two longs.
+ *
+ * Bulk decoding writes into a caller-supplied array so a single scratch buffer
+ * can be reused for every section of every chunk. The common palette widths
+ * have dedicated loops with constant shifts that the JIT fully unrolls.
+ */
+public final class PaletteDecoder {
+    public static final int SECTION_BLOCKS = 4096;
+
+    // First data version (20w17a / 1.16) where packed entries no longer span longs
+    public static final int NON_SPANNING_DATA_VERSION = 2529;
+
+    private PaletteDecoder() {
+    }
+
+    /**
+     * Check if packed data written by the given data version uses the spanning layout.
+     * Unknown versions (0) are treated as modern.
+     */
+    public static boolean isSpanning(int dataVersion) {
+        return dataVersion > 0 && dataVersion < NON_SPANNING_DATA_VERSION;
+    }
+
+    /**
+     * Bits per entry for a block state palette of the given size.
+     */
+    public static int bitsForPalette(int paletteSize) {
+        return Math.max(4, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+    }
+
+    /**
+     * Number of longs needed to store {@code count} entries of {@code bits} each.
+     */
+    public static int packedLength(int count, int bits, boolean spanning) {
+        if (spanning) {
+            return (count * bits + 63) >> 6;
+        }
+        int perLong = 64 / bits;
+        return (count + perLong - 1) / perLong;
+    }
+
+    /**
+     * Work out the entry width of a packed array, preferring the expected width
+     * and falling back to whatever width the array length implies.
+     *
+     * @return bits per entry, or 0 if the length matches no width
+     */
+    public static int resolveBits(int dataLength, int count, int expectedBits, boolean spanning) {
+        if (expectedBits > 0 && expectedBits <= 32 && packedLength(count, expectedBits, spanning) == dataLength) {
+            return expectedBits;
+        }
+        for (int bits = 1; bits <= 32; bits++) {
+            if (packedLength(count, bits, spanning) == dataLength) {
+                return bits;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Read a single entry.
+     */
+    public static int get(long[] data, int bits, boolean spanning, int index) {
+        long mask = (1L << bits) - 1;
+        if (spanning) {
+            int bitIndex = index * bits;
+            int longIndex = bitIndex >> 6;
+            int offset = bitIndex & 63;
+            long value = data[longIndex] >>> offset;
+            if (offset + bits > 64) {
+                value |= data[longIndex + 1] << (64 - offset);
+            }
+            return (int) (value & mask);
+        }
+        int perLong = 64 / bits;
+        int longIndex = index / perLong;
+        return (int) ((data[longIndex] >>> ((index - longIndex * perLong) * bits)) & mask);
+    }
+
+    /**
+     * Unpack {@code count} entries into {@code out}. Does not allocate.
+     * The caller must ensure {@code data} has at least {@link #packedLength} longs.
+     */
+    public static void decode(long[] data, int bits, boolean spanning, int count, short[] out) {
+        if (spanning) {
+            decodeSpanning(data, bits, count, out);
+            return;
+        }
+        switch (bits) {
+            case 4 -> decode4(data, count, out);
+            case 5 -> decode5(data, count, out);
+            case 6 -> decode6(data, count, out);
+            case 8 -> decode8(data, count, out);
+            default -> decodeGeneric(data, bits, count, out);
+        }
+    }
+
+    // ===== Non-spanning, fixed widths =====
+
+    private static void decode4(long[] data, int count, short[] out) {
+        int longs = count >> 4;
+        int i = 0;
+        for (int l = 0; l < longs; l++) {
+            long value = data[l];
+            for (int j = 0; j < 16; j++) {
+                out[i++] = (short) (value & 0xF);
+                value >>>= 4;
+            }
+        }
+        for (; i < count; i++) {
+            out[i] = (short) ((data[i >> 4] >>> ((i & 15) << 2)) & 0xF);
+        }
+    }
+
+    private static void decode5(long[] data, int count, short[] out) {
+        // 12 entries per long, top 4 bits unused
+        int i = 0;
+        int l = 0;
+        while (i + 12 <= count) {
+            long value = data[l++];
+            for (int j = 0; j < 12; j++) {
+                out[i++] = (short) (value & 0x1F);
+                value >>>= 5;
+            }
+        }
+        long value = i < count ? data[l] : 0;
+        for (; i < count; i++) {
+            out[i] = (short) (value & 0x1F);
+            value >>>= 5;
+        }
+    }
+
+    private static void decode6(long[] data, int count, short[] out) {
+        // 10 entries per long, top 4 bits unused
+        int i = 0;
+        int l = 0;
+        while (i + 10 <= count) {
+            long value = data[l++];
+            for (int j = 0; j < 10; j++) {
+                out[i++] = (short) (value & 0x3F);
+                value >>>= 6;
+            }
+        }
+        long value = i < count ? data[l] : 0;
+        for (; i < count; i++) {
+            out[i] = (short) (value & 0x3F);
+            value >>>= 6;
+        }
+    }
+
+    private static void decode8(long[] data, int count, short[] out) {
+        int longs = count >> 3;
+        int i = 0;
+        for (int l = 0; l < longs; l++) {
+            long value = data[l];
+            for (int j = 0; j < 8; j++) {
+                out[i++] = (short) (value & 0xFF);
+                value >>>= 8;
+            }
+        }
+        for (; i < count; i++) {
+            out[i] = (short) ((data[i >> 3] >>> ((i & 7) << 3)) & 0xFF);
+        }
+    }
+
+    private static void decodeGeneric(long[] data, int bits, int count, short[] out) {
+        long mask = (1L << bits) - 1;
+        int perLong = 64 / bits;
+        int i = 0;
+        int l = 0;
+        while (i < count) {
+            long value = data[l++];
+            int end = Math.min(count, i + perLong);
+            while (i < end) {
+                out[i++] = (short) (value & mask);
+                value >>>= bits;
+            }
+        }
+    }
+
+    // ===== Spanning (pre-1.16) =====
+
+    private static void decodeSpanning(long[] data, int bits, int count, short[] out) {
+        long mask = (1L << bits) - 1;
+        int bitIndex = 0;
+        for (int i = 0; i < count; i++, bitIndex += bits) {
+            int longIndex = bitIndex >> 6;
+            int offset = bitIndex & 63;
+            long value = data[longIndex] >>> offset;
+            if (offset + bits > 64) {
+                value |= data[longIndex + 1] << (64 - offset);
+            }
+            out[i] = (short) (value & mask);
+        }
+    }
+}
@@ -2,14 +2,16 @@ package dev.ked.quetzalmap.core.world;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
- * Global cache for MinecraftRegion instances.
+ * Global cache for MinecraftRegion instances and their decoded chunks.
  * Prevents repeated I/O operations for the same region files.
  *
  * This is the #1 performance optimization - caching parsed regions
@@ -17,6 +19,13 @@ import java.util.logging.Logger;
  * - File I/O (RandomAccessFile opens)
  * - NBT decompression (GZip/Zlib)
  * - NBT parsing
+ *
+ * Regions themselves are cheap (a mapping plus an 8KB header), so they are
+ * bounded by count. Decoded chunks go to one shared {@link ChunkCache} bounded
+ * by bytes; the budget defaults to 1/16 of the max heap (at most 256MB) and can
+ * be set with -Dquetzalmap.chunkCacheMB or {@link #setChunkCacheBudget}.
+ * With -Dquetzalmap.offHeapSurfaces=true (or {@link #enableOffHeapSurfaces})
+ * that budget is held off-heap instead, keeping map data out of the server's GC.
  */
 public class RegionCache {
     private static final Logger LOGGER = Logger.getLogger(RegionCache.class.getName());
@@ -25,23 +34,33 @@ public class RegionCache {
     private static final RegionCache INSTANCE = new RegionCache();
 
     // Cache configuration
-    private static final int DEFAULT_MAX_REGIONS = 50;  // ~50MB memory
+    private static final int DEFAULT_MAX_REGIONS = 256; // Headers only, chunks are budgeted separately
     private static final int DEFAULT_EXPIRE_MINUTES = 5;
+    private static final long MAX_DEFAULT_CHUNK_BUDGET = 256L << 20;
 
     private final Cache<RegionKey, MinecraftRegion> cache;
+    private final ChunkCache chunkCache;
 
     private RegionCache() {
-        this(DEFAULT_MAX_REGIONS, DEFAULT_EXPIRE_MINUTES);
+        this(DEFAULT_MAX_REGIONS, DEFAULT_EXPIRE_MINUTES, defaultChunkBudget());
     }
 
-    private RegionCache(int maxSize, int expireMinutes) {
+    private RegionCache(int maxSize, int expireMinutes, long chunkBudgetBytes) {
+        this.chunkCache = new ChunkCache(chunkBudgetBytes);
+        if (Boolean.getBoolean("quetzalmap.offHeapSurfaces")) {
+            chunkCache.enableOffHeap();
+        }
         this.cache = Caffeine.newBuilder()
                 .maximumSize(maxSize)
                 .expireAfterAccess(expireMinutes, TimeUnit.MINUTES)
-                .removalListener((key, region, cause) -> {
+                .removalListener((RegionKey key, MinecraftRegion region, RemovalCause cause) -> {
                     if (key != null) {
                         LOGGER.fine("Evicting region from cache: " + key + " (reason: " + cause + ")");
                     }
+                    // A new instance re-reads the header, so don't let it see this one's chunks
+                    if (region != null && cause != RemovalCause.REPLACED) {
+                        region.invalidateChunks();
+                    }
                 })
                 .recordStats()
                 .build();
@@ -74,10 +93,8 @@ public class RegionCache {
         LOGGER.fine("Region cache MISS: " + key + " - loading from disk");
         Path regionFile = worldDir.resolve("region").resolve("r." + regionX + "." + regionZ + ".mca");
 
-        region = new MinecraftRegion(regionFile, regionX, regionZ);
-        cache.put(key, region);
-
-        return region;
+        // Only one instance per region, so concurrent callers share its state
+        return cache.get(key, k -> new MinecraftRegion(regionFile, regionX, regionZ, chunkCache, k.worldPath()));
     }
 
     /**
@@ -90,13 +107,75 @@ public class RegionCache {
     }
 
     /**
-     * Clear all cached regions.
+     * Re-read a cached region's header and drop the decoded chunks that changed on disk.
+     *
+     * @return indices of changed chunks, or null if the region isn't loaded
+     *         (nothing is cached for it, so there is no previous header to diff against)
+     */
+    public int[] refreshRegion(Path worldDir, int regionX, int regionZ) {
+        MinecraftRegion region = cache.asMap().get(new RegionKey(worldDir.toString(), regionX, regionZ));
+        if (region == null || !region.isLoaded()) {
+            return null;
+        }
+        return region.refresh();
+    }
+
+    /**
+     * Record that a chunk changed in the world (block edits, generation).
+     * Bumps the chunk's generation and drops only that chunk's decoded entry,
+     * so the next render decodes it again and older renders can be told apart.
+     *
+     * @return the chunk's new generation
+     */
+    public long markChunkDirty(Path worldDir, int chunkX, int chunkZ) {
+        MinecraftRegion region = cache.asMap().get(new RegionKey(worldDir.toString(), chunkX >> 5, chunkZ >> 5));
+        if (region != null) {
+            return region.markChunkDirty(chunkX, chunkZ);
+        }
+        return chunkCache.markDirty(worldDir.toString(), chunkX, chunkZ);
+    }
+
+    /**
+     * Invalidate every region and decoded chunk of one world.
+     */
+    public void clearWorld(Path worldDir) {
+        String worldPath = worldDir.toString();
+        cache.asMap().keySet().removeIf(key -> key.worldPath().equals(worldPath));
+        chunkCache.invalidateWorld(worldPath);
+        LOGGER.fine("Cleared cached regions for world: " + worldPath);
+    }
+
+    /**
+     * Clear all cached regions, and free the native zlib state of idle decompressors.
      */
     public void clear() {
         cache.invalidateAll();
+        chunkCache.invalidateAll();
+        ChunkDecompressor.endPooledInflaters();
         LOGGER.info("Cleared all cached regions");
     }
 
+    /**
+     * Shared decoded chunk cache.
+     */
+    public ChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    /**
+     * Set the heap budget for decoded chunks across all worlds.
+     */
+    public void setChunkCacheBudget(long bytes) {
+        chunkCache.setMaximumBytes(bytes);
+    }
+
+    /**
+     * Store decoded chunk surfaces off-heap from now on.
+     */
+    public void enableOffHeapSurfaces() {
+        chunkCache.enableOffHeap();
+    }
+
     /**
      * Get cache statistics.
      */
@@ -106,10 +185,26 @@ public class RegionCache {
                 stats.hitCount(),
                 stats.missCount(),
                 stats.hitRate(),
-                cache.estimatedSize()
+                cache.estimatedSize(),
+                chunkCache.getStats()
         );
     }
 
+    /**
+     * Decoded chunk cache statistics per world (keyed by world directory).
+     */
+    public Map<String, ChunkCache.WorldStats> getWorldStats() {
+        return chunkCache.getWorldStats();
+    }
+
+    private static long defaultChunkBudget() {
+        Long configured = Long.getLong("quetzalmap.chunkCacheMB");
+        if (configured != null && configured > 0) {
+            return configured << 20;
+        }
+        return Math.min(MAX_DEFAULT_CHUNK_BUDGET, Runtime.getRuntime().maxMemory() / 16);
+    }
+
     /**
      * Cache key for region lookups.
      */
@@ -127,12 +222,13 @@ public class RegionCache {
             long hitCount,
             long missCount,
             double hitRate,
-            long size
+            long size,
+            ChunkCache.CacheStats chunks
     ) {
         @Override
         public String toString() {
-            return String.format("CacheStats[hits=%d, misses=%d, hitRate=%.2f%%, size=%d]",
-                    hitCount, missCount, hitRate * 100, size);
+            return String.format("CacheStats[hits=%d, misses=%d, hitRate=%.2f%%, size=%d, %s]",
+                    hitCount, missCount, hitRate * 100, size, chunks);
         }
     }
 }
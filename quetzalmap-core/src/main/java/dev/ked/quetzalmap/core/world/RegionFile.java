@@ -0,0 +1,283 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Memory-mapped view of an Anvil region file (.mca).
+ *
+ * The 8KB header (location table + timestamp table) is parsed once when the
+ * file is opened. Chunk payloads are served as slices of a single read-only
+ * mapping, so any number of render threads can read concurrently without
+ * locks, file handles or syscalls once the region is open.
+ *
+ * Note: the header is a snapshot taken at open time. Chunks rewritten by the
+ * server afterwards are picked up by re-opening the file with
+ * {@link #open(Path, RegionFile)} and comparing headers (see {@link #hasChunkChanged}).
+ */
+public final class RegionFile {
+    private static final Logger LOGGER = Logger.getLogger(RegionFile.class.getName());
+
+    public static final int CHUNKS_PER_REGION = 1024; // 32×32
+    public static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SIZE = 2 * SECTOR_SIZE;
+    private static final int CHUNK_HEADER_SIZE = 5; // int length + byte compression type
+
+    private static final RegionFile EMPTY = new RegionFile(null, null, new int[CHUNKS_PER_REGION], new int[CHUNKS_PER_REGION], null);
+
+    private final Path path;
+    private final ByteBuffer mapping; // null for missing/empty region files
+    private final int[] locations;    // raw location entries: sectorOffset << 8 | sectorCount
+    private final int[] timestamps;   // last modification, epoch seconds
+    private final BasicFileAttributes attributes; // size/mtime/inode when mapped, null for EMPTY
+
+    private RegionFile(Path path, ByteBuffer mapping, int[] locations, int[] timestamps, BasicFileAttributes attributes) {
+        this.path = path;
+        this.mapping = mapping;
+        this.locations = locations;
+        this.timestamps = timestamps;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Map a region file and parse its header.
+     * Missing or truncated files yield an empty region instead of an exception.
+     */
+    public static RegionFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                if (fileSize > 0) {
+                    LOGGER.warning("Region file too small or corrupted: " + path + " (size=" + fileSize + " bytes)");
+                }
+                return EMPTY;
+            }
+
+            if (fileSize > Integer.MAX_VALUE) {
+                LOGGER.warning("Region file larger than 2GB, only the first 2GB are readable: " + path);
+                fileSize = Integer.MAX_VALUE;
+            }
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            ByteBuffer mapping = mapped.order(ByteOrder.BIG_ENDIAN).asReadOnlyBuffer();
+
+            return readHeader(path, mapping, attributes);
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Re-open a region file that may have changed since {@code previous} was opened.
+     *
+     * Costs one stat when nothing changed ({@code previous} is returned as is).
+     * The server rewrites chunks in place, and the shared mapping already shows
+     * those writes, so while the file keeps its size and identity only the header
+     * is parsed again; the file is mapped anew only if it grew, shrank or was replaced.
+     */
+    public static RegionFile open(Path path, RegionFile previous) throws IOException {
+        BasicFileAttributes current;
+        try {
+            current = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        }
+
+        BasicFileAttributes known = previous.attributes;
+        if (known == null || current.size() != known.size() || !Objects.equals(current.fileKey(), known.fileKey())) {
+            return open(path);
+        }
+        if (current.lastModifiedTime().equals(known.lastModifiedTime())) {
+            return previous;
+        }
+        return readHeader(path, previous.mapping, current);
+    }
+
+    private static RegionFile readHeader(Path path, ByteBuffer mapping, BasicFileAttributes attributes) {
+        int[] locations = new int[CHUNKS_PER_REGION];
+        int[] timestamps = new int[CHUNKS_PER_REGION];
+        for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+            locations[i] = mapping.getInt(i * 4);
+            timestamps[i] = mapping.getInt(SECTOR_SIZE + i * 4);
+        }
+        return new RegionFile(path, mapping, locations, timestamps, attributes);
+    }
+
+    /**
+     * Region file with no chunks, used for missing or unreadable files.
+     */
+    public static RegionFile empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Index of a chunk within the region header (0-1023).
+     */
+    public static int chunkIndex(int chunkX, int chunkZ) {
+        return (chunkX & 31) + (chunkZ & 31) * 32;
+    }
+
+    /**
+     * Check if the header lists a chunk at the given index.
+     */
+    public boolean hasChunk(int index) {
+        return mapping != null && locations[index] != 0;
+    }
+
+    /**
+     * Last modification time of a chunk in epoch seconds (0 if never written).
+     */
+    public int getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Copy of the whole timestamp table, indexed by {@link #chunkIndex}.
+     */
+    public int[] getTimestamps() {
+        return timestamps.clone();
+    }
+
+    /**
+     * Check if a chunk's header entry (location or timestamp) differs from another
+     * snapshot of the same file.
+     */
+    public boolean hasChunkChanged(RegionFile other, int index) {
+        return locations[index] != other.locations[index] || timestamps[index] != other.timestamps[index];
+    }
+
+    /**
+     * Byte offset of a chunk's data within the file (0 if absent).
+     */
+    public long getByteOffset(int index) {
+        return (long) (locations[index] >>> 8) * SECTOR_SIZE;
+    }
+
+    /**
+     * Number of 4KB sectors reserved for a chunk (0 if absent).
+     */
+    public int getSectorCount(int index) {
+        return locations[index] & 0xFF;
+    }
+
+    /**
+     * Get the compressed payload of a chunk without copying.
+     * Returns null if the chunk is absent or its header entry is out of bounds.
+     *
+     * The returned buffer is a private slice of the shared mapping,
+     * so callers may consume it freely from any thread.
+     */
+    public ChunkPayload getPayload(int index) {
+        if (!hasChunk(index)) {
+            return null;
+        }
+
+        long offset = getByteOffset(index);
+        int sectorCount = getSectorCount(index);
+        int fileSize = mapping.capacity();
+
+        if (offset < HEADER_SIZE || sectorCount == 0 || offset + CHUNK_HEADER_SIZE > fileSize) {
+            LOGGER.fine("Chunk index " + index + " offset out of bounds: " + offset + " (fileSize=" + fileSize + ") in " + path);
+            return null;
+        }
+
+        int start = (int) offset;
+        int length;
+        byte compressionType;
+        try {
+            length = mapping.getInt(start);
+            compressionType = mapping.get(start + 4);
+        } catch (InternalError e) {
+            // File truncated underneath the mapping (SIGBUS)
+            LOGGER.warning("Region file changed while reading chunk index " + index + ": " + path);
+            return null;
+        }
+
+        // External (.mcc) chunks keep only the compression type byte in the region
+        boolean external = (compressionType & 0x80) != 0;
+        if (length < 1 || (length == 1 && !external)
+                || length > sectorCount * SECTOR_SIZE || start + 4L + length > fileSize) {
+            LOGGER.fine("Chunk index " + index + " length out of bounds: " + length + " bytes in " + path);
+            return null;
+        }
+
+        ByteBuffer data = mapping.slice(start + CHUNK_HEADER_SIZE, length - 1);
+        return new ChunkPayload(compressionType, data);
+    }
+
+    /**
+     * Indices of all chunks listed in the header, ordered by their position in the file.
+     * Walking chunks in this order reads the file front to back.
+     */
+    public int[] chunksByOffset() {
+        if (mapping == null) {
+            return new int[0];
+        }
+
+        // Sort on (sectorOffset << 10 | index) so the index rides along with its key
+        long[] keys = new long[CHUNKS_PER_REGION];
+        int count = 0;
+        for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+            if (locations[i] != 0) {
+                keys[count++] = ((long) (locations[i] >>> 8) << 10) | i;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = (int) (keys[i] & (CHUNKS_PER_REGION - 1));
+        }
+        return indices;
+    }
+
+    /**
+     * Byte offset of a chunk's payload within the file, i.e. where the slice
+     * returned by {@link #getPayload} starts.
+     */
+    public long getPayloadOffset(int index) {
+        return getByteOffset(index) + CHUNK_HEADER_SIZE;
+    }
+
+    /**
+     * Copy {@code length} bytes starting at {@code offset} into {@code dst}
+     * in a single sequential pass over the mapping.
+     */
+    public void read(long offset, byte[] dst, int dstOffset, int length) {
+        if (mapping == null || offset < 0 || offset + length > mapping.capacity()) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " outside " + path);
+        }
+        mapping.get((int) offset, dst, dstOffset, length);
+    }
+
+    /**
+     * Check if this region file has no readable chunks.
+     */
+    public boolean isEmpty() {
+        return mapping == null;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Compressed chunk data as stored in the region file.
+     */
+    public record ChunkPayload(byte compressionType, ByteBuffer data) {
+    }
+}
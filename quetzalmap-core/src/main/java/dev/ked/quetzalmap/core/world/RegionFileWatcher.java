@@ -0,0 +1,230 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Watches each world's region/ directory and reacts to .mca files changing on disk,
+ * whether written by the server or by external tools (offline edits, restored backups).
+ *
+ * A modified region's header is re-read and diffed against the cached one
+ * (see {@link MinecraftRegion#refresh()}), so exactly the chunks whose header
+ * entries changed are dropped from the {@link RegionCache}/{@link ChunkCache}
+ * and reported to the listener. Regions that aren't loaded have nothing cached
+ * and no previous header to diff against; they are reported as a whole, leaving
+ * the listener to compare the header against what it last rendered.
+ *
+ * The server rewrites a region in several writes, so events are coalesced
+ * until a region has been quiet for {@link #SETTLE_MILLIS}.
+ */
+public final class RegionFileWatcher implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(RegionFileWatcher.class.getName());
+
+    private static final long SETTLE_MILLIS = 500;
+    // Flush even while writes keep coming, so a busy region is never starved
+    private static final long MAX_DELAY_MILLIS = 5000;
+    private static final Pattern REGION_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+    /**
+     * Receives the regions and chunks that changed on disk.
+     */
+    public interface Listener {
+        /**
+         * @param worldDir     World directory that was registered with {@link #watch}
+         * @param chunkIndices Changed chunks, indexed by {@link RegionFile#chunkIndex}
+         */
+        void onChunksChanged(Path worldDir, int regionX, int regionZ, int[] chunkIndices);
+
+        /**
+         * A region that wasn't loaded changed, or its file was deleted;
+         * which of its chunks changed is unknown.
+         */
+        void onRegionChanged(Path worldDir, int regionX, int regionZ);
+
+        /**
+         * Change events were lost, so any region of the world may have changed.
+         * Its cached regions have already been dropped.
+         */
+        void onWorldChanged(Path worldDir);
+    }
+
+    private final RegionCache regionCache;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> worlds = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    // Accessed only by the watcher thread
+    private final Set<PendingRegion> pending = new LinkedHashSet<>();
+    private long firstPendingAt;
+
+    private volatile boolean running;
+
+    public RegionFileWatcher(RegionCache regionCache, Listener listener) throws IOException {
+        this.regionCache = regionCache;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "QuetzalMap-RegionWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start watching the region/ directory of a world.
+     *
+     * @return false if the world has no region directory (yet)
+     */
+    public boolean watch(Path worldDir) {
+        Path regionDir = worldDir.resolve("region");
+        try {
+            WatchKey key = regionDir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            worlds.put(key, worldDir);
+            LOGGER.info("Watching region files: " + regionDir);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warning("Failed to watch " + regionDir + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Start the watcher thread.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop watching. Pending changes that haven't settled are dropped.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing watch service", e);
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long waited = System.currentTimeMillis() - firstPendingAt;
+                    key = waited >= MAX_DELAY_MILLIS ? null : watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (key == null) {
+                    flush();
+                    continue;
+                }
+
+                Path worldDir = worlds.get(key);
+                if (worldDir != null) {
+                    collect(worldDir, key);
+                }
+                if (!key.reset()) {
+                    worlds.remove(key);
+                    LOGGER.warning("Stopped watching region files of " + worldDir + " (directory no longer accessible)");
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (RuntimeException e) {
+                // Never let one bad region kill the watcher
+                LOGGER.log(Level.WARNING, "Error handling region file change", e);
+            }
+        }
+    }
+
+    private void collect(Path worldDir, WatchKey key) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost; anything cached for this world may be stale
+                LOGGER.warning("Region watch events overflowed for " + worldDir + ", clearing its cached regions");
+                regionCache.clearWorld(worldDir);
+                listener.onWorldChanged(worldDir);
+                continue;
+            }
+
+            Matcher matcher = REGION_NAME.matcher(event.context().toString());
+            if (!matcher.matches()) {
+                continue; // .mcc external chunks, temp files, etc.
+            }
+            int regionX = Integer.parseInt(matcher.group(1));
+            int regionZ = Integer.parseInt(matcher.group(2));
+
+            if (pending.isEmpty()) {
+                firstPendingAt = System.currentTimeMillis();
+            }
+            pending.add(new PendingRegion(worldDir, regionX, regionZ));
+        }
+    }
+
+    private void flush() {
+        for (PendingRegion region : pending) {
+            try {
+                int[] changed = diff(region);
+                if (changed == null) {
+                    LOGGER.fine("Region " + region + " changed on disk (not loaded or deleted)");
+                    listener.onRegionChanged(region.worldDir(), region.regionX(), region.regionZ());
+                } else if (changed.length > 0) {
+                    LOGGER.fine("Region " + region + ": " + changed.length + " chunks changed on disk");
+                    listener.onChunksChanged(region.worldDir(), region.regionX(), region.regionZ(), changed);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error refreshing region " + region, e);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Changed chunks of a region, invalidating them in the caches.
+     *
+     * @return null if the region isn't loaded (so there is nothing to diff against) or was deleted
+     */
+    private int[] diff(PendingRegion region) {
+        Path regionFile = region.worldDir().resolve("region")
+                .resolve("r." + region.regionX() + "." + region.regionZ() + ".mca");
+        if (!Files.exists(regionFile)) {
+            // Deleted - drop whatever is cached for it; every chunk is gone
+            regionCache.invalidateRegion(region.worldDir(), region.regionX(), region.regionZ());
+            return null;
+        }
+        return regionCache.refreshRegion(region.worldDir(), region.regionX(), region.regionZ());
+    }
+
+    private record PendingRegion(Path worldDir, int regionX, int regionZ) {
+        @Override
+        public String toString() {
+            return worldDir + " @ " + regionX + "," + regionZ;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.util.Arrays;
+
+/**
+ * Decoded surfaces of a whole region together with the region header
+ * timestamps they were decoded at.
+ *
+ * A chunk in the snapshot is still valid while its timestamp matches the one
+ * in the live region header, so it can be reused without touching the .mca file.
+ * Entries that were never decoded are marked {@link #UNKNOWN} and never match.
+ */
+public final class RegionSnapshot {
+    /**
+     * Timestamp of a chunk the snapshot knows nothing about.
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final int[] timestamps;
+    private final MinecraftChunk[] chunks;
+
+    /**
+     * @param timestamps Header timestamp per chunk index, or {@link #UNKNOWN}
+     * @param chunks     Decoded chunk per index, null where the chunk is absent
+     */
+    public RegionSnapshot(int[] timestamps, MinecraftChunk[] chunks) {
+        if (timestamps.length != RegionFile.CHUNKS_PER_REGION || chunks.length != RegionFile.CHUNKS_PER_REGION) {
+            throw new IllegalArgumentException("Snapshot must cover " + RegionFile.CHUNKS_PER_REGION + " chunks");
+        }
+        this.timestamps = timestamps;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Snapshot that knows no chunks, used as a base for partial updates.
+     */
+    public static RegionSnapshot empty() {
+        int[] timestamps = new int[RegionFile.CHUNKS_PER_REGION];
+        Arrays.fill(timestamps, UNKNOWN);
+        return new RegionSnapshot(timestamps, new MinecraftChunk[RegionFile.CHUNKS_PER_REGION]);
+    }
+
+    /**
+     * Check if the snapshot entry for a chunk was taken at the given header timestamp.
+     */
+    public boolean isCurrent(int index, int timestamp) {
+        return timestamps[index] != UNKNOWN && timestamps[index] == timestamp;
+    }
+
+    /**
+     * Check if every entry matches the given header timestamps.
+     */
+    public boolean isCurrent(int[] headerTimestamps) {
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            if (!isCurrent(index, headerTimestamps[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Decoded chunk at an index (null if absent or unknown).
+     */
+    public MinecraftChunk getChunk(int index) {
+        return chunks[index];
+    }
+
+    /**
+     * Copy of this snapshot with the given entries replaced.
+     */
+    public RegionSnapshot with(int[] indices, int count, int[] newTimestamps, MinecraftChunk[] newChunks) {
+        int[] timestamps = this.timestamps.clone();
+        MinecraftChunk[] chunks = this.chunks.clone();
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            timestamps[index] = newTimestamps[index];
+            chunks[index] = newChunks[index];
+        }
+        return new RegionSnapshot(timestamps, chunks);
+    }
+}
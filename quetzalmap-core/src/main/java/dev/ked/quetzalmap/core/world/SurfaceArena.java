@@ -0,0 +1,131 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Off-heap storage for chunk surfaces.
+ *
+ * Surfaces are stored in fixed 1KB slots (256 packed columns) carved out of
+ * 4MB direct ByteBuffer slabs, so decoded chunk data doesn't live on the Java
+ * heap at all. Slots are allocated when a chunk is decoded and freed when its
+ * last reference is released (see {@link MinecraftChunk#retain()}), so a slot
+ * is never reused while anything can still read it. Slabs are never returned
+ * to the OS; the arena stays at its high-water mark.
+ */
+public final class SurfaceArena {
+    private static final Logger LOGGER = Logger.getLogger(SurfaceArena.class.getName());
+
+    static final int SLOT_INTS = 256;
+    private static final int SLOT_BYTES = SLOT_INTS * 4;
+    private static final int SLOTS_PER_SLAB = 4096; // 4MB slabs
+
+    // Int views of each slab (native order); absolute get/put is thread-safe
+    private final CopyOnWriteArrayList<IntBuffer> slabs = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<Integer> freed = new ArrayDeque<>();
+    private final Object lock = new Object();
+
+    private volatile long maximumBytes;
+    private int allocatedSlots; // high-water mark, guarded by lock
+    private int liveSlots;      // guarded by lock
+
+    public SurfaceArena(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        LOGGER.info("SurfaceArena initialized: capacity=" + (maximumBytes >> 20) + "MB off-heap");
+    }
+
+    /**
+     * Copy 256 packed columns into a free slot.
+     *
+     * @return the slot, or -1 if the arena is full (the caller keeps the data on heap)
+     */
+    int store(int[] columns) {
+        int slot = allocate();
+        if (slot < 0) {
+            return -1;
+        }
+        slab(slot).put(offset(slot), columns, 0, SLOT_INTS);
+        return slot;
+    }
+
+    /**
+     * Return a slot once nothing references its chunk any more.
+     */
+    void free(int slot) {
+        synchronized (lock) {
+            freed.addLast(slot);
+            liveSlots--;
+        }
+    }
+
+    /**
+     * Int view of the slab containing a slot.
+     */
+    IntBuffer slab(int slot) {
+        return slabs.get(slot / SLOTS_PER_SLAB);
+    }
+
+    /**
+     * Index of a slot's first column within its slab.
+     */
+    static int offset(int slot) {
+        return (slot % SLOTS_PER_SLAB) * SLOT_INTS;
+    }
+
+    private int allocate() {
+        synchronized (lock) {
+            Integer reused = freed.pollFirst();
+            if (reused != null) {
+                liveSlots++;
+                return reused;
+            }
+
+            if ((long) (allocatedSlots + 1) * SLOT_BYTES > maximumBytes) {
+                return -1;
+            }
+            if (allocatedSlots == slabs.size() * SLOTS_PER_SLAB) {
+                slabs.add(ByteBuffer.allocateDirect(SLOTS_PER_SLAB * SLOT_BYTES)
+                        .order(ByteOrder.nativeOrder())
+                        .asIntBuffer());
+                LOGGER.fine("SurfaceArena grew to " + slabs.size() + " slabs");
+            }
+            liveSlots++;
+            return allocatedSlots++;
+        }
+    }
+
+    /**
+     * Change the capacity. Shrinking stops growth but doesn't release slabs.
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Get arena statistics.
+     */
+    public ArenaStats getStats() {
+        synchronized (lock) {
+            return new ArenaStats(liveSlots, freed.size(), (long) slabs.size() * SLOTS_PER_SLAB * SLOT_BYTES, maximumBytes);
+        }
+    }
+
+    /**
+     * Arena statistics snapshot.
+     */
+    public record ArenaStats(int liveSlots, int freeSlots, long reservedBytes, long maximumBytes) {
+        @Override
+        public String toString() {
+            return String.format("ArenaStats[live=%d, free=%d, reserved=%dMB/%dMB]",
+                    liveSlots, freeSlots, reservedBytes >> 20, maximumBytes >> 20);
+        }
+    }
+}
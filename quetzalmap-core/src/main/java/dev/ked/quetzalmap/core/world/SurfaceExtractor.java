@@ -0,0 +1,270 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Extracts the topmost non-air block of each x,z column from scanned chunk NBT.
+ *
+ * In {@link MinecraftChunk.SurfaceMode#HEIGHTMAP} mode the WORLD_SURFACE
+ * heightmap is used to jump straight to the one relevant block per column.
+ * Each hit is verified (block is non-air, block above is air); columns with
+ * a missing or stale heightmap entry fall back to a top-down section scan
+ * that stops as soon as every column is resolved.
+ */
+final class SurfaceExtractor implements ChunkNbtScanner.Visitor {
+    private static final Logger LOGGER = Logger.getLogger(SurfaceExtractor.class.getName());
+
+    private static final String WORLD_SURFACE = "WORLD_SURFACE";
+    private static final int COLUMNS = 256;
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+    // 21w37a: the overworld extends down to y=-64; chunks carry "yPos" from 21w43a on
+    private static final int EXTENDED_HEIGHT_DATA_VERSION = 2834;
+    private static final int EXTENDED_MIN_Y = -64;
+
+    // Per-thread scratch for bulk-decoded section indices
+    private static final ThreadLocal<short[]> SECTION_INDICES =
+            ThreadLocal.withInitial(() -> new short[PaletteDecoder.SECTION_BLOCKS]);
+
+    private final MinecraftChunk.SurfaceMode mode;
+
+    private int dataVersion;
+    private int dimensionMinSectionY = UNRESOLVED;
+    private long[] worldSurface;
+
+    // Sections in NBT order
+    private int sectionCount;
+    private int[] sectionYs = new int[24];
+    private String[][] palettes = new String[24][];
+    private long[][] blockData = new long[24][];
+
+    // Resolved lazily in extract(), once DataVersion is known
+    private boolean spanning;
+    private int[] sectionBits;
+    private int[][] sectionIds;
+
+    private final BlockRegistry registry = BlockRegistry.getInstance();
+
+    SurfaceExtractor(MinecraftChunk.SurfaceMode mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    public void visitDataVersion(int dataVersion) {
+        this.dataVersion = dataVersion;
+    }
+
+    @Override
+    public void visitMinSectionY(int minSectionY) {
+        this.dimensionMinSectionY = minSectionY;
+    }
+
+    @Override
+    public void visitSection(int sectionY, String[] palette, long[] data) {
+        if (sectionCount == sectionYs.length) {
+            int newSize = sectionCount * 2;
+            sectionYs = Arrays.copyOf(sectionYs, newSize);
+            palettes = Arrays.copyOf(palettes, newSize);
+            blockData = Arrays.copyOf(blockData, newSize);
+        }
+        sectionYs[sectionCount] = sectionY;
+        palettes[sectionCount] = palette;
+        blockData[sectionCount] = data;
+        sectionCount++;
+    }
+
+    @Override
+    public void visitHeightmap(String type, long[] data) {
+        if (WORLD_SURFACE.equals(type)) {
+            worldSurface = data;
+        }
+    }
+
+    /**
+     * Resolve the surface block of every column into {@code columns[z * 16 + x]}
+     * using the {@link MinecraftChunk#packColumn} layout.
+     * Columns without any non-air block are left as {@link MinecraftChunk#EMPTY_COLUMN}.
+     */
+    void extract(int[] columns) {
+        if (sectionCount == 0) {
+            return;
+        }
+
+        // Order sections top-down and index them by Y for direct lookups
+        Integer[] order = new Integer[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(sectionYs[b], sectionYs[a]));
+
+        int minSectionY = sectionYs[order[sectionCount - 1]];
+        int maxSectionY = sectionYs[order[0]];
+        int[] sectionByY = new int[maxSectionY - minSectionY + 1];
+        Arrays.fill(sectionByY, -1);
+        for (int i = 0; i < sectionCount; i++) {
+            sectionByY[sectionYs[i] - minSectionY] = i;
+        }
+
+        int maxY = maxSectionY * 16 + 15;
+
+        spanning = PaletteDecoder.isSpanning(dataVersion);
+        sectionBits = new int[sectionCount];
+        sectionIds = new int[sectionCount][];
+        for (int i = 0; i < sectionCount; i++) {
+            sectionBits[i] = resolveBits(i);
+        }
+
+        int[] surfaceY = new int[COLUMNS];
+        Arrays.fill(surfaceY, UNRESOLVED);
+        int unresolved = COLUMNS;
+
+        if (mode == MinecraftChunk.SurfaceMode.HEIGHTMAP && worldSurface != null) {
+            // Heights count from the dimension's floor, not from the lowest section saved
+            int heightmapBaseY = dimensionMinY();
+            short[] heights = new short[COLUMNS];
+            if (unpackHeightmap(worldSurface, heights)) {
+                for (int column = 0; column < COLUMNS; column++) {
+                    int height = heights[column];
+                    if (height == 0) {
+                        // Empty column or heightmap not computed yet - let the scan decide
+                        continue;
+                    }
+
+                    int y = heightmapBaseY + height - 1;
+                    int x = column & 15;
+                    int z = column >> 4;
+                    if (y <= maxY && !isAir(sectionByY, minSectionY, x, y, z)
+                            && (y == maxY || isAir(sectionByY, minSectionY, x, y + 1, z))) {
+                        surfaceY[column] = y;
+                        unresolved--;
+                    }
+                }
+                if (unresolved > 0) {
+                    LOGGER.fine("Heightmap stale for " + unresolved + " columns, scanning sections");
+                }
+            }
+        }
+
+        // Top-down scan for anything the heightmap couldn't answer
+        short[] indices = SECTION_INDICES.get();
+        for (int s = 0; s < sectionCount && unresolved > 0; s++) {
+            int section = order[s];
+            int[] ids = resolvePalette(section);
+            int bits = sectionBits[section];
+            if (bits == 0) {
+                if (registry.isAir(ids[0])) {
+                    continue; // All-air section
+                }
+                // Uniform solid section: its top layer resolves every remaining column
+                int topY = sectionYs[section] * 16 + 15;
+                for (int column = 0; column < COLUMNS; column++) {
+                    if (surfaceY[column] == UNRESOLVED) {
+                        surfaceY[column] = topY;
+                    }
+                }
+                unresolved = 0;
+                break;
+            }
+
+            // Decode all 4096 indices once, then probe columns top-down
+            byte[] flags = registry.flagsSnapshot();
+            PaletteDecoder.decode(blockData[section], bits, spanning, PaletteDecoder.SECTION_BLOCKS, indices);
+            int baseY = sectionYs[section] * 16;
+            for (int localY = 15; localY >= 0 && unresolved > 0; localY--) {
+                int rowStart = localY << 8;
+                for (int column = 0; column < COLUMNS; column++) {
+                    if (surfaceY[column] != UNRESOLVED) {
+                        continue;
+                    }
+                    int paletteIndex = indices[rowStart | column];
+                    if (paletteIndex < ids.length && (flags[ids[paletteIndex]] & BlockRegistry.FLAG_AIR) == 0) {
+                        surfaceY[column] = baseY + localY;
+                        unresolved--;
+                    }
+                }
+            }
+        }
+
+        for (int column = 0; column < COLUMNS; column++) {
+            int y = surfaceY[column];
+            if (y == UNRESOLVED) {
+                continue; // No non-air block in this column
+            }
+            int section = sectionByY[(y >> 4) - minSectionY];
+            int id = blockIdAt(section, ((y & 15) << 8) | column);
+            columns[column] = MinecraftChunk.packColumn(id, y);
+        }
+    }
+
+    private boolean isAir(int[] sectionByY, int minSectionY, int x, int y, int z) {
+        int slot = (y >> 4) - minSectionY;
+        if (slot < 0 || slot >= sectionByY.length || sectionByY[slot] < 0) {
+            return true; // Missing section = all air
+        }
+        return registry.isAir(blockIdAt(sectionByY[slot], ((y & 15) << 8) | (z << 4) | x));
+    }
+
+    private int blockIdAt(int section, int blockIndex) {
+        int[] ids = resolvePalette(section);
+        int bits = sectionBits[section];
+        int paletteIndex = bits == 0 ? 0 : PaletteDecoder.get(blockData[section], bits, spanning, blockIndex);
+        return paletteIndex < ids.length ? ids[paletteIndex] : BlockRegistry.AIR;
+    }
+
+    /**
+     * Resolve a section's palette names to registry IDs once per section.
+     */
+    private int[] resolvePalette(int section) {
+        int[] ids = sectionIds[section];
+        if (ids == null) {
+            ids = registry.resolve(palettes[section]);
+            sectionIds[section] = ids;
+        }
+        return ids;
+    }
+
+    /**
+     * Bits per entry of a section's packed data, or 0 if every block is palette entry 0.
+     */
+    private int resolveBits(int section) {
+        long[] data = blockData[section];
+        int paletteSize = palettes[section].length;
+        if (data == null || paletteSize == 1) {
+            return 0;
+        }
+
+        int bits = PaletteDecoder.resolveBits(data.length, PaletteDecoder.SECTION_BLOCKS,
+                PaletteDecoder.bitsForPalette(paletteSize), spanning);
+        if (bits == 0 || bits > 16) {
+            LOGGER.fine("Unexpected block data length " + data.length + " for palette size " + paletteSize);
+            return 0;
+        }
+        return bits;
+    }
+
+    /**
+     * Lowest Y of the chunk's dimension: from "yPos" where present, otherwise
+     * implied by DataVersion (older chunks may not save their lowest sections).
+     */
+    private int dimensionMinY() {
+        if (dimensionMinSectionY != UNRESOLVED) {
+            return dimensionMinSectionY * 16;
+        }
+        return dataVersion >= EXTENDED_HEIGHT_DATA_VERSION ? EXTENDED_MIN_Y : 0;
+    }
+
+    /**
+     * Unpack a 256-entry heightmap. The entry width isn't stored, so it is
+     * derived from the array length and the layout implied by DataVersion.
+     *
+     * @return false if the array doesn't look like a heightmap
+     */
+    private boolean unpackHeightmap(long[] data, short[] heights) {
+        int bits = PaletteDecoder.resolveBits(data.length, COLUMNS, 0, spanning);
+        if (bits == 0 || bits > 16) {
+            return false;
+        }
+        PaletteDecoder.decode(data, bits, spanning, COLUMNS, heights);
+        return true;
+    }
+}
@@ -0,0 +1,294 @@
+package dev.ked.quetzalmap.core.world;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists decoded region surfaces so tiles can be rebuilt after a restart
+ * without decompressing and parsing chunks again.
+ *
+ * One file per region ({world}/r.{x}.{z}.qms) holds the region header
+ * timestamps, a table of block names and one packed column per x,z of every
+ * present chunk. Block names (not registry IDs) are stored, so a snapshot
+ * stays valid across restarts and color table changes.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * int   magic "QMSS"
+ * byte  version
+ * byte  flags (1 = body is LZ4 compressed)
+ * int   body length (uncompressed)
+ * body: int nameCount, nameCount × UTF name,
+ *       1024 × int timestamp, 16 × long presence bitmap,
+ *       256 × int column (name index &lt;&lt; 16 | y, -1 if empty) per present chunk
+ * </pre>
+ */
+public final class SurfaceSnapshotStore {
+    private static final Logger LOGGER = Logger.getLogger(SurfaceSnapshotStore.class.getName());
+
+    private static final int MAGIC = 0x514D5353; // "QMSS"
+    private static final byte VERSION = 1;
+    private static final byte FLAG_LZ4 = 1;
+    private static final int HEADER_SIZE = 4 + 1 + 1 + 4;
+    private static final int COLUMNS = 256;
+    // Name index 0 at y=0 packs to 0, so empty columns get a value no real column can have
+    private static final int EMPTY_LOCAL = -1;
+    // Largest body a region can encode: a full name table (block names are short
+    // resource locations), timestamps, presence bitmap and every chunk present
+    private static final int MAX_NAME_BYTES = 2 + 256;
+    private static final long MAX_BODY_LENGTH = 4 + (BlockRegistry.MAX_ID + 1L) * MAX_NAME_BYTES
+            + RegionFile.CHUNKS_PER_REGION * 4 + RegionFile.CHUNKS_PER_REGION / 8
+            + (long) RegionFile.CHUNKS_PER_REGION * COLUMNS * 4;
+    // LZ4 can't compress better than about 255:1
+    private static final int MAX_LZ4_RATIO = 255;
+
+    private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4SafeDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    private final Path directory;
+    private final boolean compress;
+
+    /**
+     * @param directory Root directory for snapshot files
+     * @param compress  Whether to LZ4-compress snapshots (roughly 10x smaller)
+     */
+    public SurfaceSnapshotStore(Path directory, boolean compress) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.compress = compress;
+    }
+
+    /**
+     * Load a region snapshot.
+     * Returns null if none exists or it can't be read.
+     */
+    public RegionSnapshot load(String world, int regionX, int regionZ) {
+        Path path = getPath(world, regionX, regionZ);
+        byte[] file;
+        try {
+            file = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read surface snapshot: " + path, e);
+            return null;
+        }
+
+        try {
+            return decode(file, regionX, regionZ);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Discarding corrupt surface snapshot " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Save a region snapshot, replacing any previous one atomically.
+     */
+    public boolean save(String world, int regionX, int regionZ, RegionSnapshot snapshot) {
+        Path path = getPath(world, regionX, regionZ);
+        try {
+            Files.createDirectories(path.getParent());
+            byte[] file = encode(snapshot);
+
+            // Unique temp file so concurrent saves of one region can't interleave
+            Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tempPath, file);
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save surface snapshot: " + path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Delete a region snapshot (e.g. after the region file was deleted).
+     */
+    public boolean delete(String world, int regionX, int regionZ) {
+        try {
+            return Files.deleteIfExists(getPath(world, regionX, regionZ));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete surface snapshot", e);
+            return false;
+        }
+    }
+
+    private byte[] encode(RegionSnapshot snapshot) throws IOException {
+        BlockRegistry registry = BlockRegistry.getInstance();
+
+        // Map registry IDs to a dense per-file name table
+        Map<Integer, Integer> localIds = new HashMap<>();
+        String[] names = new String[16];
+        int nameCount = 0;
+        long[] present = new long[RegionFile.CHUNKS_PER_REGION / 64];
+        int presentCount = 0;
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            MinecraftChunk chunk = snapshot.getChunk(index);
+            if (chunk == null) {
+                continue;
+            }
+            present[index >>> 6] |= 1L << index;
+            presentCount++;
+            for (int column = 0; column < COLUMNS; column++) {
+                int packed = chunk.getColumn(column);
+                if (packed != MinecraftChunk.EMPTY_COLUMN && !localIds.containsKey(MinecraftChunk.columnBlockId(packed))) {
+                    if (nameCount == names.length) {
+                        names = Arrays.copyOf(names, nameCount * 2);
+                    }
+                    localIds.put(MinecraftChunk.columnBlockId(packed), nameCount);
+                    names[nameCount++] = registry.getType(MinecraftChunk.columnBlockId(packed)).getId();
+                }
+            }
+        }
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(
+                RegionFile.CHUNKS_PER_REGION * 4 + presentCount * COLUMNS * 4 + nameCount * 32);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeInt(nameCount);
+        for (int i = 0; i < nameCount; i++) {
+            body.writeUTF(names[i]);
+        }
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            body.writeInt(snapshot.getTimestamp(index));
+        }
+        for (long bits : present) {
+            body.writeLong(bits);
+        }
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            MinecraftChunk chunk = snapshot.getChunk(index);
+            if (chunk == null) {
+                continue;
+            }
+            for (int column = 0; column < COLUMNS; column++) {
+                int packed = chunk.getColumn(column);
+                if (packed == MinecraftChunk.EMPTY_COLUMN) {
+                    body.writeInt(EMPTY_LOCAL);
+                } else {
+                    body.writeInt(MinecraftChunk.packColumn(
+                            localIds.get(MinecraftChunk.columnBlockId(packed)), MinecraftChunk.columnHeight(packed)));
+                }
+            }
+        }
+        body.flush();
+
+        byte[] raw = bodyBytes.toByteArray();
+        byte[] stored = compress ? LZ4_COMPRESSOR.compress(raw) : raw;
+
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + stored.length);
+        file.putInt(MAGIC)
+                .put(VERSION)
+                .put(compress ? FLAG_LZ4 : 0)
+                .putInt(raw.length)
+                .put(stored);
+        return file.array();
+    }
+
+    private static RegionSnapshot decode(byte[] file, int regionX, int regionZ) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(file);
+        if (file.length < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not a surface snapshot");
+        }
+        byte version = header.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        byte flags = header.get();
+        int rawLength = header.getInt();
+        boolean lz4 = (flags & FLAG_LZ4) != 0;
+        long storedLength = file.length - HEADER_SIZE;
+        // Validate before allocating, so a corrupt length can't ask for gigabytes
+        if (rawLength < 0 || rawLength > MAX_BODY_LENGTH
+                || (lz4 ? rawLength > storedLength * MAX_LZ4_RATIO : rawLength != storedLength)) {
+            throw new IOException("Invalid snapshot body length " + rawLength);
+        }
+
+        byte[] raw;
+        if (lz4) {
+            raw = new byte[rawLength];
+            try {
+                int n = LZ4_DECOMPRESSOR.decompress(file, HEADER_SIZE, file.length - HEADER_SIZE, raw, 0, rawLength);
+                if (n != rawLength) {
+                    throw new IOException("Snapshot body truncated");
+                }
+            } catch (LZ4Exception e) {
+                throw new IOException("Invalid LZ4 body: " + e.getMessage(), e);
+            }
+        } else {
+            raw = Arrays.copyOfRange(file, HEADER_SIZE, HEADER_SIZE + rawLength);
+        }
+
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(raw));
+        int nameCount = body.readInt();
+        if (nameCount < 0 || nameCount > BlockRegistry.MAX_ID) {
+            throw new IOException("Invalid name count " + nameCount);
+        }
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            names[i] = body.readUTF();
+        }
+        // Names resolve to this run's registry IDs (and therefore current colors)
+        int[] ids = BlockRegistry.getInstance().resolve(names);
+
+        int[] timestamps = new int[RegionFile.CHUNKS_PER_REGION];
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            timestamps[index] = body.readInt();
+        }
+        long[] present = new long[RegionFile.CHUNKS_PER_REGION / 64];
+        for (int i = 0; i < present.length; i++) {
+            present[i] = body.readLong();
+        }
+
+        MinecraftChunk[] chunks = new MinecraftChunk[RegionFile.CHUNKS_PER_REGION];
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            if ((present[index >>> 6] & (1L << index)) == 0) {
+                continue;
+            }
+            int[] columns = new int[COLUMNS];
+            for (int column = 0; column < COLUMNS; column++) {
+                int local = body.readInt();
+                if (local == EMPTY_LOCAL) {
+                    continue;
+                }
+                int nameIndex = MinecraftChunk.columnBlockId(local);
+                if (nameIndex >= nameCount) {
+                    throw new IOException("Block name index " + nameIndex + " out of range");
+                }
+                columns[column] = MinecraftChunk.packColumn(ids[nameIndex], MinecraftChunk.columnHeight(local));
+            }
+            chunks[index] = MinecraftChunk.fromColumns(
+                    (regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5), columns);
+        }
+
+        return new RegionSnapshot(timestamps, chunks);
+    }
+
+    private Path getPath(String world, int regionX, int regionZ) {
+        return directory.resolve(world).resolve("r." + regionX + "." + regionZ + ".qms");
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.ked.quetzalmap.core.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockRegistryTest {
+    private static final int THREADS = 8;
+    private static final int NAMES = 2000;
+
+    private final BlockRegistry registry = BlockRegistry.getInstance();
+
+    @Test
+    void airIsRegisteredFirst() {
+        assertEquals(BlockRegistry.AIR, registry.getId("minecraft:air"));
+        assertTrue(registry.isAir(BlockRegistry.AIR));
+        assertTrue((registry.getFlags(registry.getId("minecraft:water")) & BlockRegistry.FLAG_WATER) != 0);
+    }
+
+    @Test
+    void concurrentRegistrationAssignsOneIdPerName() throws Exception {
+        String[] names = new String[NAMES];
+        for (int i = 0; i < NAMES; i++) {
+            names[i] = "test:concurrent_block_" + i;
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t * 97;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    // Each thread walks the names from a different starting point
+                    int[] ids = new int[NAMES];
+                    for (int i = 0; i < NAMES; i++) {
+                        int index = (i + offset) % NAMES;
+                        int id = registry.getId(names[index]);
+                        ids[index] = id;
+                        // The arrays must already cover any ID a reader can see
+                        registry.getColor(id);
+                        registry.getFlags(id);
+                        assertEquals(names[index], registry.getType(id).getId());
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+
+            int[] expected = results.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<int[]> result : results) {
+                assertArrayEquals(expected, result.get(30, TimeUnit.SECONDS));
+            }
+
+            Set<Integer> distinct = new HashSet<>();
+            for (int id : expected) {
+                assertTrue(id > BlockRegistry.AIR && id < registry.size());
+                distinct.add(id);
+            }
+            assertEquals(NAMES, distinct.size());
+            assertArrayEquals(expected, registry.resolve(names));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package dev.ked.quetzalmap.core.world;
+
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkDecompressorTest {
+    private final ChunkDecompressor decompressor = ChunkDecompressor.get();
+
+    @Test
+    void decompressesEveryType() throws IOException {
+        byte[] chunk = ChunkFixtures.modernChunk();
+        assertRoundTrip(ChunkDecompressor.GZIP, gzip(chunk), chunk);
+        assertRoundTrip(ChunkDecompressor.ZLIB, zlib(chunk), chunk);
+        assertRoundTrip(ChunkDecompressor.NONE, chunk, chunk);
+        assertRoundTrip(ChunkDecompressor.LZ4, lz4(chunk, 64 * 1024), chunk);
+    }
+
+    @Test
+    void decompressesFromDirectBuffers() throws IOException {
+        byte[] chunk = ChunkFixtures.legacyChunk();
+        for (byte type : new byte[] {ChunkDecompressor.GZIP, ChunkDecompressor.ZLIB,
+                ChunkDecompressor.NONE, ChunkDecompressor.LZ4}) {
+            byte[] compressed = compress(type, chunk);
+            ByteBuffer direct = ByteBuffer.allocateDirect(compressed.length + 3);
+            direct.position(3);
+            direct.put(compressed).position(3);
+
+            int length = decompressor.decompress(type, direct);
+            assertArrayEquals(chunk, Arrays.copyOf(decompressor.buffer(), length), "type " + type);
+            assertEquals(direct.limit(), direct.position(), "type " + type + " left input unconsumed");
+        }
+    }
+
+    @Test
+    void skipsOptionalGzipHeaderFields() throws IOException {
+        byte[] chunk = ChunkFixtures.modernChunk();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // FEXTRA | FNAME | FCOMMENT | FHCRC
+        out.write(new byte[] {0x1F, (byte) 0x8B, 8, 0x1E, 0, 0, 0, 0, 0, 3});
+        out.write(new byte[] {3, 0, 'a', 'b', 'c'});
+        out.write("r.0.0.mca\0".getBytes(StandardCharsets.US_ASCII));
+        out.write("comment\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(new byte[] {0x12, 0x34});
+        out.write(deflate(chunk, true));
+        out.write(new byte[8]); // Trailer is not verified
+
+        assertRoundTrip(ChunkDecompressor.GZIP, out.toByteArray(), chunk);
+    }
+
+    @Test
+    void decompressesMultiBlockLz4() throws IOException {
+        byte[] noise = new byte[300 * 1024];
+        new Random(8).nextBytes(noise);
+        byte[] data = new byte[noise.length * 2];
+        // Incompressible half stored raw, compressible half as LZ4 blocks
+        System.arraycopy(noise, 0, data, 0, noise.length);
+
+        assertRoundTrip(ChunkDecompressor.LZ4, lz4(data, 32 * 1024), data);
+        decompressor.trim();
+    }
+
+    @Test
+    void trimReleasesOversizedBuffers() throws IOException {
+        byte[] large = new byte[4 * 1024 * 1024];
+        assertRoundTrip(ChunkDecompressor.ZLIB, zlib(large), large);
+        assertTrue(decompressor.buffer().length >= large.length);
+
+        decompressor.trim();
+        assertTrue(decompressor.buffer().length < large.length);
+        byte[] chunk = ChunkFixtures.modernChunk();
+        assertRoundTrip(ChunkDecompressor.ZLIB, zlib(chunk), chunk);
+    }
+
+    @Test
+    void rejectsOutputPastTheCap() throws IOException {
+        byte[] bomb = new byte[ChunkDecompressor.MAX_DECOMPRESSED_SIZE + 1];
+        for (byte type : new byte[] {ChunkDecompressor.GZIP, ChunkDecompressor.ZLIB, ChunkDecompressor.LZ4}) {
+            ByteBuffer in = ByteBuffer.wrap(compress(type, bomb));
+            assertThrows(IOException.class, () -> decompressor.decompress(type, in), "type " + type);
+        }
+        decompressor.trim();
+    }
+
+    @Test
+    void rejectsCorruptPayloads() throws IOException {
+        byte[] chunk = ChunkFixtures.modernChunk();
+        for (byte type : new byte[] {ChunkDecompressor.GZIP, ChunkDecompressor.ZLIB, ChunkDecompressor.LZ4}) {
+            byte[] compressed = compress(type, chunk);
+
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+            byte[] garbage = compressed.clone();
+            Arrays.fill(garbage, 0, Math.min(24, garbage.length), (byte) 0x55);
+
+            assertThrows(IOException.class, () -> decompressor.decompress(type, ByteBuffer.wrap(truncated)),
+                    "truncated type " + type);
+            assertThrows(IOException.class, () -> decompressor.decompress(type, ByteBuffer.wrap(garbage)),
+                    "garbage type " + type);
+        }
+        assertThrows(IOException.class, () -> decompressor.decompress((byte) 99, ByteBuffer.wrap(chunk)));
+    }
+
+    private void assertRoundTrip(byte type, byte[] compressed, byte[] expected) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(compressed);
+        int length = decompressor.decompress(type, in);
+        assertEquals(expected.length, length, "type " + type);
+        assertArrayEquals(expected, Arrays.copyOf(decompressor.buffer(), length), "type " + type);
+    }
+
+    private static byte[] compress(byte type, byte[] data) throws IOException {
+        return switch (type) {
+            case ChunkDecompressor.GZIP -> gzip(data);
+            case ChunkDecompressor.ZLIB -> zlib(data);
+            case ChunkDecompressor.LZ4 -> lz4(data, 64 * 1024);
+            default -> data;
+        };
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zlib(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+        try (OutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] lz4(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new LZ4BlockOutputStream(bytes, blockSize)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,180 @@
+package dev.ked.quetzalmap.core.world;
+
+/**
+ * Chunk NBT documents shaped like real saves, for tests.
+ *
+ * Both chunks have stone up to and including {@link #surfaceY}(x, z) and air
+ * above, with a grass block on top of every column. Their WORLD_SURFACE
+ * heightmaps are correct unless stated otherwise.
+ */
+final class ChunkFixtures {
+    /** 1.21 overworld chunk: root "sections", "block_states", yPos -4. */
+    static final int MODERN_DATA_VERSION = 3953;
+    static final int MODERN_MIN_SECTION_Y = -4;
+
+    /** 1.15 chunk: "Level" wrapper, "Palette"/"BlockStates", spanning packing. */
+    static final int LEGACY_DATA_VERSION = 2230;
+
+    private ChunkFixtures() {
+    }
+
+    /**
+     * Surface height of a column, varying across the chunk so every column differs
+     * from its neighbours. Between y=1 and y=31, i.e. in sections 0 and 1.
+     */
+    static int surfaceY(int x, int z) {
+        return 1 + (x + 2 * z) % 31;
+    }
+
+    /**
+     * Pack values the way Minecraft does.
+     */
+    static long[] pack(int[] values, int bits, boolean spanning) {
+        long[] data = new long[PaletteDecoder.packedLength(values.length, bits, spanning)];
+        long mask = (1L << bits) - 1;
+        int perLong = 64 / bits;
+        for (int i = 0; i < values.length; i++) {
+            long value = values[i] & mask;
+            if (spanning) {
+                int bitIndex = i * bits;
+                int longIndex = bitIndex >> 6;
+                int offset = bitIndex & 63;
+                data[longIndex] |= value << offset;
+                if (offset + bits > 64) {
+                    data[longIndex + 1] |= value >>> (64 - offset);
+                }
+            } else {
+                data[i / perLong] |= value << ((i % perLong) * bits);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Palette indices of one section (0 = air, 1 = stone, 2 = grass block).
+     */
+    static int[] sectionIndices(int sectionY) {
+        int[] indices = new int[PaletteDecoder.SECTION_BLOCKS];
+        for (int localY = 0; localY < 16; localY++) {
+            int y = sectionY * 16 + localY;
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    int surface = surfaceY(x, z);
+                    indices[(localY << 8) | (z << 4) | x] = y < surface ? 1 : y == surface ? 2 : 0;
+                }
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * WORLD_SURFACE values: one above the surface block, counted from {@code minY}.
+     */
+    static int[] heights(int minY) {
+        int[] heights = new int[256];
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                heights[(z << 4) | x] = surfaceY(x, z) + 1 - minY;
+            }
+        }
+        return heights;
+    }
+
+    static byte[] modernChunk() {
+        return modernChunk(true);
+    }
+
+    /**
+     * 1.21 chunk with a solid deepslate floor section at Y=-4, the surface in
+     * sections 0-1 and an empty section 2, plus the usual unrelated tags.
+     */
+    static byte[] modernChunk(boolean withHeightmap) {
+        NbtWriter nbt = NbtWriter.root()
+                .intTag("DataVersion", MODERN_DATA_VERSION)
+                .intTag("xPos", 3)
+                .intTag("zPos", -2)
+                .intTag("yPos", MODERN_MIN_SECTION_Y)
+                .string("Status", "minecraft:full")
+                .longTag("LastUpdate", 123456L)
+                .list("block_entities", NbtWriter.TAG_COMPOUND, 1)
+                .element().string("id", "minecraft:chest").intTag("x", 50).intTag("y", 5).intTag("z", -30).end()
+                .list("sections", NbtWriter.TAG_COMPOUND, 4);
+
+        // Floor: uniform deepslate, no data array
+        nbt.element().byteTag("Y", MODERN_MIN_SECTION_Y)
+                .compound("block_states")
+                .list("palette", NbtWriter.TAG_COMPOUND, 1)
+                .element().string("Name", "minecraft:deepslate")
+                .compound("Properties").string("axis", "y").end()
+                .end()
+                .end()
+                .compound("biomes")
+                .list("palette", NbtWriter.TAG_STRING, 0)
+                .end()
+                .end();
+
+        for (int sectionY = 0; sectionY <= 1; sectionY++) {
+            nbt.element().byteTag("Y", sectionY)
+                    .compound("block_states")
+                    .list("palette", NbtWriter.TAG_COMPOUND, 3)
+                    .element().string("Name", "minecraft:air").end()
+                    .element().string("Name", "minecraft:stone").end()
+                    .element().compound("Properties").string("snowy", "false").end()
+                    .string("Name", "minecraft:grass_block").end()
+                    .longArray("data", pack(sectionIndices(sectionY), 4, false))
+                    .end()
+                    .longArray("BlockLight", new long[0])
+                    .end();
+        }
+
+        nbt.element().byteTag("Y", 2)
+                .compound("block_states")
+                .list("palette", NbtWriter.TAG_COMPOUND, 1)
+                .element().string("Name", "minecraft:air").end()
+                .end()
+                .end();
+
+        nbt.compound("Heightmaps");
+        if (withHeightmap) {
+            nbt.longArray("WORLD_SURFACE", pack(heights(MODERN_MIN_SECTION_Y * 16), 9, false));
+        }
+        nbt.longArray("MOTION_BLOCKING", pack(heights(MODERN_MIN_SECTION_Y * 16), 9, false))
+                .end()
+                .compound("structures").compound("starts").end().end();
+        return nbt.toBytes();
+    }
+
+    /**
+     * 1.15 chunk: everything under "Level", a light-only section at Y=-1
+     * without a palette, and spanning block states and heightmaps.
+     */
+    static byte[] legacyChunk() {
+        NbtWriter nbt = NbtWriter.root()
+                .intTag("DataVersion", LEGACY_DATA_VERSION)
+                .compound("Level")
+                .intTag("xPos", 3)
+                .intTag("zPos", -2)
+                .string("Status", "full")
+                .intArray("Biomes", new int[1024])
+                .list("Entities", NbtWriter.TAG_COMPOUND, 0)
+                .list("Sections", NbtWriter.TAG_COMPOUND, 3);
+
+        nbt.element().byteTag("Y", -1).longArray("SkyLight", new long[256]).end();
+        for (int sectionY = 0; sectionY <= 1; sectionY++) {
+            nbt.element().byteTag("Y", sectionY)
+                    .list("Palette", NbtWriter.TAG_COMPOUND, 3)
+                    .element().string("Name", "minecraft:air").end()
+                    .element().string("Name", "minecraft:stone").end()
+                    .element().string("Name", "minecraft:grass_block")
+                    .compound("Properties").string("snowy", "false").end().end()
+                    .longArray("BlockStates", pack(sectionIndices(sectionY), 4, true))
+                    .end();
+        }
+
+        return nbt.compound("Heightmaps")
+                .longArray("WORLD_SURFACE", pack(heights(0), 9, true))
+                .end()
+                .end()
+                .toBytes();
+    }
+}
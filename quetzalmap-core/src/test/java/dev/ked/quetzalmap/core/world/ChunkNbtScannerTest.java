@@ -0,0 +1,162 @@
+package dev.ked.quetzalmap.core.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkNbtScannerTest {
+    private static final String[] SURFACE_PALETTE = {"minecraft:air", "minecraft:stone", "minecraft:grass_block"};
+
+    @Test
+    void scansModernLayout() throws IOException {
+        Recorder recorder = scan(ChunkFixtures.modernChunk());
+
+        assertEquals(ChunkFixtures.MODERN_DATA_VERSION, recorder.dataVersion);
+        assertEquals(ChunkFixtures.MODERN_MIN_SECTION_Y, recorder.minSectionY);
+        assertEquals(List.of(-4, 0, 1, 2), recorder.sectionYs);
+
+        assertArrayEquals(new String[] {"minecraft:deepslate"}, recorder.palettes.get(0));
+        assertNull(recorder.data.get(0));
+        for (int s = 1; s <= 2; s++) {
+            assertArrayEquals(SURFACE_PALETTE, recorder.palettes.get(s));
+            assertArrayEquals(ChunkFixtures.pack(ChunkFixtures.sectionIndices(s - 1), 4, false), recorder.data.get(s));
+        }
+        assertArrayEquals(new String[] {"minecraft:air"}, recorder.palettes.get(3));
+
+        assertEquals(2, recorder.heightmaps.size());
+        assertArrayEquals(ChunkFixtures.pack(ChunkFixtures.heights(-64), 9, false),
+                recorder.heightmaps.get("WORLD_SURFACE"));
+    }
+
+    @Test
+    void scansLegacyLevelLayout() throws IOException {
+        Recorder recorder = scan(ChunkFixtures.legacyChunk());
+
+        assertEquals(ChunkFixtures.LEGACY_DATA_VERSION, recorder.dataVersion);
+        assertEquals(Integer.MIN_VALUE, recorder.minSectionY);
+        // The light-only section at Y=-1 has no palette and is not reported
+        assertEquals(List.of(0, 1), recorder.sectionYs);
+        for (int s = 0; s <= 1; s++) {
+            assertArrayEquals(SURFACE_PALETTE, recorder.palettes.get(s));
+            assertArrayEquals(ChunkFixtures.pack(ChunkFixtures.sectionIndices(s), 4, true), recorder.data.get(s));
+        }
+        assertArrayEquals(ChunkFixtures.pack(ChunkFixtures.heights(0), 9, true),
+                recorder.heightmaps.get("WORLD_SURFACE"));
+    }
+
+    @Test
+    void rejectsTruncatedDocuments() {
+        byte[] chunk = ChunkFixtures.modernChunk();
+        for (int length : new int[] {0, 1, 10, chunk.length / 2, chunk.length - 1}) {
+            assertThrows(IOException.class, () -> ChunkNbtScanner.scan(chunk, 0, length, new Recorder()),
+                    "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsNonCompoundRoot() {
+        byte[] nbt = {NbtWriter.TAG_INT, 0, 0, 0, 0, 0, 1};
+        assertThrows(IOException.class, () -> ChunkNbtScanner.scan(nbt, 0, nbt.length, new Recorder()));
+    }
+
+    @Test
+    void rejectsNegativeArrayLength() {
+        byte[] nbt = NbtWriter.root().longArray("junk", new long[0]).toBytes();
+        // Overwrite the array length (after type, name length and name) with -1
+        int lengthPos = 1 + 2 + 1 + 2 + "junk".length();
+        Arrays.fill(nbt, lengthPos, lengthPos + 4, (byte) 0xFF);
+        assertThrows(IOException.class, () -> ChunkNbtScanner.scan(nbt, 0, nbt.length, new Recorder()));
+    }
+
+    @Test
+    void scansAtAnOffset() throws IOException {
+        byte[] chunk = ChunkFixtures.modernChunk();
+        byte[] padded = new byte[chunk.length + 10];
+        System.arraycopy(chunk, 0, padded, 7, chunk.length);
+
+        Recorder recorder = new Recorder();
+        ChunkNbtScanner.scan(padded, 7, chunk.length, recorder);
+        assertEquals(List.of(-4, 0, 1, 2), recorder.sectionYs);
+    }
+
+    @Test
+    void parsesModernSurface() throws IOException {
+        for (MinecraftChunk.SurfaceMode mode : MinecraftChunk.SurfaceMode.values()) {
+            byte[] chunk = ChunkFixtures.modernChunk();
+            assertSurface(MinecraftChunk.parse(chunk, 0, chunk.length, 3, -2, mode));
+        }
+    }
+
+    @Test
+    void parsesModernSurfaceWithoutHeightmap() throws IOException {
+        byte[] chunk = ChunkFixtures.modernChunk(false);
+        assertSurface(MinecraftChunk.parse(chunk, 0, chunk.length, 3, -2));
+    }
+
+    @Test
+    void parsesLegacySurface() throws IOException {
+        for (MinecraftChunk.SurfaceMode mode : MinecraftChunk.SurfaceMode.values()) {
+            byte[] chunk = ChunkFixtures.legacyChunk();
+            assertSurface(MinecraftChunk.parse(chunk, 0, chunk.length, 3, -2, mode));
+        }
+    }
+
+    private static void assertSurface(MinecraftChunk chunk) {
+        int grass = BlockRegistry.getInstance().getId("minecraft:grass_block");
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                assertEquals(grass, chunk.getBlockId(x, z), "block at " + x + "," + z);
+                assertEquals(ChunkFixtures.surfaceY(x, z), chunk.getHeight(x, z), "height at " + x + "," + z);
+            }
+        }
+        assertFalse(chunk.isOffHeap());
+    }
+
+    private static Recorder scan(byte[] nbt) throws IOException {
+        Recorder recorder = new Recorder();
+        ChunkNbtScanner.scan(nbt, 0, nbt.length, recorder);
+        return recorder;
+    }
+
+    private static final class Recorder implements ChunkNbtScanner.Visitor {
+        int dataVersion;
+        int minSectionY = Integer.MIN_VALUE;
+        final List<Integer> sectionYs = new ArrayList<>();
+        final List<String[]> palettes = new ArrayList<>();
+        final List<long[]> data = new ArrayList<>();
+        final Map<String, long[]> heightmaps = new HashMap<>();
+
+        @Override
+        public void visitDataVersion(int dataVersion) {
+            this.dataVersion = dataVersion;
+        }
+
+        @Override
+        public void visitMinSectionY(int minSectionY) {
+            this.minSectionY = minSectionY;
+        }
+
+        @Override
+        public void visitSection(int sectionY, String[] palette, long[] data) {
+            sectionYs.add(sectionY);
+            palettes.add(palette);
+            this.data.add(data);
+        }
+
+        @Override
+        public void visitHeightmap(String type, long[] data) {
+            heightmaps.put(type, data);
+        }
+    }
+}
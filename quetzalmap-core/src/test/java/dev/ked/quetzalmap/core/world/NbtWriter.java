@@ -0,0 +1,134 @@
+package dev.ked.quetzalmap.core.world;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Minimal NBT writer for building chunk documents in tests.
+ * Compounds opened with {@link #compound} or {@link #element} are closed with {@link #end}.
+ */
+final class NbtWriter {
+    static final int TAG_END = 0;
+    static final int TAG_BYTE = 1;
+    static final int TAG_INT = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_STRING = 8;
+    static final int TAG_LIST = 9;
+    static final int TAG_COMPOUND = 10;
+    static final int TAG_INT_ARRAY = 11;
+    static final int TAG_LONG_ARRAY = 12;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * Start a document with an unnamed root compound.
+     */
+    static NbtWriter root() {
+        NbtWriter writer = new NbtWriter();
+        writer.header(TAG_COMPOUND, "");
+        return writer;
+    }
+
+    NbtWriter byteTag(String name, int value) {
+        header(TAG_BYTE, name);
+        return write(() -> out.writeByte(value));
+    }
+
+    NbtWriter intTag(String name, int value) {
+        header(TAG_INT, name);
+        return write(() -> out.writeInt(value));
+    }
+
+    NbtWriter longTag(String name, long value) {
+        header(TAG_LONG, name);
+        return write(() -> out.writeLong(value));
+    }
+
+    NbtWriter string(String name, String value) {
+        header(TAG_STRING, name);
+        return write(() -> out.writeUTF(value));
+    }
+
+    NbtWriter intArray(String name, int[] values) {
+        header(TAG_INT_ARRAY, name);
+        return write(() -> {
+            out.writeInt(values.length);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        });
+    }
+
+    NbtWriter longArray(String name, long[] values) {
+        header(TAG_LONG_ARRAY, name);
+        return write(() -> {
+            out.writeInt(values.length);
+            for (long value : values) {
+                out.writeLong(value);
+            }
+        });
+    }
+
+    /**
+     * Open a named compound.
+     */
+    NbtWriter compound(String name) {
+        return header(TAG_COMPOUND, name);
+    }
+
+    /**
+     * Start a list; for compound lists, write each element with {@link #element}.
+     */
+    NbtWriter list(String name, int elementType, int count) {
+        header(TAG_LIST, name);
+        return write(() -> {
+            out.writeByte(elementType);
+            out.writeInt(count);
+        });
+    }
+
+    /**
+     * Open the next element of a compound list.
+     */
+    NbtWriter element() {
+        return this;
+    }
+
+    /**
+     * Close the innermost open compound (or list element).
+     */
+    NbtWriter end() {
+        return write(() -> out.writeByte(TAG_END));
+    }
+
+    /**
+     * Close the root compound and return the document.
+     */
+    byte[] toBytes() {
+        end();
+        return bytes.toByteArray();
+    }
+
+    private NbtWriter header(int type, String name) {
+        return write(() -> {
+            out.writeByte(type);
+            out.writeUTF(name);
+        });
+    }
+
+    private NbtWriter write(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,105 @@
+package dev.ked.quetzalmap.core.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaletteDecoderTest {
+    // Decoded into short[], so 16 bits is the widest width that round-trips
+    private static final int MAX_BITS = 16;
+
+    @Test
+    void decodesEveryWidthInBothLayouts() {
+        Random random = new Random(4);
+        short[] out = new short[PaletteDecoder.SECTION_BLOCKS];
+        for (boolean spanning : new boolean[] {false, true}) {
+            for (int bits = 1; bits <= MAX_BITS; bits++) {
+                int[] values = randomValues(random, PaletteDecoder.SECTION_BLOCKS, bits);
+                long[] data = ChunkFixtures.pack(values, bits, spanning);
+
+                PaletteDecoder.decode(data, bits, spanning, values.length, out);
+                for (int i = 0; i < values.length; i++) {
+                    String where = "bits=" + bits + " spanning=" + spanning + " index=" + i;
+                    assertEquals(values[i], Short.toUnsignedInt(out[i]), where);
+                    assertEquals(values[i], PaletteDecoder.get(data, bits, spanning, i), where);
+                }
+            }
+        }
+    }
+
+    @Test
+    void decodesPartialCounts() {
+        // Heightmaps are 256 entries; odd counts exercise the tail loops of the fixed-width paths
+        Random random = new Random(5);
+        for (boolean spanning : new boolean[] {false, true}) {
+            for (int bits = 1; bits <= MAX_BITS; bits++) {
+                for (int count : new int[] {1, 7, 13, 256, 257, 1000}) {
+                    int[] values = randomValues(random, count, bits);
+                    long[] data = ChunkFixtures.pack(values, bits, spanning);
+                    short[] out = new short[count + 1];
+                    out[count] = -1;
+
+                    PaletteDecoder.decode(data, bits, spanning, count, out);
+                    for (int i = 0; i < count; i++) {
+                        assertEquals(values[i], Short.toUnsignedInt(out[i]),
+                                "bits=" + bits + " spanning=" + spanning + " count=" + count + " index=" + i);
+                    }
+                    assertEquals(-1, out[count], "wrote past count");
+                }
+            }
+        }
+    }
+
+    @Test
+    void packedLengthMatchesLayout() {
+        // 1.16+: 7 nine-bit heightmap entries per long, 1.15: entries straddle longs
+        assertEquals(37, PaletteDecoder.packedLength(256, 9, false));
+        assertEquals(36, PaletteDecoder.packedLength(256, 9, true));
+        // 5 bits: 12 per long without spanning
+        assertEquals(342, PaletteDecoder.packedLength(4096, 5, false));
+        assertEquals(320, PaletteDecoder.packedLength(4096, 5, true));
+        assertEquals(256, PaletteDecoder.packedLength(4096, 4, false));
+    }
+
+    @Test
+    void resolvesBitsFromLength() {
+        assertEquals(5, PaletteDecoder.resolveBits(342, 4096, 5, false));
+        // Palette says 4 bits but the data was written with 6
+        assertEquals(6, PaletteDecoder.resolveBits(410, 4096, 4, false));
+        assertEquals(0, PaletteDecoder.resolveBits(3, 4096, 4, false));
+    }
+
+    @Test
+    void bitsForPaletteHasMinimumOfFour() {
+        assertEquals(4, PaletteDecoder.bitsForPalette(2));
+        assertEquals(4, PaletteDecoder.bitsForPalette(16));
+        assertEquals(5, PaletteDecoder.bitsForPalette(17));
+        assertEquals(8, PaletteDecoder.bitsForPalette(256));
+        assertEquals(9, PaletteDecoder.bitsForPalette(257));
+    }
+
+    @Test
+    void spanningEndsAt20w17a() {
+        assertTrue(PaletteDecoder.isSpanning(2230));
+        assertTrue(PaletteDecoder.isSpanning(PaletteDecoder.NON_SPANNING_DATA_VERSION - 1));
+        assertFalse(PaletteDecoder.isSpanning(PaletteDecoder.NON_SPANNING_DATA_VERSION));
+        assertFalse(PaletteDecoder.isSpanning(0));
+    }
+
+    private static int[] randomValues(Random random, int count, int bits) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextInt(1 << bits);
+        }
+        // Make sure the extremes are covered
+        values[0] = (1 << bits) - 1;
+        if (count > 1) {
+            values[count - 1] = (1 << bits) - 1;
+        }
+        return values;
+    }
+}
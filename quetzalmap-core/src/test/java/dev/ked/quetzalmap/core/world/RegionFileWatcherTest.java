@@ -0,0 +1,159 @@
+package dev.ked.quetzalmap.core.world;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionFileWatcherTest {
+    private static final long EVENT_TIMEOUT_SECONDS = 15;
+    private static final int TIMESTAMP = 1_700_000_000;
+
+    @TempDir
+    Path worldDir;
+
+    private final RegionCache regionCache = RegionCache.getInstance();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private RegionFileWatcher watcher;
+
+    @BeforeEach
+    void startWatcher() throws IOException {
+        Files.createDirectories(worldDir.resolve("region"));
+        watcher = new RegionFileWatcher(regionCache, new RegionFileWatcher.Listener() {
+            @Override
+            public void onChunksChanged(Path world, int regionX, int regionZ, int[] chunkIndices) {
+                events.add("chunks " + regionX + "," + regionZ + " " + Arrays.toString(chunkIndices));
+            }
+
+            @Override
+            public void onRegionChanged(Path world, int regionX, int regionZ) {
+                events.add("region " + regionX + "," + regionZ);
+            }
+
+            @Override
+            public void onWorldChanged(Path world) {
+                events.add("world");
+            }
+        });
+        assertTrue(watcher.watch(worldDir));
+        watcher.start();
+    }
+
+    @AfterEach
+    void stopWatcher() {
+        watcher.close();
+        regionCache.clearWorld(worldDir);
+    }
+
+    @Test
+    void reportsChangedChunksOfLoadedRegion() throws Exception {
+        Path file = writeRegion(0, 0, 5, 37);
+        MinecraftRegion region = regionCache.getRegion(worldDir, 0, 0);
+        MinecraftChunk chunk = region.getChunk(5, 0);
+        assertNotNull(chunk);
+        chunk.release();
+        assertTrue(region.isLoaded());
+
+        // Touch only chunk 37's timestamp, in place, as the server does
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, TIMESTAMP + 60), RegionFile.SECTOR_SIZE + 37 * 4);
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+        assertEquals("chunks 0,0 [37]", nextEvent());
+        assertEquals(TIMESTAMP + 60, region.getChunkTimestamps()[37]);
+        assertEquals(TIMESTAMP, region.getChunkTimestamps()[5]);
+    }
+
+    @Test
+    void reportsUnloadedRegionAsWhole() throws Exception {
+        // Not a region file; must be ignored
+        Files.write(worldDir.resolve("region").resolve("r.2.3.mca.tmp"), new byte[16]);
+        writeRegion(2, 3);
+        assertEquals("region 2,3", nextEvent());
+    }
+
+    @Test
+    void reportsDeletedRegionAndDropsItFromCache() throws Exception {
+        Path file = writeRegion(-1, -1, 1023);
+        MinecraftRegion region = regionCache.getRegion(worldDir, -1, -1);
+        MinecraftChunk chunk = region.getChunk(-1, -1);
+        assertNotNull(chunk);
+        chunk.release();
+
+        Files.delete(file);
+        assertEquals("region -1,-1", nextEvent());
+        assertNotSame(region, regionCache.getRegion(worldDir, -1, -1));
+    }
+
+    @Test
+    void unchangedHeaderReportsNothingForLoadedRegion() throws Exception {
+        Path file = writeRegion(4, 4, 1);
+        MinecraftRegion region = regionCache.getRegion(worldDir, 4, 4);
+        region.getChunk(4 * 32 + 1, 4 * 32).release();
+
+        // Touch the file without changing its header, then change another region
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        writeRegion(5, 5);
+
+        assertEquals("region 5,5", nextEvent());
+        assertSame(region, regionCache.getRegion(worldDir, 4, 4));
+    }
+
+    private String nextEvent() throws InterruptedException {
+        String event = events.poll(EVENT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(event, "no region change reported");
+        return event;
+    }
+
+    /**
+     * Write an Anvil region file holding the modern fixture chunk (zlib) at each given index.
+     */
+    private Path writeRegion(int regionX, int regionZ, int... indices) throws IOException {
+        byte[] payload = zlib(ChunkFixtures.modernChunk());
+        int sectors = (4 + 1 + payload.length + RegionFile.SECTOR_SIZE - 1) / RegionFile.SECTOR_SIZE;
+
+        ByteBuffer file = ByteBuffer.allocate(RegionFile.SECTOR_SIZE * (2 + indices.length * sectors));
+        int sector = 2;
+        for (int index : indices) {
+            file.putInt(index * 4, sector << 8 | sectors);
+            file.putInt(RegionFile.SECTOR_SIZE + index * 4, TIMESTAMP);
+            file.position(sector * RegionFile.SECTOR_SIZE);
+            file.putInt(payload.length + 1).put(ChunkDecompressor.ZLIB).put(payload);
+            sector += sectors;
+        }
+
+        Path path = worldDir.resolve("region").resolve("r." + regionX + "." + regionZ + ".mca");
+        Files.write(path, file.array());
+        return path;
+    }
+
+    private static byte[] zlib(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
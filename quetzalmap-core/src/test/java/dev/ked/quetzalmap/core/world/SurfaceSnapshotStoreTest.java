@@ -0,0 +1,157 @@
+package dev.ked.quetzalmap.core.world;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SurfaceSnapshotStoreTest {
+    private static final String WORLD = "world";
+    private static final int REGION_X = -1;
+    private static final int REGION_Z = 2;
+    // Offset of the body length in the file header (magic, version, flags)
+    private static final int BODY_LENGTH_OFFSET = 6;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsCompressed() {
+        assertRoundTrip(new SurfaceSnapshotStore(directory, true));
+    }
+
+    @Test
+    void roundTripsUncompressed() {
+        assertRoundTrip(new SurfaceSnapshotStore(directory, false));
+    }
+
+    @Test
+    void missingSnapshotLoadsAsNull() {
+        assertNull(new SurfaceSnapshotStore(directory, true).load(WORLD, 0, 0));
+    }
+
+    @Test
+    void deleteRemovesSnapshot() {
+        SurfaceSnapshotStore store = new SurfaceSnapshotStore(directory, true);
+        assertTrue(store.save(WORLD, REGION_X, REGION_Z, snapshot(new Random(1))));
+        assertTrue(store.delete(WORLD, REGION_X, REGION_Z));
+        assertNull(store.load(WORLD, REGION_X, REGION_Z));
+        assertFalse(store.delete(WORLD, REGION_X, REGION_Z));
+    }
+
+    @Test
+    void saveReplacesPreviousSnapshot() {
+        SurfaceSnapshotStore store = new SurfaceSnapshotStore(directory, true);
+        store.save(WORLD, REGION_X, REGION_Z, snapshot(new Random(1)));
+        RegionSnapshot second = snapshot(new Random(2));
+        store.save(WORLD, REGION_X, REGION_Z, second);
+        assertSnapshotEquals(second, store.load(WORLD, REGION_X, REGION_Z));
+    }
+
+    @Test
+    void discardsCorruptSnapshots() throws IOException {
+        for (boolean compress : new boolean[] {true, false}) {
+            SurfaceSnapshotStore store = new SurfaceSnapshotStore(directory, compress);
+            store.save(WORLD, REGION_X, REGION_Z, snapshot(new Random(3)));
+            Path path = snapshotPath();
+            byte[] valid = Files.readAllBytes(path);
+
+            assertCorrupt(store, path, new byte[0]);
+            assertCorrupt(store, path, Arrays.copyOf(valid, 9));
+            assertCorrupt(store, path, Arrays.copyOf(valid, valid.length / 2));
+
+            byte[] badMagic = valid.clone();
+            badMagic[0] ^= 1;
+            assertCorrupt(store, path, badMagic);
+
+            byte[] badVersion = valid.clone();
+            badVersion[4] = 99;
+            assertCorrupt(store, path, badVersion);
+
+            for (int length : new int[] {-1, Integer.MAX_VALUE, valid.length * 256}) {
+                byte[] badLength = valid.clone();
+                ByteBuffer.wrap(badLength).putInt(BODY_LENGTH_OFFSET, length);
+                assertCorrupt(store, path, badLength);
+            }
+
+            // Garbled body: bad LZ4 stream, or a name table that runs off the end
+            byte[] garbled = valid.clone();
+            Arrays.fill(garbled, 10, 40, (byte) 0x7F);
+            assertCorrupt(store, path, garbled);
+        }
+    }
+
+    private void assertCorrupt(SurfaceSnapshotStore store, Path path, byte[] file) throws IOException {
+        Files.write(path, file);
+        assertNull(store.load(WORLD, REGION_X, REGION_Z), "loaded a corrupt snapshot of " + file.length + " bytes");
+    }
+
+    private void assertRoundTrip(SurfaceSnapshotStore store) {
+        RegionSnapshot snapshot = snapshot(new Random(10));
+        assertTrue(store.save(WORLD, REGION_X, REGION_Z, snapshot));
+        assertTrue(Files.exists(snapshotPath()));
+        assertSnapshotEquals(snapshot, store.load(WORLD, REGION_X, REGION_Z));
+    }
+
+    private Path snapshotPath() {
+        return directory.resolve(WORLD).resolve("r." + REGION_X + "." + REGION_Z + ".qms");
+    }
+
+    private static void assertSnapshotEquals(RegionSnapshot expected, RegionSnapshot actual) {
+        assertNotNull(actual);
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            assertEquals(expected.getTimestamp(index), actual.getTimestamp(index), "timestamp " + index);
+            MinecraftChunk expectedChunk = expected.getChunk(index);
+            MinecraftChunk actualChunk = actual.getChunk(index);
+            if (expectedChunk == null) {
+                assertNull(actualChunk, "chunk " + index);
+                continue;
+            }
+            assertNotNull(actualChunk, "chunk " + index);
+            assertEquals(expectedChunk.getChunkX(), actualChunk.getChunkX());
+            assertEquals(expectedChunk.getChunkZ(), actualChunk.getChunkZ());
+            for (int column = 0; column < 256; column++) {
+                assertEquals(expectedChunk.getColumn(column), actualChunk.getColumn(column),
+                        "chunk " + index + " column " + column);
+            }
+        }
+    }
+
+    /**
+     * Snapshot with about half the chunks present, a mix of known and
+     * unknown timestamps, empty columns and heights down to y=-64.
+     */
+    private static RegionSnapshot snapshot(Random random) {
+        BlockRegistry registry = BlockRegistry.getInstance();
+        int[] ids = registry.resolve(new String[] {
+                "minecraft:stone", "minecraft:grass_block", "minecraft:water", "test:snapshot_block"});
+
+        int[] timestamps = new int[RegionFile.CHUNKS_PER_REGION];
+        MinecraftChunk[] chunks = new MinecraftChunk[RegionFile.CHUNKS_PER_REGION];
+        for (int index = 0; index < RegionFile.CHUNKS_PER_REGION; index++) {
+            timestamps[index] = random.nextInt(8) == 0 ? RegionSnapshot.UNKNOWN : 1_700_000_000 + random.nextInt(1000);
+            if (random.nextBoolean()) {
+                continue;
+            }
+            int[] columns = new int[256];
+            for (int column = 0; column < 256; column++) {
+                if (random.nextInt(10) > 0) {
+                    columns[column] = MinecraftChunk.packColumn(ids[random.nextInt(ids.length)], random.nextInt(384) - 64);
+                }
+            }
+            chunks[index] = MinecraftChunk.fromColumns((REGION_X << 5) + (index & 31), (REGION_Z << 5) + (index >> 5), columns);
+        }
+        return new RegionSnapshot(timestamps, chunks);
+    }
+}
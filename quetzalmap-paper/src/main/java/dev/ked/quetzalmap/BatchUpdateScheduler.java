@@ -3,6 +3,7 @@ package dev.ked.quetzalmap;
 import dev.ked.quetzalmap.server.sse.SSEManager;
 import dev.ked.quetzalmap.web.tiles.TileCoord;
 import dev.ked.quetzalmap.web.tiles.TileManager;
+import dev.ked.quetzalmap.web.tiles.TilePyramid;
 import dev.ked.quetzalmap.web.world.WorldAdapter;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
@@ -75,11 +76,27 @@ public final class BatchUpdateScheduler {
         pendingUpdates.add(new ChunkUpdate(worldName, chunkX, chunkZ));
     }
 
+    /**
+     * Schedule a region whose changed chunks are unknown (e.g. rewritten while not loaded).
+     * Only chunks whose region header no longer matches the tile are repainted,
+     * and their decoded surfaces stay reusable.
+     */
+    public void scheduleRegionUpdate(String worldName, int regionX, int regionZ) {
+        tileManager.markRegionDirty(worldName, regionX, regionZ);
+    }
+
+    /**
+     * Schedule every loaded tile of a world for the same check as {@link #scheduleRegionUpdate}.
+     */
+    public void scheduleWorldUpdate(String worldName) {
+        tileManager.markWorldDirty(worldName);
+    }
+
     /**
      * Process all pending updates.
      */
     private void processBatch() {
-        if (pendingUpdates.isEmpty()) {
+        if (pendingUpdates.isEmpty() && tileManager.getDirtyCount() == 0) {
             return;
         }
 
@@ -97,9 +114,11 @@ public final class BatchUpdateScheduler {
                 continue;
             }
 
-            // Mark chunk dirty for all zoom levels
-            // TODO: Make zoom levels configurable
-            for (int zoom = 0; zoom <= 3; zoom++) {
+            // Drop the decoded chunk so the re-render doesn't redraw it from cache
+            worldAdapter.markChunkDirty(world, update.chunkX, update.chunkZ);
+
+            // Mark chunk dirty for all zoom levels (so clients refresh every level it shows on)
+            for (int zoom = 0; zoom <= TilePyramid.MAX_ZOOM; zoom++) {
                 tileManager.markChunkDirty(update.worldName, update.chunkX, update.chunkZ, zoom);
             }
         }
@@ -117,7 +136,7 @@ public final class BatchUpdateScheduler {
             // Get dirty tiles before processing
             Set<TileCoord> dirtyTiles = tileManager.getDirtyTracker().getDirtyAndClear();
 
-            tileManager.processDirtyTiles(worldDir).thenRun(() -> {
+            tileManager.processDirtyTiles(dirtyTiles, worldDir).thenRun(() -> {
                 LOGGER.fine("Batch processing complete");
 
                 // Broadcast tile updates to SSE clients
@@ -1,13 +1,19 @@
 package dev.ked.quetzalmap;
 
+import dev.ked.quetzalmap.core.world.RegionCache;
+import dev.ked.quetzalmap.core.world.RegionFileWatcher;
 import dev.ked.quetzalmap.server.WebServer;
 import dev.ked.quetzalmap.web.pregen.TilePreGenerator;
 import dev.ked.quetzalmap.web.tiles.TileManager;
 import dev.ked.quetzalmap.web.world.WorldAdapter;
 import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +32,7 @@ public final class QuetzalMapPlugin extends JavaPlugin {
     private PlayerQuitListener playerQuitListener;
     private TilePreGenerator preGenerator;
     private PlayerTracker playerTracker;
+    private RegionFileWatcher regionWatcher;
     private dev.ked.quetzalmap.integration.StormcraftIntegration stormcraftIntegration;
 
     @Override
@@ -45,6 +52,9 @@ public final class QuetzalMapPlugin extends JavaPlugin {
             // Start update scheduler
             updateScheduler.start();
 
+            // Watch region files for changes made by the server or external tools
+            startRegionWatcher();
+
             // Start web server
             webServer.start();
 
@@ -97,6 +107,11 @@ public final class QuetzalMapPlugin extends JavaPlugin {
                 webServer.stop();
             }
 
+            // Stop region watcher
+            if (regionWatcher != null) {
+                regionWatcher.close();
+            }
+
             // Stop scheduler
             if (updateScheduler != null) {
                 updateScheduler.stop();
@@ -182,6 +197,58 @@ public final class QuetzalMapPlugin extends JavaPlugin {
         LOGGER.info("Event listeners registered");
     }
 
+    /**
+     * Watch every loaded world's region files. Changed chunks have already been
+     * dropped from the region caches when the watcher reports them; they are
+     * queued like chunk events so only the affected tiles re-render.
+     */
+    private void startRegionWatcher() {
+        Map<Path, String> worldNames = new ConcurrentHashMap<>();
+        try {
+            regionWatcher = new RegionFileWatcher(RegionCache.getInstance(), new RegionFileWatcher.Listener() {
+                @Override
+                public void onChunksChanged(Path worldDir, int regionX, int regionZ, int[] chunkIndices) {
+                    String worldName = worldNames.get(worldDir);
+                    if (worldName == null) {
+                        return;
+                    }
+                    for (int index : chunkIndices) {
+                        updateScheduler.scheduleChunkUpdate(worldName,
+                                (regionX << 5) + (index & 31), (regionZ << 5) + (index >> 5));
+                    }
+                }
+
+                @Override
+                public void onRegionChanged(Path worldDir, int regionX, int regionZ) {
+                    String worldName = worldNames.get(worldDir);
+                    if (worldName != null) {
+                        updateScheduler.scheduleRegionUpdate(worldName, regionX, regionZ);
+                    }
+                }
+
+                @Override
+                public void onWorldChanged(Path worldDir) {
+                    String worldName = worldNames.get(worldDir);
+                    if (worldName != null) {
+                        updateScheduler.scheduleWorldUpdate(worldName);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warning("Region file watching unavailable: " + e.getMessage());
+            return;
+        }
+
+        for (World world : Bukkit.getWorlds()) {
+            Path worldDir = worldAdapter.getWorldDirectory(world);
+            if (regionWatcher.watch(worldDir)) {
+                worldNames.put(worldDir, world.getName());
+            }
+        }
+        regionWatcher.start();
+        LOGGER.info("RegionFileWatcher started");
+    }
+
     /**
      * Register world border API handler.
      */
@@ -279,10 +346,10 @@ public final class QuetzalMapPlugin extends JavaPlugin {
     private void startPreGeneration() {
         try {
             // TODO: Make these configurable
-            int pregenThreads = 4; // Low priority background threads
+            int pregenInFlight = 4; // Tiles queued at pre-generation priority at once
             int radiusTiles = 10;  // 10 tiles = 5120 blocks radius from spawn
 
-            preGenerator = new TilePreGenerator(tileManager, pregenThreads);
+            preGenerator = new TilePreGenerator(tileManager, pregenInFlight);
 
             // Pre-generate spawn area for overworld
             Path worldsDir = getWorldsDirectory();
@@ -3,9 +3,15 @@ package dev.ked.quetzalmap.server.handlers;
 import dev.ked.quetzalmap.web.tiles.Tile;
 import dev.ked.quetzalmap.web.tiles.TileCoord;
 import dev.ked.quetzalmap.web.tiles.TileManager;
+import dev.ked.quetzalmap.web.tiles.TilePyramid;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import io.undertow.server.handlers.Cookie;
+import io.undertow.server.handlers.CookieImpl;
+import io.undertow.util.AttachmentKey;
 import io.undertow.util.Headers;
+import io.undertow.util.SameThreadExecutor;
 import io.undertow.util.StatusCodes;
 
 import java.io.IOException;
@@ -13,7 +19,10 @@ import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -25,6 +34,9 @@ import java.util.regex.Pattern;
 public final class TileHandler implements HttpHandler {
     private static final Logger LOGGER = Logger.getLogger(TileHandler.class.getName());
     private static final Pattern TILE_PATTERN = Pattern.compile("^/tiles/([^/]+)/(\\d+)/([-\\d]+)_([-\\d]+)\\.png$");
+    private static final String SESSION_COOKIE = "quetzalmap_session";
+    private static final int MAX_SESSION_ID_LENGTH = 64;
+    private static final AttachmentKey<PendingRender> PENDING_RENDER = AttachmentKey.create(PendingRender.class);
 
     private final TileManager tileManager;
     private final Path tilesDirectory;
@@ -57,9 +69,18 @@ public final class TileHandler implements HttpHandler {
             int x = Integer.parseInt(matcher.group(3));
             int z = Integer.parseInt(matcher.group(4));
 
+            if (zoom > TilePyramid.MAX_ZOOM) {
+                sendError(exchange, StatusCodes.BAD_REQUEST, "Zoom level out of range (max " + TilePyramid.MAX_ZOOM + ")");
+                return;
+            }
+
             TileCoord coord = new TileCoord(world, zoom, x, z);
             LOGGER.fine("Tile request: " + coord);
 
+            // Let the prefetcher follow this client's viewport
+            tileManager.getPrefetcher().onTileRequest(sessionId(exchange), coord,
+                    worldsDirectory.resolve(coord.getWorld()));
+
             // Check if tile exists on disk
             Path tilePath = tilesDirectory.resolve(coord.getRelativePath());
 
@@ -114,7 +135,9 @@ public final class TileHandler implements HttpHandler {
             exchange.setStatusCode(StatusCodes.OK);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "image/png");
             exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, tileData.length);
-            exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "public, max-age=300"); // 5 min cache
+            // 5 min cache; not in shared caches when this response hands out a session cookie
+            exchange.getResponseHeaders().put(Headers.CACHE_CONTROL,
+                    issuesSession(exchange) ? "private, max-age=300" : "public, max-age=300");
 
             // Start blocking mode and send tile data
             exchange.startBlocking();
@@ -134,20 +157,36 @@ public final class TileHandler implements HttpHandler {
      * Uses proper async handling to avoid blocking HTTP worker threads.
      */
     private void renderAndServeTile(HttpServerExchange exchange, TileCoord coord, Path worldDir) {
-        // Start async dispatch - HTTP thread can be released
-        if (exchange.isInIoThread()) {
-            exchange.dispatch(() -> renderAndServeTile(exchange, coord, worldDir));
-            return;
-        }
+        // Mark the exchange dispatched so it stays open after the handler returns
+        // (it ends when the response is sent); the render starts right after
+        exchange.dispatch(SameThreadExecutor.INSTANCE, () -> startRender(exchange, coord, worldDir));
+    }
 
+    private void startRender(HttpServerExchange exchange, TileCoord coord, Path worldDir) {
         try {
             LOGGER.fine("Rendering tile for world directory: " + worldDir.toAbsolutePath());
 
             // Render tile asynchronously - this returns immediately
             CompletableFuture<Tile> renderFuture = tileManager.renderTile(coord, worldDir);
 
+            // Client gone (tile scrolled out of view, tab closed): stop waiting, so a render
+            // nobody else wants is dropped from the queue. No-op once the render is done.
+            // While dispatched the connection isn't read, so a closed socket only shows up
+            // through the connection's close listener, not as a completed exchange.
+            PendingRender pending = pendingRender(exchange.getConnection());
+            pending.render.set(renderFuture);
+            exchange.addExchangeCompleteListener((completed, next) -> {
+                pending.render.compareAndSet(renderFuture, null);
+                renderFuture.cancel(false);
+                next.proceed();
+            });
+
             // When render completes, dispatch response back to IO thread
             renderFuture.whenCompleteAsync((tile, error) -> {
+                if (error instanceof CancellationException) {
+                    LOGGER.fine("Client no longer waiting for tile " + coord);
+                    return;
+                }
                 if (error != null) {
                     LOGGER.severe("Failed to render tile " + coord + ": " + error.getMessage());
                     exchange.dispatch(() -> {
@@ -181,6 +220,53 @@ public final class TileHandler implements HttpHandler {
         }
     }
 
+    /**
+     * The connection's pending render slot, registering its close listener on first use.
+     */
+    private static PendingRender pendingRender(ServerConnection connection) {
+        synchronized (connection) {
+            PendingRender pending = connection.getAttachment(PENDING_RENDER);
+            if (pending == null) {
+                pending = new PendingRender();
+                connection.putAttachment(PENDING_RENDER, pending);
+                connection.addCloseListener(pending);
+            }
+            return pending;
+        }
+    }
+
+    /**
+     * Identify the client for viewport tracking by a session cookie, issued on its
+     * first tile request. The remote address would merge every client behind one
+     * NAT or proxy into a single viewport.
+     */
+    private static String sessionId(HttpServerExchange exchange) {
+        Cookie cookie = exchange.getRequestCookie(SESSION_COOKIE);
+        if (cookie != null && cookie.getValue() != null
+                && !cookie.getValue().isEmpty() && cookie.getValue().length() <= MAX_SESSION_ID_LENGTH) {
+            return cookie.getValue();
+        }
+
+        String id = UUID.randomUUID().toString();
+        exchange.setResponseCookie(new CookieImpl(SESSION_COOKIE, id)
+                .setPath("/")
+                .setHttpOnly(true)
+                .setSameSiteMode("Lax"));
+        return id;
+    }
+
+    /**
+     * Check if the response sets a new session cookie.
+     */
+    private static boolean issuesSession(HttpServerExchange exchange) {
+        for (Cookie cookie : exchange.responseCookies()) {
+            if (SESSION_COOKIE.equals(cookie.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Send an error response.
      */
@@ -189,4 +275,21 @@ public final class TileHandler implements HttpHandler {
         exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
         exchange.getResponseSender().send(message);
     }
+
+    /**
+     * Render a connection is waiting on, cancelled if the connection closes.
+     * One per connection; the exchange clears it when it completes, so a
+     * keep-alive socket doesn't hold on to a finished render.
+     */
+    private static final class PendingRender implements ServerConnection.CloseListener {
+        final AtomicReference<CompletableFuture<Tile>> render = new AtomicReference<>();
+
+        @Override
+        public void closed(ServerConnection connection) {
+            CompletableFuture<Tile> current = render.getAndSet(null);
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
 }
@@ -0,0 +1,281 @@
+package dev.ked.quetzalmap.web.prefetch;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.ked.quetzalmap.core.world.RegionCache;
+import dev.ked.quetzalmap.web.tiles.TileCoord;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Warms {@link RegionCache} ahead of the viewport so panning doesn't hit cold regions.
+ *
+ * Tile requests are tracked per session (one browser/client). When a session
+ * requests tiles past the edge of what it recently viewed, it is panning that
+ * way, and the regions just beyond the leading edge are predicted and decoded
+ * into the chunk cache.
+ *
+ * Prefetching is strictly best-effort and yields to foreground renders:
+ * regions are decoded one chunk at a time by {@code maxConcurrent} long-lived
+ * low-priority threads (which keep their decompression buffers between regions),
+ * predictions that can't start within a second are dropped, and a region stops
+ * decoding as soon as the foreground render load rises above its threshold.
+ *
+ * These are deliberately platform threads rather than virtual threads. A virtual
+ * thread can't run below normal priority, so a prefetch would compete with
+ * renders on equal terms. Each new virtual thread would also allocate a fresh
+ * per-thread decompression buffer. Decoding is CPU-bound, so virtual threads
+ * would bring no gain to offset these costs.
+ */
+public final class RegionPrefetcher {
+    private static final Logger LOGGER = Logger.getLogger(RegionPrefetcher.class.getName());
+
+    private static final int LOOKAHEAD_TILES = 2;
+    private static final int MAX_PREDICTIONS = 12;
+    // Zoomed-out tiles cover 4^zoom regions; only warm the nearest zoom levels
+    private static final int MAX_PREFETCH_ZOOM = 1;
+    private static final long MAX_QUEUED_MILLIS = 1000;
+    private static final int MAX_QUEUED = 4 * MAX_PREDICTIONS;
+    // Requests remembered per session, about two screens of tiles
+    private static final int HISTORY = 48;
+    // Don't predict from the first few requests of a fresh viewport
+    private static final int MIN_HISTORY = 8;
+
+    private final RegionCache regionCache;
+    private final Predicate<TileCoord> needsRender;
+    private final IntSupplier foregroundLoad;
+    private final int maxForegroundLoad;
+    private final ThreadPoolExecutor executor;
+
+    private final Cache<String, Session> sessions;
+    // Regions warmed (or being warmed) recently, so they aren't decoded twice
+    private final Cache<RegionKey, Boolean> recent;
+
+    private final LongAdder predicted = new LongAdder();
+    private final LongAdder warmed = new LongAdder();
+    private final LongAdder skippedBusy = new LongAdder();
+    private final LongAdder skippedBudget = new LongAdder();
+
+    /**
+     * @param regionCache       Cache to warm
+     * @param needsRender       Whether a tile still has to be rendered (rendered tiles are never prefetched)
+     * @param foregroundLoad    Foreground renders queued or running
+     * @param maxForegroundLoad Don't start prefetching while the foreground load is above this
+     * @param maxConcurrent     Regions decoded concurrently by the prefetcher
+     */
+    public RegionPrefetcher(RegionCache regionCache, Predicate<TileCoord> needsRender,
+                            IntSupplier foregroundLoad, int maxForegroundLoad, int maxConcurrent) {
+        this.regionCache = regionCache;
+        this.needsRender = needsRender;
+        this.foregroundLoad = foregroundLoad;
+        this.maxForegroundLoad = maxForegroundLoad;
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_QUEUED),
+                Thread.ofPlatform().name("QuetzalMap-Prefetch-", 0).daemon().priority(Thread.MIN_PRIORITY).factory());
+
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(4096)
+                .expireAfterWrite(2, TimeUnit.MINUTES)
+                .build();
+
+        LOGGER.info("RegionPrefetcher initialized: maxConcurrent=" + maxConcurrent
+                + ", maxForegroundLoad=" + maxForegroundLoad);
+    }
+
+    /**
+     * Record a tile request and prefetch the regions the session is panning towards.
+     * Cheap and non-blocking; safe to call from request threads.
+     *
+     * @param sessionId Identifies the client (e.g. a session cookie; not the remote
+     *                  address, which clients behind one NAT or proxy share)
+     */
+    public void onTileRequest(String sessionId, TileCoord coord, Path worldDirectory) {
+        Session session = sessions.get(sessionId, id -> new Session());
+        Set<TileCoord> predictions = session.record(coord);
+
+        for (TileCoord tile : predictions) {
+            if (tile.getZoom() > MAX_PREFETCH_ZOOM || !needsRender.test(tile)) {
+                continue;
+            }
+            predicted.increment();
+
+            // A zoom-N tile covers 2^N × 2^N regions
+            int zoom = tile.getZoom();
+            for (int dz = 0; dz < 1 << zoom; dz++) {
+                for (int dx = 0; dx < 1 << zoom; dx++) {
+                    schedule(worldDirectory, (tile.getX() << zoom) + dx, (tile.getZ() << zoom) + dz);
+                }
+            }
+        }
+    }
+
+    private void schedule(Path worldDirectory, int regionX, int regionZ) {
+        RegionKey key = new RegionKey(worldDirectory, regionX, regionZ);
+        if (recent.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> warm(key, queuedAt));
+        } catch (RejectedExecutionException e) {
+            if (!executor.isShutdown()) {
+                skippedBudget.increment();
+                recent.invalidate(key); // Try again on a later prediction
+            }
+        }
+    }
+
+    private void warm(RegionKey key, long queuedAt) {
+        // Predictions that waited too long are stale: the viewport has moved on
+        if (System.nanoTime() - queuedAt > TimeUnit.MILLISECONDS.toNanos(MAX_QUEUED_MILLIS)) {
+            skippedBudget.increment();
+            recent.invalidate(key);
+            return;
+        }
+
+        try {
+            Path regionFile = key.worldDirectory().resolve("region")
+                    .resolve("r." + key.regionX() + "." + key.regionZ() + ".mca");
+            if (!Files.exists(regionFile)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            // One chunk at a time, backing off as soon as foreground renders queue up
+            boolean complete = regionCache.getRegion(key.worldDirectory(), key.regionX(), key.regionZ())
+                    .preload(() -> executor.isShutdown() || foregroundLoad.getAsInt() > maxForegroundLoad);
+            if (!complete) {
+                skippedBusy.increment();
+                recent.invalidate(key);
+                return;
+            }
+            warmed.increment();
+            LOGGER.fine("Prefetched region " + key + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Prefetch failed for region " + key, e);
+        }
+    }
+
+    /**
+     * Stop prefetching. Queued regions are dropped and regions being decoded stop at the next chunk.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get prefetch statistics.
+     */
+    public PrefetchStats getStats() {
+        return new PrefetchStats(sessions.estimatedSize(), predicted.sum(), warmed.sum(),
+                skippedBusy.sum(), skippedBudget.sum());
+    }
+
+    /**
+     * Motion model of one client's viewport: the bounding box of its recent requests.
+     * While a viewport is still, requests fall inside the box; when it pans, the
+     * newly exposed tiles fall just outside it on the side it is moving towards.
+     */
+    private static final class Session {
+        private final int[] recentX = new int[HISTORY];
+        private final int[] recentZ = new int[HISTORY];
+        private int count;
+        private int next;
+        private String world;
+        private int zoom;
+
+        /**
+         * Fold a request into the model and predict the tiles ahead of the viewport.
+         */
+        synchronized Set<TileCoord> record(TileCoord coord) {
+            if (!coord.getWorld().equals(world) || coord.getZoom() != zoom) {
+                // New world or zoom level: start over
+                world = coord.getWorld();
+                zoom = coord.getZoom();
+                count = 0;
+                next = 0;
+            }
+
+            int x = coord.getX();
+            int z = coord.getZ();
+            Set<TileCoord> tiles = Set.of();
+            if (count >= MIN_HISTORY) {
+                int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+                int minZ = Integer.MAX_VALUE, maxZ = Integer.MIN_VALUE;
+                for (int i = 0; i < count; i++) {
+                    minX = Math.min(minX, recentX[i]);
+                    maxX = Math.max(maxX, recentX[i]);
+                    minZ = Math.min(minZ, recentZ[i]);
+                    maxZ = Math.max(maxZ, recentZ[i]);
+                }
+                int dirX = x > maxX ? 1 : x < minX ? -1 : 0;
+                int dirZ = z > maxZ ? 1 : z < minZ ? -1 : 0;
+                if (dirX != 0 || dirZ != 0) {
+                    tiles = predict(x, z, dirX, dirZ, minX, maxX, minZ, maxZ);
+                }
+            }
+
+            recentX[next] = x;
+            recentZ[next] = z;
+            next = (next + 1) % HISTORY;
+            count = Math.min(count + 1, HISTORY);
+            return tiles;
+        }
+
+        /**
+         * Tiles of the next {@link #LOOKAHEAD_TILES} rows/columns past the edge being
+         * crossed, spanning the viewport's width.
+         */
+        private Set<TileCoord> predict(int x, int z, int dirX, int dirZ, int minX, int maxX, int minZ, int maxZ) {
+            Set<TileCoord> tiles = new LinkedHashSet<>();
+            for (int ahead = 1; ahead <= LOOKAHEAD_TILES; ahead++) {
+                if (dirX != 0) {
+                    for (int tz = minZ + dirZ * ahead; tz <= maxZ + dirZ * ahead && tiles.size() < MAX_PREDICTIONS; tz++) {
+                        tiles.add(new TileCoord(world, zoom, x + dirX * ahead, tz));
+                    }
+                }
+                if (dirZ != 0) {
+                    for (int tx = minX + dirX * ahead; tx <= maxX + dirX * ahead && tiles.size() < MAX_PREDICTIONS; tx++) {
+                        tiles.add(new TileCoord(world, zoom, tx, z + dirZ * ahead));
+                    }
+                }
+            }
+            return tiles;
+        }
+    }
+
+    private record RegionKey(Path worldDirectory, int regionX, int regionZ) {
+        @Override
+        public String toString() {
+            return worldDirectory + " @ " + regionX + "," + regionZ;
+        }
+    }
+
+    /**
+     * Prefetch statistics.
+     */
+    public record PrefetchStats(long sessions, long predicted, long warmed, long skippedBusy, long skippedBudget) {
+        @Override
+        public String toString() {
+            return String.format("PrefetchStats[sessions=%d, predicted=%d, warmed=%d, skippedBusy=%d, skippedBudget=%d]",
+                    sessions, predicted, warmed, skippedBusy, skippedBudget);
+        }
+    }
+}
@@ -1,40 +1,51 @@
 package dev.ked.quetzalmap.web.pregen;
 
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler.Priority;
 import dev.ked.quetzalmap.web.tiles.Tile;
 import dev.ked.quetzalmap.web.tiles.TileCoord;
 import dev.ked.quetzalmap.web.tiles.TileManager;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
  * Pre-generates map tiles in the background to eliminate user-facing render delays.
  * Uses spiral pattern from center (spawn) outward for logical loading order.
+ *
+ * Tiles are rendered at {@link Priority#PREGEN} on the tile manager's render
+ * scheduler, so they only use threads interactive and live renders leave idle.
+ * Nothing blocks: a bounded number of tiles is queued, and each finished tile
+ * queues the next from a scheduler task, never from its own completion callback
+ * (a render that completes at once would otherwise recurse down the stack).
  */
 public class TilePreGenerator {
     private static final Logger LOGGER = Logger.getLogger(TilePreGenerator.class.getName());
 
     private final TileManager tileManager;
-    private final ExecutorService pregenExecutor;
+    private final int maxInFlight;
     private final AtomicInteger tilesGenerated = new AtomicInteger(0);
     private final AtomicInteger tilesSkipped = new AtomicInteger(0);
+    private final Set<CompletableFuture<Tile>> inFlight = ConcurrentHashMap.newKeySet();
     private volatile boolean running = false;
 
-    public TilePreGenerator(TileManager tileManager, int threadCount) {
+    /**
+     * @param maxInFlight Tiles queued on the render scheduler at once
+     */
+    public TilePreGenerator(TileManager tileManager, int maxInFlight) {
         this.tileManager = tileManager;
-        this.pregenExecutor = Executors.newFixedThreadPool(threadCount,
-                r -> {
-                    Thread t = new Thread(r, "TilePregen");
-                    t.setDaemon(true);
-                    t.setPriority(Thread.MIN_PRIORITY); // Low priority - don't interfere with live requests
-                    return t;
-                });
-
-        LOGGER.info("TilePreGenerator initialized with " + threadCount + " threads");
+        this.maxInFlight = maxInFlight;
+
+        LOGGER.info("TilePreGenerator initialized with " + maxInFlight + " tiles in flight");
     }
 
     /**
@@ -75,60 +86,99 @@ public class TilePreGenerator {
 
         LOGGER.info("Pre-generating " + totalTiles + " tiles...");
 
-        // Process tiles concurrently
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (TileCoord coord : coords) {
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                try {
-                    // Check if tile already exists
-                    Tile existing = tileManager.getTile(coord, worldDirectory).get(30, TimeUnit.SECONDS);
-                    if (existing != null && !existing.isDirty()) {
-                        tilesSkipped.incrementAndGet();
-                        return;
-                    }
-
-                    // Render tile
-                    tileManager.renderTile(coord, worldDirectory).get(60, TimeUnit.SECONDS);
-                    int generated = tilesGenerated.incrementAndGet();
-
-                    // Log progress every 10 tiles
-                    if (generated % 10 == 0) {
-                        int percent = (generated * 100) / totalTiles;
-                        LOGGER.info("Pre-generation progress: " + generated + "/" + totalTiles +
-                                " (" + percent + "%) - " + tilesSkipped.get() + " skipped");
-                    }
-
-                } catch (TimeoutException e) {
-                    LOGGER.warning("Tile render timeout: " + coord);
-                } catch (Exception e) {
-                    LOGGER.warning("Failed to pre-generate tile " + coord + ": " + e.getMessage());
-                }
-            }, pregenExecutor);
+        Iterator<TileCoord> remaining = coords.iterator();
+        AtomicInteger active = new AtomicInteger();
+        CompletableFuture<Void> done = new CompletableFuture<>();
 
-            futures.add(future);
+        // Start the first batch; each finished tile starts the next
+        active.incrementAndGet();
+        for (int i = 0; i < maxInFlight; i++) {
+            startNext(remaining, active, done, worldDirectory, totalTiles);
+        }
+        if (active.decrementAndGet() == 0) {
+            done.complete(null);
         }
 
-        // Wait for all tiles to complete
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                .handle((result, error) -> {
-                    running = false;
-                    long duration = System.currentTimeMillis() - startTime;
-
-                    PregenStats stats = new PregenStats(
-                            totalTiles,
-                            tilesGenerated.get(),
-                            tilesSkipped.get(),
-                            duration
-                    );
-
-                    LOGGER.info("Pre-generation complete: " +
-                            "generated=" + stats.generated() +
-                            ", skipped=" + stats.skipped() +
-                            ", duration=" + (duration / 1000) + "s" +
-                            ", rate=" + String.format("%.1f", stats.tilesPerSecond()) + " tiles/s");
-
-                    return stats;
-                });
+        return done.handle((result, error) -> {
+            running = false;
+            long duration = System.currentTimeMillis() - startTime;
+
+            PregenStats stats = new PregenStats(
+                    totalTiles,
+                    tilesGenerated.get(),
+                    tilesSkipped.get(),
+                    duration
+            );
+
+            LOGGER.info("Pre-generation complete: " +
+                    "generated=" + stats.generated() +
+                    ", skipped=" + stats.skipped() +
+                    ", duration=" + (duration / 1000) + "s" +
+                    ", rate=" + String.format("%.1f", stats.tilesPerSecond()) + " tiles/s");
+
+            return stats;
+        });
+    }
+
+    /**
+     * Queue the next tile that still needs rendering, if any.
+     * {@code active} counts queued tiles (plus the caller while starting), and
+     * {@code done} completes once it drops to zero.
+     */
+    private void startNext(Iterator<TileCoord> remaining, AtomicInteger active, CompletableFuture<Void> done,
+                           Path worldDirectory, int totalTiles) {
+        TileCoord coord;
+        synchronized (remaining) {
+            coord = null;
+            while (running && remaining.hasNext()) {
+                TileCoord next = remaining.next();
+                // Already rendered (in memory or on disk)
+                if (!tileManager.needsRender(next)) {
+                    tilesSkipped.incrementAndGet();
+                    continue;
+                }
+                coord = next;
+                break;
+            }
+        }
+        if (coord == null) {
+            return;
+        }
+
+        TileCoord tile = coord;
+        active.incrementAndGet();
+        CompletableFuture<Tile> render = tileManager.renderTile(tile, worldDirectory, Priority.PREGEN);
+        inFlight.add(render);
+        render.whenComplete((result, error) -> {
+            inFlight.remove(render);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause == null) {
+                int generated = tilesGenerated.incrementAndGet();
+
+                // Log progress every 10 tiles
+                if (generated % 10 == 0) {
+                    int percent = ((generated + tilesSkipped.get()) * 100) / totalTiles;
+                    LOGGER.info("Pre-generation progress: " + generated + "/" + totalTiles +
+                            " (" + percent + "%) - " + tilesSkipped.get() + " skipped");
+                }
+            } else if (cause instanceof RejectedExecutionException) {
+                running = false; // Render scheduler shut down
+            } else if (!(cause instanceof CancellationException)) {
+                LOGGER.warning("Failed to pre-generate tile " + tile + ": " + cause.getMessage());
+            }
+
+            // Fails at once, or is cancelled, if the scheduler shuts down; either way this tile is done
+            tileManager.getScheduler().submit(Priority.PREGEN, tile.getWorld(), () -> {
+                startNext(remaining, active, done, worldDirectory, totalTiles);
+                return null;
+            }).whenComplete((ignored, startError) -> {
+                if (active.decrementAndGet() == 0) {
+                    done.complete(null);
+                }
+            });
+        });
     }
 
     /**
@@ -168,18 +218,13 @@ public class TilePreGenerator {
     }
 
     /**
-     * Stop pre-generation (graceful shutdown).
+     * Stop pre-generation. Queued tiles are cancelled; tiles already rendering finish.
      */
     public void stop() {
         LOGGER.info("Stopping pre-generation...");
         running = false;
-        pregenExecutor.shutdown();
-        try {
-            if (!pregenExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
-                pregenExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            pregenExecutor.shutdownNow();
+        for (CompletableFuture<Tile> render : inFlight) {
+            render.cancel(false);
         }
         LOGGER.info("Pre-generation stopped");
     }
@@ -1,5 +1,6 @@
 package dev.ked.quetzalmap.web.rendering;
 
+import dev.ked.quetzalmap.core.world.BlockRegistry;
 import dev.ked.quetzalmap.core.world.BlockState;
 import dev.ked.quetzalmap.core.world.BlockType;
 
@@ -38,6 +39,40 @@ public final class ColorCalculator {
         return pixelColor;
     }
 
+    /**
+     * Calculate the pixel color for a block given by registry ID.
+     * Allocation-free variant used by the renderer for packed chunk columns.
+     */
+    public static int calculatePixelColor(int blockId, int blockY) {
+        BlockRegistry registry = BlockRegistry.getInstance();
+        int pixelColor = registry.getColor(blockId);
+
+        if (pixelColor == 0) {
+            return 0;
+        }
+
+        pixelColor = applyHeightmapShading(pixelColor, blockY);
+
+        if ((registry.getFlags(blockId) & BlockRegistry.FLAG_TRANSPARENT) != 0) {
+            pixelColor = setAlpha(0xAA, pixelColor);
+        }
+
+        return pixelColor;
+    }
+
+    /**
+     * Calculate pixel colors for a run of packed columns (see {@code MinecraftChunk.packColumn}),
+     * e.g. a whole chunk surface. Same output as {@link #calculatePixelColor(int, int)} per column.
+     *
+     * @param columns Packed columns, read from index 0
+     * @param argb    Output pixels
+     * @param offset  Index of the first output pixel
+     * @param length  Number of columns
+     */
+    public static void calculatePixelColors(int[] columns, int[] argb, int offset, int length) {
+        ShadingKernel.shade(columns, argb, offset, length);
+    }
+
     /**
      * Set alpha channel.
      */
@@ -73,8 +108,9 @@ public final class ColorCalculator {
 
     /**
      * Apply heightmap-based shading to create depth perception.
+     * Also the source of {@link ShadingKernel}'s lookup tables.
      */
-    private static int applyHeightmapShading(int color, int blockY) {
+    static int applyHeightmapShading(int color, int blockY) {
         // Simple heightmap shading based on block Y
         // Higher blocks are brighter, lower blocks are darker
         int worldHeight = 384; // 1.21 world height (-64 to 320)
@@ -0,0 +1,163 @@
+package dev.ked.quetzalmap.web.rendering;
+
+import dev.ked.quetzalmap.core.world.BlockRegistry;
+import dev.ked.quetzalmap.core.world.MinecraftChunk;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Batch form of {@link ColorCalculator#calculatePixelColor(int, int)} over packed columns.
+ *
+ * Everything the per-pixel path computes is folded into lookup tables:
+ * one ARGB base per block ID (color, alpha for transparent blocks, 0 for
+ * blocks without a color) and one shaded channel value per height and input
+ * channel. A pixel then costs three table reads instead of double math and clamps.
+ *
+ * When the {@code jdk.incubator.vector} module is available (the JVM was started
+ * with {@code --add-modules jdk.incubator.vector}), {@link VectorShadingKernel}
+ * shades a vector of columns at a time; otherwise, or with
+ * {@code -Dquetzalmap.vectorShading=false}, the scalar loop is used. Both produce
+ * output identical to the per-pixel path.
+ */
+public final class ShadingKernel {
+    private static final Logger LOGGER = Logger.getLogger(ShadingKernel.class.getName());
+
+    static final int MIN_Y = -64;
+    static final int MAX_Y = 320;
+    private static final int LEVELS = MAX_Y - MIN_Y + 1;
+
+    /**
+     * Fixed-point bits of {@link #MULTIPLIERS} (255 × 1.1 × 2^22 still fits an int).
+     */
+    static final int MULTIPLIER_BITS = 22;
+
+    // Shaded value of channel c at height level l (blockY - MIN_Y): SHADE[(l << 8) | c]
+    private static final byte[] SHADE = new byte[LEVELS << 8];
+
+    // Per level m with min((c * m) >>> MULTIPLIER_BITS, 255) == SHADE for every c, or 0
+    // where double rounding makes no multiplier exact (those lanes use SHADE instead)
+    static final int[] MULTIPLIERS = new int[LEVELS];
+
+    private static final boolean VECTORIZED;
+
+    private static volatile BlockTable blockTable = new BlockTable(new int[0], new int[0]);
+
+    static {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int channel = 0; channel < 256; channel++) {
+                // Blue channel of the per-pixel shading, so both paths share one formula
+                SHADE[(level << 8) | channel] = (byte) ColorCalculator.applyHeightmapShading(channel, level + MIN_Y);
+            }
+            MULTIPLIERS[level] = findMultiplier(level);
+        }
+
+        boolean vectorized = false;
+        if (Boolean.parseBoolean(System.getProperty("quetzalmap.vectorShading", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                vectorized = VectorShadingKernel.isSupported();
+            } catch (LinkageError e) {
+                LOGGER.log(Level.FINE, "Vector shading unavailable", e);
+            }
+        }
+        VECTORIZED = vectorized;
+        LOGGER.fine("Shading kernel: " + (VECTORIZED ? "vector (" + VectorShadingKernel.lanes() + " lanes)" : "scalar"));
+    }
+
+    private ShadingKernel() {
+    }
+
+    /**
+     * Shade packed surface columns (see {@link MinecraftChunk#packColumn}) into ARGB pixels.
+     *
+     * @param columns Packed columns, read from index 0
+     * @param argb    Output pixels
+     * @param offset  Index of the first output pixel
+     * @param length  Number of columns
+     */
+    public static void shade(int[] columns, int[] argb, int offset, int length) {
+        if (VECTORIZED) {
+            VectorShadingKernel.shade(columns, argb, offset, length);
+        } else {
+            shadeScalar(columns, argb, offset, length);
+        }
+    }
+
+    /**
+     * Scalar table-driven loop; also the vector kernel's tail and fallback.
+     */
+    public static void shadeScalar(int[] columns, int[] argb, int offset, int length) {
+        int[] base = blockBase();
+        for (int i = 0; i < length; i++) {
+            argb[offset + i] = shadeColumn(base, columns[i]);
+        }
+    }
+
+    /**
+     * Check if the vector kernel is in use.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    static int shadeColumn(int[] base, int packed) {
+        int blockId = MinecraftChunk.columnBlockId(packed);
+        int blockY = MinecraftChunk.columnHeight(packed);
+        if (blockId >= base.length) {
+            // Registered after the table was built
+            return ColorCalculator.calculatePixelColor(blockId, blockY);
+        }
+
+        int color = base[blockId];
+        if (color == 0) {
+            return 0;
+        }
+        int row = (Math.max(MIN_Y, Math.min(MAX_Y, blockY)) - MIN_Y) << 8;
+        return (color & 0xFF000000)
+                | (SHADE[row | ((color >> 16) & 0xFF)] & 0xFF) << 16
+                | (SHADE[row | ((color >> 8) & 0xFF)] & 0xFF) << 8
+                | (SHADE[row | (color & 0xFF)] & 0xFF);
+    }
+
+    /**
+     * ARGB base color per block ID, rebuilt when new block types were registered.
+     */
+    static int[] blockBase() {
+        BlockRegistry registry = BlockRegistry.getInstance();
+        // Colors before flags: the registry publishes flags first, so flags is never shorter
+        int[] colors = registry.colorsSnapshot();
+        BlockTable table = blockTable;
+        if (table.colors() == colors) {
+            return table.base();
+        }
+
+        byte[] flags = registry.flagsSnapshot();
+        int[] base = new int[colors.length];
+        for (int id = 0; id < colors.length; id++) {
+            if (colors[id] != 0) {
+                int alpha = (flags[id] & BlockRegistry.FLAG_TRANSPARENT) != 0 ? 0xAA : 0xFF;
+                base[id] = (alpha << 24) | (colors[id] & 0x00FFFFFF);
+            }
+        }
+        blockTable = new BlockTable(colors, base);
+        return base;
+    }
+
+    private static int findMultiplier(int level) {
+        // Every channel constrains m to [k << BITS, (k + 1) << BITS) / c; intersect them all
+        long low = 0;
+        long high = Integer.MAX_VALUE / 255;
+        for (int channel = 1; channel < 256; channel++) {
+            int shaded = SHADE[(level << 8) | channel] & 0xFF;
+            low = Math.max(low, (((long) shaded << MULTIPLIER_BITS) + channel - 1) / channel);
+            if (shaded < 255) {
+                high = Math.min(high, (((long) (shaded + 1) << MULTIPLIER_BITS) - 1) / channel);
+            }
+        }
+        return low <= high ? (int) low : 0;
+    }
+
+    private record BlockTable(int[] colors, int[] base) {
+    }
+}
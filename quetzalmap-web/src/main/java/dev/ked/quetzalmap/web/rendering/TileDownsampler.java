@@ -0,0 +1,78 @@
+package dev.ked.quetzalmap.web.rendering;
+
+import dev.ked.quetzalmap.web.tiles.Tile;
+
+/**
+ * 2×2 box filter used to build each zoom level from the one below it.
+ *
+ * A child tile shrinks into one 256×256 quadrant of its parent. Fully opaque
+ * blocks (almost all of a rendered map) are averaged with SWAR arithmetic: the
+ * four channels are split into two 0x00FF00FF lanes and summed as packed ints,
+ * a branch-free straight-line loop the JIT can vectorize. Blocks with any
+ * transparency are averaged weighted by alpha, so empty map areas don't darken
+ * the colors next to them.
+ */
+public final class TileDownsampler {
+    private static final int SIZE = Tile.TILE_SIZE;
+    private static final int HALF = SIZE / 2;
+    private static final int LANE_MASK = 0x00FF00FF;
+
+    private TileDownsampler() {
+    }
+
+    /**
+     * Downsample a whole child tile into one quadrant of a parent.
+     *
+     * @param child     512×512 child pixels
+     * @param parent    512×512 parent pixels
+     * @param quadrantX 0 for the west half of the parent, 1 for the east
+     * @param quadrantZ 0 for the north half of the parent, 1 for the south
+     */
+    public static void downsampleInto(int[] child, int[] parent, int quadrantX, int quadrantZ) {
+        int offsetX = quadrantX * HALF;
+        int offsetZ = quadrantZ * HALF;
+
+        for (int z = 0; z < HALF; z++) {
+            int top = (z * 2) * SIZE;
+            int bottom = top + SIZE;
+            int out = (offsetZ + z) * SIZE + offsetX;
+            for (int x = 0; x < HALF; x++) {
+                int p0 = child[top + x * 2];
+                int p1 = child[top + x * 2 + 1];
+                int p2 = child[bottom + x * 2];
+                int p3 = child[bottom + x * 2 + 1];
+
+                parent[out + x] = (p0 & p1 & p2 & p3) >>> 24 == 0xFF
+                        ? averageOpaque(p0, p1, p2, p3)
+                        : averageWeighted(p0, p1, p2, p3);
+            }
+        }
+    }
+
+    /**
+     * Rounded average of four opaque pixels, two channels per lane.
+     */
+    private static int averageOpaque(int p0, int p1, int p2, int p3) {
+        // Each 16-bit slot holds at most 4 × 255 + 2, so lanes never carry into each other
+        int redBlue = (p0 & LANE_MASK) + (p1 & LANE_MASK) + (p2 & LANE_MASK) + (p3 & LANE_MASK) + 0x00020002;
+        int alphaGreen = ((p0 >>> 8) & LANE_MASK) + ((p1 >>> 8) & LANE_MASK)
+                + ((p2 >>> 8) & LANE_MASK) + ((p3 >>> 8) & LANE_MASK) + 0x00020002;
+        return ((alphaGreen << 6) & ~LANE_MASK) | ((redBlue >>> 2) & LANE_MASK);
+    }
+
+    /**
+     * Average of four pixels with colors weighted by alpha.
+     */
+    private static int averageWeighted(int p0, int p1, int p2, int p3) {
+        int a0 = p0 >>> 24, a1 = p1 >>> 24, a2 = p2 >>> 24, a3 = p3 >>> 24;
+        int alpha = a0 + a1 + a2 + a3;
+        if (alpha == 0) {
+            return 0;
+        }
+        int half = alpha >> 1;
+        int r = (a0 * ((p0 >> 16) & 0xFF) + a1 * ((p1 >> 16) & 0xFF) + a2 * ((p2 >> 16) & 0xFF) + a3 * ((p3 >> 16) & 0xFF) + half) / alpha;
+        int g = (a0 * ((p0 >> 8) & 0xFF) + a1 * ((p1 >> 8) & 0xFF) + a2 * ((p2 >> 8) & 0xFF) + a3 * ((p3 >> 8) & 0xFF) + half) / alpha;
+        int b = (a0 * (p0 & 0xFF) + a1 * (p1 & 0xFF) + a2 * (p2 & 0xFF) + a3 * (p3 & 0xFF) + half) / alpha;
+        return ((alpha + 2) >> 2) << 24 | r << 16 | g << 8 | b;
+    }
+}
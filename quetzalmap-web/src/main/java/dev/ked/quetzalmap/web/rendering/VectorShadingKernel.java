@@ -0,0 +1,100 @@
+package dev.ked.quetzalmap.web.rendering;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ShadingKernel} on the incubating Vector API.
+ *
+ * Only loaded once {@link ShadingKernel} has checked that {@code jdk.incubator.vector}
+ * is in the boot layer. Block bases and per-height multipliers are gathered; the
+ * shading itself is a fixed-point multiply per channel. The two heights where no
+ * multiplier reproduces the double math exactly are redone with the scalar table.
+ */
+final class VectorShadingKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // Gather index scratch (the Vector API gathers through int[] index maps)
+    private static final ThreadLocal<int[][]> SCRATCH =
+            ThreadLocal.withInitial(() -> new int[][]{new int[SPECIES.length()], new int[SPECIES.length()]});
+
+    private VectorShadingKernel() {
+    }
+
+    static boolean isSupported() {
+        // A 1-lane "vector" would only add overhead over the scalar loop
+        return SPECIES.length() >= 4;
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static void shade(int[] columns, int[] argb, int offset, int length) {
+        int[] base = ShadingKernel.blockBase();
+        int[] multipliers = ShadingKernel.MULTIPLIERS;
+        int[][] scratch = SCRATCH.get();
+        int[] ids = scratch[0];
+        int[] levels = scratch[1];
+
+        int lanes = SPECIES.length();
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            IntVector packed = IntVector.fromArray(SPECIES, columns, i);
+            IntVector blockIds = packed.lanewise(VectorOperators.LSHR, 16);
+            if (blockIds.compare(VectorOperators.GE, base.length).anyTrue()) {
+                // Block registered after the table was built
+                for (int lane = 0; lane < lanes; lane++) {
+                    argb[offset + i + lane] = ShadingKernel.shadeColumn(base, columns[i + lane]);
+                }
+                continue;
+            }
+
+            // Sign-extend the low 16 bits, clamp to the world height range
+            IntVector level = packed.lanewise(VectorOperators.LSHL, 16)
+                    .lanewise(VectorOperators.ASHR, 16)
+                    .max(ShadingKernel.MIN_Y)
+                    .min(ShadingKernel.MAX_Y)
+                    .sub(ShadingKernel.MIN_Y);
+            blockIds.intoArray(ids, 0);
+            level.intoArray(levels, 0);
+
+            IntVector color = IntVector.fromArray(SPECIES, base, 0, ids, 0);
+            IntVector multiplier = IntVector.fromArray(SPECIES, multipliers, 0, levels, 0);
+
+            IntVector red = shadeChannel(color.lanewise(VectorOperators.LSHR, 16), multiplier);
+            IntVector green = shadeChannel(color.lanewise(VectorOperators.LSHR, 8), multiplier);
+            IntVector blue = shadeChannel(color, multiplier);
+
+            IntVector pixel = color.and(0xFF000000)
+                    .or(red.lanewise(VectorOperators.LSHL, 16))
+                    .or(green.lanewise(VectorOperators.LSHL, 8))
+                    .or(blue)
+                    .blend(0, color.compare(VectorOperators.EQ, 0));
+            pixel.intoArray(argb, offset + i);
+
+            VectorMask<Integer> inexact = multiplier.compare(VectorOperators.EQ, 0);
+            if (inexact.anyTrue()) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    if (inexact.laneIsSet(lane)) {
+                        argb[offset + i + lane] = ShadingKernel.shadeColumn(base, columns[i + lane]);
+                    }
+                }
+            }
+        }
+
+        for (; i < length; i++) {
+            argb[offset + i] = ShadingKernel.shadeColumn(base, columns[i]);
+        }
+    }
+
+    private static IntVector shadeChannel(IntVector channel, IntVector multiplier) {
+        return channel.and(0xFF)
+                .mul(multiplier)
+                .lanewise(VectorOperators.LSHR, ShadingKernel.MULTIPLIER_BITS)
+                .min(255);
+    }
+}
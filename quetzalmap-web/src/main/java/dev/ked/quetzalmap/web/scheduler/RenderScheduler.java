@@ -0,0 +1,302 @@
+package dev.ked.quetzalmap.web.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Runs all tile rendering on one dedicated work-stealing pool.
+ *
+ * Render jobs are queued by {@link Priority} and taken strictly in priority
+ * order; within a priority, worlds take turns so one busy world can't starve
+ * the others. At most {@code parallelism} jobs run at once, and the pool never
+ * grows past {@code parallelism} threads, even while workers wait on each other.
+ *
+ * Work a job splits up (parallel streams, bulk chunk decoding) runs on the
+ * same pool rather than the common ForkJoinPool, which Paper and other plugins share.
+ * Idle workers steal those subtasks, so a single large render still uses every thread.
+ */
+public final class RenderScheduler {
+    private static final Logger LOGGER = Logger.getLogger(RenderScheduler.class.getName());
+
+    /**
+     * Render priority classes, highest first.
+     */
+    public enum Priority {
+        /** A client is waiting on the tile. */
+        INTERACTIVE,
+        /** Repainting tiles after blocks changed. */
+        LIVE_UPDATE,
+        /** Background pre-generation. */
+        PREGEN
+    }
+
+    private final ForkJoinPool pool;
+    private final int maxConcurrent;
+
+    // Guards the queues and counters below
+    private final Object lock = new Object();
+    // Per priority: queued jobs per world, worlds in round-robin order
+    private final List<Map<String, ArrayDeque<Job<?>>>> queues = new ArrayList<>();
+    private int queued;
+    private int running;
+    private boolean shutdown;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * @param parallelism Worker threads, which is also the number of jobs run at once
+     */
+    public RenderScheduler(int parallelism) {
+        this.maxConcurrent = parallelism;
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new LinkedHashMap<>());
+        }
+
+        ClassLoader loader = RenderScheduler.class.getClassLoader();
+        AtomicInteger threadIds = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism,
+                pool -> {
+                    ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                    };
+                    thread.setName("QuetzalMap-Render-" + threadIds.incrementAndGet());
+                    thread.setDaemon(true);
+                    // Workers may be started from server threads; keep plugin classes resolvable
+                    thread.setContextClassLoader(loader);
+                    return thread;
+                },
+                null, false,
+                0, parallelism, 1,
+                // Hard cap: never add threads to compensate for blocked workers
+                pool -> true,
+                60, TimeUnit.SECONDS);
+
+        LOGGER.info("RenderScheduler initialized: parallelism=" + parallelism);
+    }
+
+    /**
+     * Queue a render job.
+     *
+     * Cancelling the returned future drops the job if it hasn't started yet;
+     * a job that is already running finishes, but its result is discarded.
+     *
+     * @param world World the job renders, for fairness between worlds
+     * @return future completed with the job's result
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, String world, Supplier<T> task) {
+        Job<T> job = new Job<>(task);
+        if (!enqueue(priority, world, job)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Render scheduler is shut down"));
+        }
+        return job.future;
+    }
+
+    /**
+     * Executor that queues tasks with the given priority, for {@code CompletableFuture.*Async} stages.
+     */
+    public Executor executor(Priority priority, String world) {
+        return task -> {
+            if (!enqueue(priority, world, new Job<>(() -> {
+                task.run();
+                return null;
+            }))) {
+                throw new RejectedExecutionException("Render scheduler is shut down");
+            }
+        };
+    }
+
+    private boolean enqueue(Priority priority, String world, Job<?> job) {
+        synchronized (lock) {
+            if (shutdown) {
+                return false;
+            }
+            queues.get(priority.ordinal()).computeIfAbsent(world, w -> new ArrayDeque<>()).add(job);
+            queued++;
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * Move a job that is still queued up to a higher priority (e.g. a client now
+     * waits on a tile queued for pre-generation). It goes to the back of that priority's queue.
+     *
+     * @param future Future returned by {@link #submit} for the job
+     * @return false if the job isn't queued below that priority (started, done or unknown)
+     */
+    public boolean promote(CompletableFuture<?> future, Priority priority, String world) {
+        synchronized (lock) {
+            for (int i = priority.ordinal() + 1; i < queues.size(); i++) {
+                ArrayDeque<Job<?>> jobs = queues.get(i).get(world);
+                if (jobs == null) {
+                    continue;
+                }
+                for (Iterator<Job<?>> it = jobs.iterator(); it.hasNext(); ) {
+                    Job<?> job = it.next();
+                    if (job.future == future) {
+                        it.remove();
+                        if (jobs.isEmpty()) {
+                            queues.get(i).remove(world);
+                        }
+                        queues.get(priority.ordinal()).computeIfAbsent(world, w -> new ArrayDeque<>()).add(job);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start queued jobs while there is capacity.
+     */
+    private void dispatch() {
+        while (true) {
+            Job<?> job;
+            synchronized (lock) {
+                if (running >= maxConcurrent || shutdown) {
+                    return;
+                }
+                job = poll();
+                if (job == null) {
+                    return;
+                }
+                running++;
+            }
+            try {
+                pool.execute(job);
+            } catch (RejectedExecutionException e) {
+                // Shut down between taking the job and starting it
+                synchronized (lock) {
+                    running--;
+                }
+                job.future.cancel(false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Next job to run: highest priority first, then the world whose turn it is.
+     */
+    private Job<?> poll() {
+        for (Map<String, ArrayDeque<Job<?>>> worlds : queues) {
+            while (!worlds.isEmpty()) {
+                String world = worlds.keySet().iterator().next();
+                ArrayDeque<Job<?>> jobs = worlds.remove(world);
+                Job<?> job = jobs.poll();
+                if (!jobs.isEmpty()) {
+                    // Back of the line
+                    worlds.put(world, jobs);
+                }
+                queued--;
+
+                if (job.future.isDone()) {
+                    cancelled.increment();
+                    continue;
+                }
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of jobs queued (including cancelled ones not yet discarded) or running.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queued + running;
+        }
+    }
+
+    /**
+     * Stop accepting jobs and drop the queued ones. Running jobs finish.
+     */
+    public void shutdown() {
+        List<Job<?>> dropped = new ArrayList<>();
+        synchronized (lock) {
+            shutdown = true;
+            for (Map<String, ArrayDeque<Job<?>>> worlds : queues) {
+                worlds.values().forEach(dropped::addAll);
+                worlds.clear();
+            }
+            queued = 0;
+        }
+        for (Job<?> job : dropped) {
+            job.future.cancel(false);
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Get scheduler statistics.
+     */
+    public SchedulerStats getStats() {
+        int[] queuedByPriority = new int[Priority.values().length];
+        int runningNow;
+        synchronized (lock) {
+            for (int i = 0; i < queuedByPriority.length; i++) {
+                for (ArrayDeque<Job<?>> jobs : queues.get(i).values()) {
+                    queuedByPriority[i] += jobs.size();
+                }
+            }
+            runningNow = running;
+        }
+        return new SchedulerStats(queuedByPriority[Priority.INTERACTIVE.ordinal()],
+                queuedByPriority[Priority.LIVE_UPDATE.ordinal()], queuedByPriority[Priority.PREGEN.ordinal()],
+                runningNow, pool.getPoolSize(), completed.sum(), cancelled.sum());
+    }
+
+    private final class Job<T> implements Runnable {
+        private final Supplier<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Job(Supplier<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!future.isDone()) {
+                    future.complete(task.get());
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (lock) {
+                    running--;
+                }
+                completed.increment();
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Scheduler statistics.
+     */
+    public record SchedulerStats(int queuedInteractive, int queuedLiveUpdate, int queuedPregen,
+                                 int running, int threads, long completed, long cancelled) {
+        @Override
+        public String toString() {
+            return String.format("SchedulerStats[queued=%d/%d/%d (interactive/live/pregen), running=%d, threads=%d, completed=%d, cancelled=%d]",
+                    queuedInteractive, queuedLiveUpdate, queuedPregen, running, threads, completed, cancelled);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package dev.ked.quetzalmap.web.tiles;
 
+import java.util.BitSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -8,10 +10,17 @@ import java.util.concurrent.ConcurrentHashMap;
  * Thread-safe for concurrent chunk updates.
  */
 public final class DirtyTileTracker {
+    private static final int CHUNKS_PER_TILE = 32 * 32;
+    // Marks a zoom 0 tile dirtied as a whole; chunks marked after it are covered by the full check
+    private static final BitSet WHOLE_TILE = new BitSet(0);
+
     private final Set<TileCoord> dirtyTiles;
+    // Changed chunks of zoom 0 tiles, kept until the tile is repainted
+    private final Map<TileCoord, BitSet> dirtyChunks;
 
     public DirtyTileTracker() {
         this.dirtyTiles = ConcurrentHashMap.newKeySet();
+        this.dirtyChunks = new ConcurrentHashMap<>();
     }
 
     /**
@@ -29,56 +38,49 @@ public final class DirtyTileTracker {
     }
 
     /**
-     * Mark all tiles affected by a chunk change as dirty.
-     * A chunk can affect up to 4 tiles if it's on a boundary.
+     * Mark the tile containing a chunk as dirty.
+     * A chunk never straddles tiles: every zoom level's tile is a whole number of chunks wide.
+     * At zoom 0 the chunk itself is also recorded, so only it needs repainting.
      */
     public void markChunkDirty(String world, int chunkX, int chunkZ, int zoom) {
-        // Calculate which tile(s) this chunk belongs to
-        // Tiles are 512×512 pixels, chunks are 16×16 blocks
-        // So each tile contains 32×32 chunks
-
-        int tileX = Math.floorDiv(chunkX, 32);
-        int tileZ = Math.floorDiv(chunkZ, 32);
-
-        markDirty(new TileCoord(world, zoom, tileX, tileZ));
-
-        // Check if chunk is on tile boundary
-        int chunkOffsetX = chunkX & 31; // chunkX % 32
-        int chunkOffsetZ = chunkZ & 31; // chunkZ % 32
-
-        // If on left edge, mark left neighbor
-        if (chunkOffsetX == 0) {
-            markDirty(new TileCoord(world, zoom, tileX - 1, tileZ));
-        }
-
-        // If on right edge, mark right neighbor
-        if (chunkOffsetX == 31) {
-            markDirty(new TileCoord(world, zoom, tileX + 1, tileZ));
-        }
-
-        // If on top edge, mark top neighbor
-        if (chunkOffsetZ == 0) {
-            markDirty(new TileCoord(world, zoom, tileX, tileZ - 1));
+        // Zoom 0 tiles are 512×512 blocks (32×32 chunks); each zoom level doubles that
+        int chunksPerTile = 32 << zoom;
+        TileCoord coord = new TileCoord(world, zoom,
+                Math.floorDiv(chunkX, chunksPerTile), Math.floorDiv(chunkZ, chunksPerTile));
+
+        if (zoom == 0) {
+            int index = ((chunkZ & 31) << 5) | (chunkX & 31);
+            // compute() is atomic per key, so a set is never modified after takeDirtyChunks removed it
+            dirtyChunks.compute(coord, (key, chunks) -> {
+                if (chunks == WHOLE_TILE) {
+                    return chunks;
+                }
+                BitSet set = chunks != null ? chunks : new BitSet(CHUNKS_PER_TILE);
+                set.set(index);
+                return set;
+            });
         }
+        markDirty(coord);
+    }
 
-        // If on bottom edge, mark bottom neighbor
-        if (chunkOffsetZ == 31) {
-            markDirty(new TileCoord(world, zoom, tileX, tileZ + 1));
-        }
+    /**
+     * Mark a zoom 0 tile dirty as a whole: every chunk is checked against the
+     * region header, overriding any chunks marked individually until it is taken.
+     */
+    public void markTileDirty(TileCoord coord) {
+        dirtyChunks.put(coord, WHOLE_TILE);
+        markDirty(coord);
+    }
 
-        // Corner cases (affects 4 tiles)
-        if (chunkOffsetX == 0 && chunkOffsetZ == 0) {
-            markDirty(new TileCoord(world, zoom, tileX - 1, tileZ - 1));
-        }
-        if (chunkOffsetX == 31 && chunkOffsetZ == 0) {
-            markDirty(new TileCoord(world, zoom, tileX + 1, tileZ - 1));
-        }
-        if (chunkOffsetX == 0 && chunkOffsetZ == 31) {
-            markDirty(new TileCoord(world, zoom, tileX - 1, tileZ + 1));
-        }
-        if (chunkOffsetX == 31 && chunkOffsetZ == 31) {
-            markDirty(new TileCoord(world, zoom, tileX + 1, tileZ + 1));
-        }
+    /**
+     * Take the chunks marked dirty in a zoom 0 tile since the last call.
+     *
+     * @return chunk indices ({@code (z << 5) | x} within the tile), or null if
+     *         the tile was marked dirty as a whole and all its chunks must be checked
+     */
+    public int[] takeDirtyChunks(TileCoord coord) {
+        BitSet chunks = dirtyChunks.remove(coord);
+        return chunks != null && chunks != WHOLE_TILE ? chunks.stream().toArray() : null;
     }
 
     /**
@@ -116,5 +118,6 @@ public final class DirtyTileTracker {
      */
     public void clear() {
         dirtyTiles.clear();
+        dirtyChunks.clear();
     }
 }
@@ -0,0 +1,177 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler;
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler.Priority;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight registry: at most one render per tile is in flight, shared by every caller.
+ *
+ * Each caller gets its own future (a ticket) for the shared render. Cancelling
+ * a ticket means that caller no longer needs the tile; once every ticket of a
+ * render is cancelled, the render itself is cancelled, which drops it from the
+ * render queue if it hasn't started. A caller joining with a higher priority
+ * moves a still-queued render up to that priority.
+ */
+public final class InFlightRenders {
+    private final RenderScheduler scheduler;
+    private final ConcurrentHashMap<TileCoord, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    public InFlightRenders(RenderScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Join the render of a tile, starting it if none is in flight.
+     *
+     * @param render Starts the render; called at most once per flight, outside any lock
+     * @return this caller's ticket; cancel it when the tile is no longer wanted
+     */
+    public CompletableFuture<Tile> join(TileCoord coord, Priority priority, Supplier<CompletableFuture<Tile>> render) {
+        Flight[] created = new Flight[1];
+        Flight flight = flights.compute(coord, (key, existing) -> {
+            if (existing != null && existing.retain(priority)) {
+                return existing;
+            }
+            created[0] = new Flight(coord, priority);
+            return created[0];
+        });
+
+        if (flight == created[0]) {
+            started.increment();
+            flight.start(render);
+        } else {
+            coalesced.increment();
+        }
+
+        CompletableFuture<Tile> ticket = new CompletableFuture<>();
+        flight.result.whenComplete((tile, error) -> {
+            if (error != null) {
+                ticket.completeExceptionally(error);
+            } else {
+                ticket.complete(tile);
+            }
+        });
+        ticket.whenComplete((tile, error) -> {
+            if (ticket.isCancelled()) {
+                flight.release();
+            }
+        });
+        return ticket;
+    }
+
+    /**
+     * Number of tiles being rendered (or queued).
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    /**
+     * Get single-flight statistics.
+     */
+    public InFlightStats getStats() {
+        return new InFlightStats(flights.size(), started.sum(), coalesced.sum(), abandoned.sum());
+    }
+
+    /**
+     * One shared render and the number of callers still waiting on it.
+     */
+    private final class Flight {
+        private final TileCoord coord;
+        private final CompletableFuture<Tile> result = new CompletableFuture<>();
+
+        // Guarded by this
+        private Priority priority;
+        private int refs = 1;
+        private boolean abandonedByAll;
+        private CompletableFuture<Tile> source;
+
+        Flight(TileCoord coord, Priority priority) {
+            this.coord = coord;
+            this.priority = priority;
+        }
+
+        void start(Supplier<CompletableFuture<Tile>> render) {
+            CompletableFuture<Tile> future;
+            try {
+                future = render.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                source = future;
+            }
+            future.whenComplete((tile, error) -> {
+                flights.remove(coord, this);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(tile);
+                }
+            });
+            synchronized (this) {
+                if (abandonedByAll) {
+                    // Every caller left before the render was even queued
+                    future.cancel(false);
+                }
+            }
+        }
+
+        /**
+         * Add a caller. Fails once the flight has finished or been abandoned.
+         */
+        synchronized boolean retain(Priority wanted) {
+            if (abandonedByAll || result.isDone()) {
+                return false;
+            }
+            refs++;
+            if (wanted.ordinal() < priority.ordinal()) {
+                priority = wanted;
+                if (source != null) {
+                    scheduler.promote(source, wanted, coord.getWorld());
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Remove a caller; the last one out cancels the render.
+         */
+        void release() {
+            CompletableFuture<Tile> cancel;
+            synchronized (this) {
+                if (abandonedByAll || result.isDone() || --refs > 0) {
+                    return;
+                }
+                abandonedByAll = true;
+                cancel = source;
+            }
+            abandoned.increment();
+            flights.remove(coord, this);
+            if (cancel != null) {
+                cancel.cancel(false);
+            }
+            result.cancel(false);
+        }
+    }
+
+    /**
+     * Single-flight statistics.
+     */
+    public record InFlightStats(int inFlight, long started, long coalesced, long abandoned) {
+        @Override
+        public String toString() {
+            return String.format("InFlightStats[inFlight=%d, started=%d, coalesced=%d, abandoned=%d]",
+                    inFlight, started, coalesced, abandoned);
+        }
+    }
+}
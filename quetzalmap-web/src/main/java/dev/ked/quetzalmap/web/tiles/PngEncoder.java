@@ -0,0 +1,667 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming PNG encoder for tile pixels.
+ *
+ * Images with at most 256 distinct colors (most map tiles) are written as 8-bit
+ * indexed PNGs with a PLTE/tRNS palette: a quarter of the raw bytes to deflate
+ * and much smaller files. Other images are written as 8-bit RGBA, choosing the
+ * row filter per row by the minimum sum of absolute differences (as libpng does).
+ * Compressed data goes out in IDAT chunks as it is produced, and all buffers
+ * are reused per thread. Deflaters, whose native zlib state only
+ * {@link Deflater#end()} frees promptly, are borrowed from a small bounded pool instead.
+ *
+ * When encoding on a worker of a dedicated ForkJoinPool (the render pool), the
+ * image can be split into row bands deflated in parallel, pigz-style: each band
+ * is primed with the last 32 KB of the band before it as a preset dictionary
+ * and ends on a sync flush, so the bands concatenate into one standard zlib
+ * stream whose Adler-32 is combined from the per-band checksums. Workers that
+ * are idle steal bands; on a busy pool the bands simply run one after another.
+ */
+public final class PngEncoder {
+    public static final int DEFAULT_LEVEL = 6;
+    public static final int DEFAULT_BANDS = 4;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    static final int IHDR = 0x49484452;
+    static final int PLTE = 0x504C5445;
+    static final int TRNS = 0x74524E53;
+    static final int IDAT = 0x49444154;
+    static final int IEND = 0x49454E44;
+    static final int COLOR_INDEXED = 3;
+    static final int COLOR_RGBA = 6;
+
+    private static final int MAX_COLORS = 256;
+    private static final int FILTERS = 5;
+    private static final int IDAT_SIZE = 64 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024; // deflate window
+    private static final int MIN_BAND_ROWS = 64;
+    private static final int ADLER_BASE = 65521;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final int MAX_POOLED_DEFLATERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final BlockingQueue<Deflater> ZLIB_DEFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_DEFLATERS);
+    private static final BlockingQueue<Deflater> RAW_DEFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_DEFLATERS);
+
+    private final int level;
+    private final int bands;
+
+    /**
+     * @param level Deflate level, 0 (store) to 9 (smallest)
+     */
+    public PngEncoder(int level) {
+        this(level, 1);
+    }
+
+    /**
+     * @param level Deflate level, 0 (store) to 9 (smallest)
+     * @param bands Row bands to deflate in parallel when encoding on a dedicated
+     *              ForkJoinPool; 1 to always deflate on the calling thread
+     */
+    public PngEncoder(int level, int bands) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be 0-9, got " + level);
+        }
+        if (bands < 1) {
+            throw new IllegalArgumentException("Band count must be at least 1, got " + bands);
+        }
+        this.level = level;
+        this.bands = bands;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    /**
+     * Write a complete PNG.
+     *
+     * @param argb   Non-premultiplied ARGB pixels, row by row
+     * @param width  Image width
+     * @param height Image height
+     * @param out    Destination; written in whole chunks, so it needn't be buffered
+     */
+    public void encode(int[] argb, int width, int height, OutputStream out) throws IOException {
+        if (argb.length != width * height) {
+            throw new IllegalArgumentException("Expected " + (width * height) + " pixels, got " + argb.length);
+        }
+
+        Scratch scratch = SCRATCH.get();
+        int colors = scratch.buildPalette(argb);
+        boolean indexed = colors > 0;
+
+        out.write(SIGNATURE);
+        byte[] header = scratch.header;
+        writeInt(header, 8, width);
+        writeInt(header, 12, height);
+        header[16] = 8; // bit depth
+        header[17] = (byte) (indexed ? COLOR_INDEXED : COLOR_RGBA);
+        header[18] = 0; // deflate
+        header[19] = 0; // adaptive filtering
+        header[20] = 0; // not interlaced
+        writeChunk(out, scratch, IHDR, header, 13);
+
+        if (indexed) {
+            for (int i = 0; i < colors; i++) {
+                int color = scratch.palette[i];
+                header[8 + i * 3] = (byte) (color >> 16);
+                header[9 + i * 3] = (byte) (color >> 8);
+                header[10 + i * 3] = (byte) color;
+            }
+            writeChunk(out, scratch, PLTE, header, colors * 3);
+
+            // Translucent entries come first, so tRNS stops at the last of them
+            if (scratch.translucent > 0) {
+                for (int i = 0; i < scratch.translucent; i++) {
+                    header[8 + i] = (byte) (scratch.palette[i] >>> 24);
+                }
+                writeChunk(out, scratch, TRNS, header, scratch.translucent);
+            }
+        }
+
+        // Filtered RGBA rows are small differences, which FILTERED favors over string matches
+        int strategy = indexed || level == Deflater.NO_COMPRESSION ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED;
+        int rowLength = 1 + width * (indexed ? 1 : 4);
+        scratch.idatLength = 0;
+
+        int bandCount = bandCount(height);
+        if (bandCount > 1) {
+            deflateBands(argb, width, height, indexed, rowLength, strategy, bandCount, scratch, out);
+        } else {
+            deflate(argb, width, height, indexed, rowLength, strategy, scratch, out);
+        }
+        if (scratch.idatLength > 0) {
+            writeChunk(out, scratch, IDAT, scratch.idat, scratch.idatLength);
+        }
+        writeChunk(out, scratch, IEND, header, 0);
+    }
+
+    /**
+     * Bands worth splitting into: only on a dedicated pool (never the common pool,
+     * which the server shares), and never so many that a band is a handful of rows.
+     */
+    private int bandCount(int height) {
+        if (bands == 1 || level == Deflater.NO_COMPRESSION || !ForkJoinTask.inForkJoinPool()
+                || ForkJoinTask.getPool() == ForkJoinPool.commonPool()) {
+            return 1;
+        }
+        return Math.max(1, Math.min(bands, height / MIN_BAND_ROWS));
+    }
+
+    /**
+     * Filter and deflate every row on the calling thread as one zlib stream.
+     */
+    private void deflate(int[] argb, int width, int height, boolean indexed, int rowLength, int strategy,
+                         Scratch scratch, OutputStream out) throws IOException {
+        Deflater deflater = borrow(ZLIB_DEFLATERS, false);
+        try {
+            deflater.setLevel(level);
+            deflater.setStrategy(strategy);
+
+            Rows rows = scratch.rows;
+            rows.prepare(width);
+            for (int y = 0; y < height; y++) {
+                byte[] row = indexed
+                        ? rows.indexRow(argb, y * width, width, scratch)
+                        : rows.filterRow(argb, y * width, width, level != Deflater.NO_COMPRESSION);
+                deflater.setInput(row, 0, rowLength);
+                while (!deflater.needsInput()) {
+                    drain(out, scratch, deflater);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(out, scratch, deflater);
+            }
+        } finally {
+            giveBack(ZLIB_DEFLATERS, deflater);
+        }
+    }
+
+    private static Deflater borrow(BlockingQueue<Deflater> pool, boolean nowrap) {
+        Deflater deflater = pool.poll();
+        return deflater != null ? deflater : new Deflater(DEFAULT_LEVEL, nowrap);
+    }
+
+    private static void giveBack(BlockingQueue<Deflater> pool, Deflater deflater) {
+        deflater.reset();
+        if (!pool.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Free the native state of every pooled Deflater (e.g. on shutdown).
+     */
+    static void endPooledDeflaters() {
+        for (BlockingQueue<Deflater> pool : List.of(ZLIB_DEFLATERS, RAW_DEFLATERS)) {
+            Deflater deflater;
+            while ((deflater = pool.poll()) != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Filter, then deflate, row bands in parallel and write them out as one zlib stream.
+     */
+    private void deflateBands(int[] argb, int width, int height, boolean indexed, int rowLength, int strategy,
+                              int count, Scratch scratch, OutputStream out) throws IOException {
+        Band[] bandList = scratch.bands(count);
+        forEachBand(count, band -> bandList[band].filter(argb, width, height * band / count,
+                height * (band + 1) / count, indexed, rowLength, scratch));
+        // Second pass: each band's dictionary is the filtered tail of the band before it
+        forEachBand(count, band -> bandList[band].deflate(level, strategy,
+                band > 0 ? bandList[band - 1] : null, band == count - 1));
+
+        byte[] zlibHeader = scratch.zlibHeader;
+        int flags = zlibLevel(level) << 6;
+        flags += 31 - ((0x78 << 8 | flags) % 31);
+        zlibHeader[0] = 0x78; // deflate, 32 KB window
+        zlibHeader[1] = (byte) flags;
+        emit(out, scratch, zlibHeader, 0, 2);
+
+        long adler = 1;
+        for (int band = 0; band < count; band++) {
+            Band b = bandList[band];
+            emit(out, scratch, b.output, 0, b.outputLength);
+            adler = combineAdler32(adler, b.checksum, b.inputLength);
+        }
+        writeInt(zlibHeader, 0, (int) adler);
+        emit(out, scratch, zlibHeader, 0, 4);
+    }
+
+    private static void forEachBand(int count, IntConsumer work) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int band = 0; band < count; band++) {
+            int index = band;
+            tasks.add(ForkJoinTask.adapt(() -> work.accept(index)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * FLEVEL field of the zlib header (informational only).
+     */
+    private static int zlibLevel(int level) {
+        if (level < 2) {
+            return 0;
+        }
+        if (level < 6) {
+            return 1;
+        }
+        return level == 6 ? 2 : 3;
+    }
+
+    /**
+     * Adler-32 of two pieces of data from the checksums of each (zlib's adler32_combine).
+     *
+     * @param length2 Length of the second piece
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Append compressed bytes to the IDAT buffer, writing out each chunk as it fills.
+     */
+    private static void emit(OutputStream out, Scratch scratch, byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, IDAT_SIZE - scratch.idatLength);
+            System.arraycopy(data, offset, scratch.idat, 8 + scratch.idatLength, n);
+            scratch.idatLength += n;
+            offset += n;
+            length -= n;
+            if (scratch.idatLength == IDAT_SIZE) {
+                writeChunk(out, scratch, IDAT, scratch.idat, IDAT_SIZE);
+                scratch.idatLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Move deflater output into the IDAT buffer, writing it out once full.
+     */
+    private static void drain(OutputStream out, Scratch scratch, Deflater deflater) throws IOException {
+        scratch.idatLength += deflater.deflate(scratch.idat, 8 + scratch.idatLength, IDAT_SIZE - scratch.idatLength);
+        if (scratch.idatLength == IDAT_SIZE) {
+            writeChunk(out, scratch, IDAT, scratch.idat, IDAT_SIZE);
+            scratch.idatLength = 0;
+        }
+    }
+
+    /**
+     * Write a chunk whose data sits at offset 8 of {@code buffer}, which has room for the CRC after it.
+     */
+    private static void writeChunk(OutputStream out, Scratch scratch, int type, byte[] buffer, int length) throws IOException {
+        writeInt(buffer, 0, length);
+        writeInt(buffer, 4, type);
+        CRC32 crc = scratch.crc;
+        crc.reset();
+        crc.update(buffer, 4, 4 + length);
+        writeInt(buffer, 8 + length, (int) crc.getValue());
+        out.write(buffer, 0, 12 + length);
+    }
+
+    static void writeInt(byte[] buffer, int pos, int value) {
+        buffer[pos] = (byte) (value >>> 24);
+        buffer[pos + 1] = (byte) (value >>> 16);
+        buffer[pos + 2] = (byte) (value >>> 8);
+        buffer[pos + 3] = (byte) value;
+    }
+
+    static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return distanceUp <= distanceUpLeft ? up : upLeft;
+    }
+
+    /**
+     * Per-thread encoder state.
+     */
+    private static final class Scratch {
+        private static final int HASH_SIZE = 1024; // power of two, well over MAX_COLORS
+
+        final CRC32 crc = new CRC32();
+        // Chunk header + up to a full PLTE + CRC; also used for IHDR, tRNS and IEND
+        final byte[] header = new byte[8 + MAX_COLORS * 3 + 4];
+        final byte[] idat = new byte[8 + IDAT_SIZE + 4];
+        int idatLength;
+
+        // Palette hash table: color -> insertion order + 1 (0 = empty slot)
+        final int[] keys = new int[HASH_SIZE];
+        final int[] slots = new int[HASH_SIZE];
+        final int[] colors = new int[MAX_COLORS]; // in order of first appearance
+        final int[] remap = new int[MAX_COLORS];
+        final int[] palette = new int[MAX_COLORS];
+        int translucent;
+
+        final Rows rows = new Rows();
+        final byte[] zlibHeader = new byte[4];
+        Band[] bands = new Band[0];
+
+        Band[] bands(int count) {
+            if (bands.length < count) {
+                Band[] grown = Arrays.copyOf(bands, count);
+                for (int i = bands.length; i < count; i++) {
+                    grown[i] = new Band();
+                }
+                bands = grown;
+            }
+            return bands;
+        }
+
+        /**
+         * Collect the distinct colors, translucent ones first.
+         *
+         * @return number of colors, or -1 if there are more than 256
+         */
+        int buildPalette(int[] argb) {
+            Arrays.fill(slots, 0);
+            int count = 0;
+            int last = 0;
+            boolean first = true;
+            for (int color : argb) {
+                if (color == last && !first) {
+                    continue; // runs of one color are the common case
+                }
+                first = false;
+                last = color;
+                int slot = slotOf(color);
+                if (slots[slot] == 0) {
+                    if (count == MAX_COLORS) {
+                        return -1;
+                    }
+                    keys[slot] = color;
+                    colors[count++] = color;
+                    slots[slot] = count;
+                }
+            }
+
+            translucent = 0;
+            for (int i = 0; i < count; i++) {
+                if (colors[i] >>> 24 != 0xFF) {
+                    remap[i] = translucent++;
+                }
+            }
+            int next = translucent;
+            for (int i = 0; i < count; i++) {
+                if (colors[i] >>> 24 == 0xFF) {
+                    remap[i] = next++;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                palette[remap[i]] = colors[i];
+            }
+            return count;
+        }
+
+        int indexOf(int color) {
+            return remap[slots[slotOf(color)] - 1];
+        }
+
+        private int slotOf(int color) {
+            int slot = (color * 0x9E3779B9) >>> 22; // top 10 bits
+            while (slots[slot] != 0 && keys[slot] != color) {
+                slot = (slot + 1) & (HASH_SIZE - 1);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Row buffers for filtering one run of rows.
+     */
+    private static final class Rows {
+        int width = -1;
+        byte[] raw;
+        byte[] previous;
+        final byte[][] filtered = new byte[FILTERS][];
+
+        /**
+         * Start a run of rows at the top of the image.
+         */
+        void prepare(int width) {
+            if (width != this.width) {
+                this.width = width;
+                raw = new byte[width * 4];
+                previous = new byte[width * 4];
+                for (int f = 0; f < FILTERS; f++) {
+                    filtered[f] = new byte[1 + width * 4];
+                    filtered[f][0] = (byte) f;
+                }
+            }
+            Arrays.fill(previous, (byte) 0);
+        }
+
+        /**
+         * Start a run of rows partway down: the row above is needed by the up, average and Paeth filters.
+         */
+        void prepare(int width, int[] argb, int rowAbove) {
+            prepare(width);
+            toRgba(argb, rowAbove * width, width, previous);
+        }
+
+        private static void toRgba(int[] argb, int offset, int width, byte[] rgba) {
+            for (int x = 0, i = 0; x < width; x++, i += 4) {
+                int color = argb[offset + x];
+                rgba[i] = (byte) (color >> 16);
+                rgba[i + 1] = (byte) (color >> 8);
+                rgba[i + 2] = (byte) color;
+                rgba[i + 3] = (byte) (color >>> 24);
+            }
+        }
+
+        /**
+         * One row as palette indices (filter byte first). Indexed rows are left unfiltered, which
+         * suits palette data best (libpng does the same).
+         */
+        byte[] indexRow(int[] argb, int offset, int width, Scratch palette) {
+            byte[] row = filtered[0];
+            int last = 0;
+            int index = -1;
+            for (int x = 0; x < width; x++) {
+                int color = argb[offset + x];
+                if (index < 0 || color != last) {
+                    last = color;
+                    index = palette.indexOf(color);
+                }
+                row[1 + x] = (byte) index;
+            }
+            return row;
+        }
+
+        /**
+         * One RGBA row, run through whichever filter makes it smallest by sum of absolute values.
+         */
+        byte[] filterRow(int[] argb, int offset, int width, boolean adaptive) {
+            byte[] cur = raw;
+            toRgba(argb, offset, width, cur);
+            raw = previous;
+            previous = cur;
+            byte[] prev = raw; // the row above, before the swap
+
+            byte[] none = filtered[0];
+            System.arraycopy(cur, 0, none, 1, cur.length);
+            if (!adaptive) {
+                return none;
+            }
+
+            byte[] sub = filtered[1];
+            byte[] up = filtered[2];
+            byte[] average = filtered[3];
+            byte[] paeth = filtered[4];
+            long sumNone = 0;
+            long sumSub = 0;
+            long sumUp = 0;
+            long sumAverage = 0;
+            long sumPaeth = 0;
+            for (int i = 0; i < cur.length; i++) {
+                int value = cur[i] & 0xFF;
+                int left = i >= 4 ? cur[i - 4] & 0xFF : 0;
+                int above = prev[i] & 0xFF;
+                int upLeft = i >= 4 ? prev[i - 4] & 0xFF : 0;
+
+                byte s = (byte) (value - left);
+                byte u = (byte) (value - above);
+                byte a = (byte) (value - ((left + above) >>> 1));
+                byte p = (byte) (value - paeth(left, above, upLeft));
+                sub[i + 1] = s;
+                up[i + 1] = u;
+                average[i + 1] = a;
+                paeth[i + 1] = p;
+
+                sumNone += Math.abs((byte) value);
+                sumSub += Math.abs(s);
+                sumUp += Math.abs(u);
+                sumAverage += Math.abs(a);
+                sumPaeth += Math.abs(p);
+            }
+
+            byte[] best = none;
+            long bestSum = sumNone;
+            if (sumSub < bestSum) {
+                best = sub;
+                bestSum = sumSub;
+            }
+            if (sumUp < bestSum) {
+                best = up;
+                bestSum = sumUp;
+            }
+            if (sumAverage < bestSum) {
+                best = average;
+                bestSum = sumAverage;
+            }
+            if (sumPaeth < bestSum) {
+                best = paeth;
+            }
+            return best;
+        }
+    }
+
+    /**
+     * One row band of a parallel encode: its filtered rows and their compressed form.
+     */
+    private static final class Band {
+        final Rows rows = new Rows();
+        final Adler32 adler = new Adler32();
+
+        byte[] input = new byte[0];
+        int inputLength;
+        byte[] output = new byte[0];
+        int outputLength;
+        long checksum;
+
+        /**
+         * Filter rows {@code first} (inclusive) to {@code last} (exclusive) into {@link #input}.
+         */
+        void filter(int[] argb, int width, int first, int last, boolean indexed, int rowLength, Scratch palette) {
+            inputLength = (last - first) * rowLength;
+            if (input.length < inputLength) {
+                input = new byte[inputLength];
+            }
+            if (first > 0 && !indexed) {
+                rows.prepare(width, argb, first - 1);
+            } else {
+                rows.prepare(width);
+            }
+
+            int pos = 0;
+            for (int y = first; y < last; y++) {
+                byte[] row = indexed
+                        ? rows.indexRow(argb, y * width, width, palette)
+                        : rows.filterRow(argb, y * width, width, true);
+                System.arraycopy(row, 0, input, pos, rowLength);
+                pos += rowLength;
+            }
+            adler.reset();
+            adler.update(input, 0, inputLength);
+            checksum = adler.getValue();
+        }
+
+        /**
+         * Compress {@link #input} as raw deflate into {@link #output}. Every band but
+         * the last ends on a sync flush, leaving the stream byte-aligned and open for the next band.
+         *
+         * @param previous Band before this one, whose tail primes the window; null for the first
+         */
+        void deflate(int level, int strategy, Band previous, boolean last) {
+            Deflater deflater = borrow(RAW_DEFLATERS, true);
+            try {
+                deflater.setLevel(level);
+                deflater.setStrategy(strategy);
+                if (previous != null) {
+                    int length = Math.min(DICTIONARY_SIZE, previous.inputLength);
+                    deflater.setDictionary(previous.input, previous.inputLength - length, length);
+                }
+                deflater.setInput(input, 0, inputLength);
+
+                if (output.length < inputLength / 2 + 1024) {
+                    output = new byte[inputLength / 2 + 1024];
+                }
+                outputLength = 0;
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflateMore(deflater, Deflater.NO_FLUSH);
+                    }
+                } else {
+                    // Complete once all input is taken and deflate stops filling the whole buffer
+                    // (the first call may only apply the level and strategy)
+                    do {
+                        deflateMore(deflater, Deflater.SYNC_FLUSH);
+                    } while (outputLength == output.length || !deflater.needsInput());
+                }
+            } finally {
+                giveBack(RAW_DEFLATERS, deflater);
+            }
+        }
+
+        private void deflateMore(Deflater deflater, int flush) {
+            if (outputLength == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            outputLength += deflater.deflate(output, outputLength, output.length - outputLength, flush);
+        }
+    }
+}
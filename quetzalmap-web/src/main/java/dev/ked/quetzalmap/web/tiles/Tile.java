@@ -1,72 +1,158 @@
 package dev.ked.quetzalmap.web.tiles;
 
+import java.awt.Point;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Represents a map tile with zero-copy pixel update capabilities.
- * Uses direct pixel array access to avoid BufferedImage copying overhead.
+ * Represents a map tile as an immutable pixel snapshot, replaced copy-on-write.
  *
- * Thread-safe for concurrent reads and exclusive writes.
+ * Writers paint into a private {@link TileBuffer} and publish it in one atomic
+ * step, so readers and encoders never block and never copy: they read whatever
+ * snapshot is current. Writers are serialized only against each other, once per
+ * published batch rather than once per chunk. Starting a buffer copies the
+ * whole tile, so paint every changed chunk of a tile into one buffer.
  */
 public final class Tile {
     public static final int TILE_SIZE = 512;
     public static final int CHUNK_SIZE = 16;
     public static final int CHUNKS_PER_TILE = TILE_SIZE / CHUNK_SIZE; // 32 chunks per tile
 
+    private static final int CHUNKS = CHUNKS_PER_TILE * CHUNKS_PER_TILE;
+    private static final DirectColorModel ARGB = new DirectColorModel(32, 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000);
+
+    // Shared by every tile that was never painted
+    private static final Snapshot EMPTY = new Snapshot(new int[TILE_SIZE * TILE_SIZE], new int[CHUNKS], new long[CHUNKS]);
+
     private final TileCoord coord;
-    private final BufferedImage image;
-    private final int[] pixels; // Direct pixel array (zero-copy)
-    private final ReadWriteLock lock;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Snapshot snapshot = EMPTY;
 
     private volatile boolean dirty;
     private volatile long lastModified;
 
     public Tile(TileCoord coord) {
         this.coord = coord;
-        this.image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
-        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
-        this.lock = new ReentrantReadWriteLock();
         this.dirty = true;
         this.lastModified = System.currentTimeMillis();
     }
 
     /**
-     * Update a 16×16 chunk region within this tile.
-     * Uses zero-copy array operations for maximum performance.
+     * Create a tile showing the given pixels (e.g. decoded from disk).
+     * The array becomes the tile's snapshot as is and must not be modified afterwards.
      *
-     * @param chunkX Chunk X coordinate within tile (0-31)
-     * @param chunkZ Chunk Z coordinate within tile (0-31)
-     * @param chunkPixels 256-length array of ARGB pixels
+     * @param pixels 512×512 pixel array (262,144 elements)
      */
-    public void updateChunkPixels(int chunkX, int chunkZ, int[] chunkPixels) {
-        if (chunkPixels.length != CHUNK_SIZE * CHUNK_SIZE) {
-            throw new IllegalArgumentException("Chunk pixels must be 256 elements (16×16)");
+    public Tile(TileCoord coord, int[] pixels) {
+        this(coord);
+        if (pixels.length != TILE_SIZE * TILE_SIZE) {
+            throw new IllegalArgumentException("Must provide exactly " + (TILE_SIZE * TILE_SIZE) + " pixels");
         }
+        this.snapshot = new Snapshot(pixels, new int[CHUNKS], new long[CHUNKS]);
+    }
 
-        lock.writeLock().lock();
-        try {
-            int offsetX = chunkX * CHUNK_SIZE;
-            int offsetZ = chunkZ * CHUNK_SIZE;
+    /**
+     * Pixels plus, per chunk (z * 32 + x), the region file timestamp and chunk
+     * generation it was last rendered from. Never modified once published.
+     */
+    record Snapshot(int[] pixels, int[] timestamps, long[] generations) {
+    }
 
-            // Copy 16 rows of 16 pixels each
-            for (int z = 0; z < CHUNK_SIZE; z++) {
-                int srcPos = z * CHUNK_SIZE;
-                int dstPos = (offsetZ + z) * TILE_SIZE + offsetX;
-                System.arraycopy(chunkPixels, srcPos, pixels, dstPos, CHUNK_SIZE);
-            }
+    /**
+     * Start a batch of changes on a private copy of the current pixels.
+     * Nothing is visible to readers until {@link TileBuffer#publish()}.
+     */
+    public TileBuffer edit() {
+        Snapshot base = snapshot;
+        if (base == EMPTY) {
+            // Fresh arrays are already blank; skip copying the empty snapshot
+            return new TileBuffer(this, base, new int[TILE_SIZE * TILE_SIZE], new int[CHUNKS], new long[CHUNKS]);
+        }
+        return new TileBuffer(this, base, base.pixels().clone(), base.timestamps().clone(), base.generations().clone());
+    }
 
+    /**
+     * Swap in a painted buffer. If another buffer was published since this one
+     * was started, only the chunks painted here are merged into the newer
+     * snapshot, and only where they aren't older than what it already shows.
+     */
+    boolean publish(TileBuffer buffer) {
+        if (buffer.isEmpty()) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot;
+            if (current == buffer.base()) {
+                snapshot = new Snapshot(buffer.pixels, buffer.timestamps, buffer.generations);
+            } else if (!merge(current, buffer)) {
+                return false;
+            }
             this.dirty = true;
             this.lastModified = System.currentTimeMillis();
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
+        }
+    }
+
+    private boolean merge(Snapshot current, TileBuffer buffer) {
+        int[] pixels = null;
+        int[] timestamps = null;
+        long[] generations = null;
+
+        for (int index = 0; index < CHUNKS; index++) {
+            if (!buffer.painted[index] || buffer.generations[index] < current.generations()[index]) {
+                continue;
+            }
+            if (pixels == null) {
+                pixels = current.pixels().clone();
+                timestamps = current.timestamps().clone();
+                generations = current.generations().clone();
+            }
+
+            int offset = (index >> 5) * CHUNK_SIZE * TILE_SIZE + (index & 31) * CHUNK_SIZE;
+            for (int z = 0; z < CHUNK_SIZE; z++) {
+                int row = offset + z * TILE_SIZE;
+                System.arraycopy(buffer.pixels, row, pixels, row, CHUNK_SIZE);
+            }
+            timestamps[index] = buffer.timestamps[index];
+            generations[index] = buffer.generations[index];
+        }
+
+        if (pixels == null) {
+            return false;
         }
+        snapshot = new Snapshot(pixels, timestamps, generations);
+        return true;
+    }
+
+    /**
+     * Get the region file timestamp a chunk was last rendered from (0 if never rendered).
+     *
+     * @param chunkX Chunk X coordinate within tile (0-31)
+     * @param chunkZ Chunk Z coordinate within tile (0-31)
+     */
+    public int getChunkTimestamp(int chunkX, int chunkZ) {
+        return snapshot.timestamps()[chunkZ * CHUNKS_PER_TILE + chunkX];
+    }
+
+    /**
+     * Get the chunk generation a chunk was last rendered at (0 if never rendered).
+     *
+     * @param chunkX Chunk X coordinate within tile (0-31)
+     * @param chunkZ Chunk Z coordinate within tile (0-31)
+     */
+    public long getChunkGeneration(int chunkX, int chunkZ) {
+        return snapshot.generations()[chunkZ * CHUNKS_PER_TILE + chunkX];
     }
 
     /**
-     * Set all pixels in the tile at once.
+     * Set all pixels in the tile at once. Chunk timestamps and generations are kept.
      *
      * @param allPixels 512×512 pixel array (262,144 elements)
      */
@@ -75,42 +161,48 @@ public final class Tile {
             throw new IllegalArgumentException("Must provide exactly " + (TILE_SIZE * TILE_SIZE) + " pixels");
         }
 
-        lock.writeLock().lock();
+        writeLock.lock();
         try {
-            System.arraycopy(allPixels, 0, pixels, 0, pixels.length);
+            Snapshot current = snapshot;
+            snapshot = new Snapshot(allPixels.clone(), current.timestamps(), current.generations());
             this.dirty = true;
             this.lastModified = System.currentTimeMillis();
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
     /**
-     * Get a thread-safe copy of the image for rendering/saving.
-     * Holds a read lock during the copy operation.
+     * Replace one quadrant with a 2×2 downsample of a tile one zoom level below.
+     * To fill several quadrants, use {@link TileBuffer#downsampleFrom} on one buffer.
+     *
+     * @param child     Tile covering that quadrant
+     * @param quadrantX 0 for the west half, 1 for the east
+     * @param quadrantZ 0 for the north half, 1 for the south
      */
-    public BufferedImage getImage() {
-        lock.readLock().lock();
-        try {
-            return copyImage();
-        } finally {
-            lock.readLock().unlock();
-        }
+    public void downsampleFrom(Tile child, int quadrantX, int quadrantZ) {
+        TileBuffer buffer = edit();
+        buffer.downsampleFrom(child, quadrantX, quadrantZ);
+        buffer.publish();
     }
 
     /**
-     * Get direct read access to pixels (thread-safe).
-     * Caller must hold the read lock.
+     * Get the current pixels as an image, for rendering/saving.
+     * The image shares the snapshot's array (no copy) and must not be modified.
      */
-    public int[] getPixels() {
-        return pixels;
+    public BufferedImage getImage() {
+        DataBufferInt data = new DataBufferInt(snapshot.pixels(), TILE_SIZE * TILE_SIZE);
+        WritableRaster raster = Raster.createPackedRaster(data, TILE_SIZE, TILE_SIZE, TILE_SIZE,
+                ARGB.getMasks(), new Point());
+        return new BufferedImage(ARGB, raster, false, null);
     }
 
     /**
-     * Get the read lock for manual pixel access.
+     * Get the current pixels without locking or copying.
+     * The array is an immutable snapshot and must not be modified.
      */
-    public ReadWriteLock getLock() {
-        return lock;
+    public int[] getPixels() {
+        return snapshot.pixels();
     }
 
     public TileCoord getCoord() {
@@ -137,13 +229,6 @@ public final class Tile {
         return (TILE_SIZE * TILE_SIZE * 4) + 256; // 4 bytes per pixel + overhead
     }
 
-    private BufferedImage copyImage() {
-        BufferedImage copy = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
-        int[] copyPixels = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
-        System.arraycopy(pixels, 0, copyPixels, 0, pixels.length);
-        return copy;
-    }
-
     @Override
     public String toString() {
         return "Tile{" + coord + ", dirty=" + dirty + ", lastModified=" + lastModified + "}";
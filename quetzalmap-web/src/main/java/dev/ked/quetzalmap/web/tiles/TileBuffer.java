@@ -0,0 +1,127 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import dev.ked.quetzalmap.web.rendering.TileDownsampler;
+
+import static dev.ked.quetzalmap.web.tiles.Tile.CHUNKS_PER_TILE;
+import static dev.ked.quetzalmap.web.tiles.Tile.CHUNK_SIZE;
+import static dev.ked.quetzalmap.web.tiles.Tile.TILE_SIZE;
+
+/**
+ * Private scratch copy of a tile's pixels, painted without any locking and then
+ * published to the tile in one atomic step (see {@link Tile#edit()}).
+ *
+ * Any number of threads may paint distinct chunks at once (e.g. from a parallel
+ * stream); {@link #publish()} must only be called once they have all finished.
+ * A buffer can be published once; after that its arrays belong to the tile.
+ */
+public final class TileBuffer {
+    private final Tile tile;
+    private final Tile.Snapshot base;
+
+    final int[] pixels;
+    final int[] timestamps;
+    final long[] generations;
+    // Chunks written through this buffer; only these are merged if the tile changed meanwhile
+    final boolean[] painted = new boolean[CHUNKS_PER_TILE * CHUNKS_PER_TILE];
+
+    private volatile boolean published;
+
+    TileBuffer(Tile tile, Tile.Snapshot base, int[] pixels, int[] timestamps, long[] generations) {
+        this.tile = tile;
+        this.base = base;
+        this.pixels = pixels;
+        this.timestamps = timestamps;
+        this.generations = generations;
+    }
+
+    /**
+     * Paint a 16×16 chunk rendered from a chunk at the given generation.
+     * Pixels rendered from an older generation than the buffer already holds are discarded.
+     *
+     * @param chunkX      Chunk X coordinate within tile (0-31)
+     * @param chunkZ      Chunk Z coordinate within tile (0-31)
+     * @param chunkPixels 256-length array of ARGB pixels
+     * @param timestamp   Chunk timestamp from the region header (epoch seconds)
+     * @param generation  Chunk generation read before the chunk was loaded
+     * @return false if the update was stale and discarded
+     */
+    public boolean paintChunk(int chunkX, int chunkZ, int[] chunkPixels, int timestamp, long generation) {
+        if (chunkPixels.length != CHUNK_SIZE * CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk pixels must be 256 elements (16×16)");
+        }
+        checkWritable();
+
+        int index = chunkZ * CHUNKS_PER_TILE + chunkX;
+        if (generation < generations[index]) {
+            return false;
+        }
+
+        int offsetX = chunkX * CHUNK_SIZE;
+        int offsetZ = chunkZ * CHUNK_SIZE;
+        for (int z = 0; z < CHUNK_SIZE; z++) {
+            System.arraycopy(chunkPixels, z * CHUNK_SIZE, pixels, (offsetZ + z) * TILE_SIZE + offsetX, CHUNK_SIZE);
+        }
+        timestamps[index] = timestamp;
+        generations[index] = generation;
+        painted[index] = true;
+        return true;
+    }
+
+    /**
+     * Replace one quadrant with a 2×2 downsample of a tile one zoom level below.
+     * Reads the child's current snapshot; the child is never locked.
+     *
+     * @param child     Tile covering that quadrant
+     * @param quadrantX 0 for the west half, 1 for the east
+     * @param quadrantZ 0 for the north half, 1 for the south
+     */
+    public void downsampleFrom(Tile child, int quadrantX, int quadrantZ) {
+        checkWritable();
+        TileDownsampler.downsampleInto(child.getPixels(), pixels, quadrantX, quadrantZ);
+
+        int half = CHUNKS_PER_TILE / 2;
+        for (int z = 0; z < half; z++) {
+            for (int x = 0; x < half; x++) {
+                painted[(quadrantZ * half + z) * CHUNKS_PER_TILE + quadrantX * half + x] = true;
+            }
+        }
+    }
+
+    /**
+     * Generation the buffer holds for a chunk (0 if never rendered).
+     */
+    public long getChunkGeneration(int chunkX, int chunkZ) {
+        return generations[chunkZ * CHUNKS_PER_TILE + chunkX];
+    }
+
+    /**
+     * Make the painted chunks visible to readers of the tile.
+     *
+     * @return false if the tile was left untouched (nothing painted, or only
+     *         chunks older than what a concurrently published buffer wrote)
+     */
+    public boolean publish() {
+        checkWritable();
+        published = true;
+        return tile.publish(this);
+    }
+
+    Tile.Snapshot base() {
+        return base;
+    }
+
+    boolean isEmpty() {
+        for (boolean chunk : painted) {
+            if (chunk) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkWritable() {
+        if (published) {
+            throw new IllegalStateException("Tile buffer already published");
+        }
+    }
+}
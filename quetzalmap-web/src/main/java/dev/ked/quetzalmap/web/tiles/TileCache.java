@@ -4,6 +4,8 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -121,6 +123,15 @@ public final class TileCache {
         return warmCache.getIfPresent(coord) != null;
     }
 
+    /**
+     * Coordinates of every tile held in memory (hot or warm).
+     */
+    public Set<TileCoord> getCachedCoords() {
+        Set<TileCoord> coords = new HashSet<>(hotCache.asMap().keySet());
+        coords.addAll(warmCache.asMap().keySet());
+        return coords;
+    }
+
     /**
      * Get cache statistics.
      */
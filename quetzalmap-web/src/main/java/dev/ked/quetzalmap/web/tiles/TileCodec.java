@@ -0,0 +1,277 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.COLOR_INDEXED;
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.COLOR_RGBA;
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.IDAT;
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.IEND;
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.IHDR;
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.PLTE;
+import static dev.ked.quetzalmap.web.tiles.PngEncoder.TRNS;
+import static dev.ked.quetzalmap.web.tiles.Tile.TILE_SIZE;
+
+/**
+ * PNG encoding and decoding straight from and into a tile's pixel array.
+ *
+ * Encoding streams the tile's current snapshot through {@link PngEncoder}.
+ * Decoding inflates tiles in the formats it writes (8-bit indexed or RGBA, not
+ * interlaced) directly into the array that becomes the tile's snapshot; other
+ * PNGs fall back to ImageIO. Row buffers and the file buffer are reused per
+ * thread, so neither direction allocates a second megabyte-sized raster.
+ * Inflaters are borrowed from a small bounded pool rather than kept per thread,
+ * so their native zlib state doesn't outlive retired worker threads.
+ */
+public final class TileCodec {
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int MAX_ROW_BYTES = 1 + TILE_SIZE * 4; // filter byte + RGBA
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final BlockingQueue<Inflater> INFLATERS =
+            new ArrayBlockingQueue<>(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private TileCodec() {
+    }
+
+    /**
+     * Encode the tile's current pixels as PNG.
+     */
+    public static void write(Tile tile, Path file, PngEncoder encoder) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            encoder.encode(tile.getPixels(), TILE_SIZE, TILE_SIZE, out);
+        }
+    }
+
+    /**
+     * Decode a tile PNG into a new 512×512 ARGB array.
+     *
+     * @return the pixels, or null if the file isn't a readable image
+     */
+    public static int[] read(Path file) throws IOException {
+        Scratch scratch = SCRATCH.get();
+        int length = scratch.load(file);
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            if (decode(scratch, inflater, length, pixels)) {
+                return pixels;
+            }
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+
+        // Not in the format tiles are written in (e.g. edited by hand)
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            return null;
+        }
+        if (image.getWidth() != TILE_SIZE || image.getHeight() != TILE_SIZE) {
+            throw new IOException("Tile image is " + image.getWidth() + "×" + image.getHeight());
+        }
+        image.getRGB(0, 0, TILE_SIZE, TILE_SIZE, pixels, 0, TILE_SIZE);
+        return pixels;
+    }
+
+    /**
+     * Free the native state of every pooled Inflater (e.g. on shutdown).
+     */
+    static void endPooledInflaters() {
+        Inflater inflater;
+        while ((inflater = INFLATERS.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decode 512×512 8-bit non-interlaced indexed or RGBA.
+     *
+     * @return false if the file is some other kind of PNG (or not a PNG)
+     */
+    private static boolean decode(Scratch scratch, Inflater inflater, int length, int[] pixels) throws IOException {
+        byte[] data = scratch.file;
+        if (length < 8 || readLong(data, 0) != SIGNATURE) {
+            return false;
+        }
+
+        byte[] previous = scratch.previous;
+        byte[] current = scratch.current;
+        Arrays.fill(previous, (byte) 0);
+        int[] palette = scratch.palette;
+        Arrays.fill(palette, 0);
+        int bytesPerPixel = 0;
+        int rowBytes = 0;
+        int filled = 0;
+        int row = 0;
+
+        int pos = 8;
+        while (pos + 8 <= length) {
+            int chunkLength = readInt(data, pos);
+            int type = readInt(data, pos + 4);
+            int start = pos + 8;
+            if (chunkLength < 0 || start + chunkLength > length) {
+                throw new IOException("Truncated PNG chunk");
+            }
+
+            if (type == IHDR) {
+                int colorType = chunkLength >= 13 ? data[start + 9] : -1;
+                if ((colorType != COLOR_RGBA && colorType != COLOR_INDEXED) || readInt(data, start) != TILE_SIZE
+                        || readInt(data, start + 4) != TILE_SIZE || data[start + 8] != 8 || data[start + 12] != 0) {
+                    return false;
+                }
+                bytesPerPixel = colorType == COLOR_RGBA ? 4 : 1;
+                rowBytes = 1 + TILE_SIZE * bytesPerPixel;
+            } else if (type == PLTE) {
+                Arrays.fill(palette, 0xFF000000);
+                for (int i = 0; i < Math.min(chunkLength / 3, palette.length); i++) {
+                    int entry = start + i * 3;
+                    palette[i] = 0xFF000000 | (data[entry] & 0xFF) << 16 | (data[entry + 1] & 0xFF) << 8 | (data[entry + 2] & 0xFF);
+                }
+            } else if (type == TRNS) {
+                for (int i = 0; i < Math.min(chunkLength, palette.length); i++) {
+                    palette[i] = (data[start + i] & 0xFF) << 24 | (palette[i] & 0x00FFFFFF);
+                }
+            } else if (type == IDAT) {
+                if (rowBytes == 0) {
+                    throw new IOException("PNG image data before header");
+                }
+                inflater.setInput(data, start, chunkLength);
+                try {
+                    while (row < TILE_SIZE) {
+                        int read = inflater.inflate(current, filled, rowBytes - filled);
+                        if (read == 0) {
+                            if (inflater.needsInput() || inflater.finished()) {
+                                break;
+                            }
+                            throw new IOException("Corrupt PNG image data");
+                        }
+                        filled += read;
+                        if (filled == rowBytes) {
+                            unfilter(current, previous, rowBytes, bytesPerPixel);
+                            if (bytesPerPixel == 1) {
+                                for (int x = 0; x < TILE_SIZE; x++) {
+                                    pixels[row * TILE_SIZE + x] = palette[current[1 + x] & 0xFF];
+                                }
+                            } else {
+                                toArgb(current, pixels, row * TILE_SIZE);
+                            }
+                            byte[] swap = previous;
+                            previous = current;
+                            current = swap;
+                            filled = 0;
+                            row++;
+                        }
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt PNG image data", e);
+                }
+            } else if (type == IEND) {
+                break;
+            }
+            pos = start + chunkLength + 4; // skip CRC
+        }
+
+        if (row < TILE_SIZE) {
+            throw new IOException("Truncated PNG image data (" + row + " of " + TILE_SIZE + " rows)");
+        }
+        return true;
+    }
+
+    /**
+     * Undo the PNG row filter in place (first byte is the filter type).
+     */
+    private static void unfilter(byte[] row, byte[] previous, int rowBytes, int bytesPerPixel) throws IOException {
+        int filter = row[0];
+        switch (filter) {
+            case 0 -> {
+            }
+            case 1 -> {
+                for (int i = 1 + bytesPerPixel; i < rowBytes; i++) {
+                    row[i] += row[i - bytesPerPixel];
+                }
+            }
+            case 2 -> {
+                for (int i = 1; i < rowBytes; i++) {
+                    row[i] += previous[i];
+                }
+            }
+            case 3 -> {
+                for (int i = 1; i < rowBytes; i++) {
+                    int left = i > bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                    row[i] += (byte) ((left + (previous[i] & 0xFF)) >>> 1);
+                }
+            }
+            case 4 -> {
+                for (int i = 1; i < rowBytes; i++) {
+                    int left = i > bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+                    int upLeft = i > bytesPerPixel ? previous[i - bytesPerPixel] & 0xFF : 0;
+                    row[i] += (byte) PngEncoder.paeth(left, previous[i] & 0xFF, upLeft);
+                }
+            }
+            default -> throw new IOException("Unknown PNG filter type " + filter);
+        }
+    }
+
+    private static void toArgb(byte[] row, int[] pixels, int offset) {
+        for (int x = 0, i = 1; x < TILE_SIZE; x++, i += 4) {
+            pixels[offset + x] = (row[i + 3] & 0xFF) << 24
+                    | (row[i] & 0xFF) << 16
+                    | (row[i + 1] & 0xFF) << 8
+                    | (row[i + 2] & 0xFF);
+        }
+    }
+
+    private static int readInt(byte[] data, int pos) {
+        return (data[pos] & 0xFF) << 24 | (data[pos + 1] & 0xFF) << 16 | (data[pos + 2] & 0xFF) << 8 | (data[pos + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] data, int pos) {
+        return (long) readInt(data, pos) << 32 | (readInt(data, pos + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Per-thread decode buffers.
+     */
+    private static final class Scratch {
+        final int[] palette = new int[256];
+        byte[] previous = new byte[MAX_ROW_BYTES];
+        byte[] current = new byte[MAX_ROW_BYTES];
+        byte[] file = new byte[256 * 1024];
+
+        /**
+         * Read a whole file into {@link #file}, growing it if needed.
+         *
+         * @return number of bytes read
+         */
+        int load(Path path) throws IOException {
+            try (InputStream in = Files.newInputStream(path)) {
+                int length = 0;
+                while (true) {
+                    if (length == file.length) {
+                        file = Arrays.copyOf(file, file.length * 2);
+                    }
+                    int read = in.read(file, length, file.length - length);
+                    if (read < 0) {
+                        return length;
+                    }
+                    length += read;
+                }
+            }
+        }
+    }
+}
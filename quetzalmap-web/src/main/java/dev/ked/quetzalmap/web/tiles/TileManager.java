@@ -1,11 +1,17 @@
 package dev.ked.quetzalmap.web.tiles;
 
+import dev.ked.quetzalmap.core.world.RegionCache;
+import dev.ked.quetzalmap.core.world.SurfaceSnapshotStore;
+import dev.ked.quetzalmap.web.prefetch.RegionPrefetcher;
 import dev.ked.quetzalmap.web.rendering.TileRenderer;
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler;
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler.Priority;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,25 +26,30 @@ public final class TileManager {
     private final TileStorage storage;
     private final TileRenderer renderer;
     private final DirtyTileTracker dirtyTracker;
-    private final ExecutorService renderExecutor;
+    private final TilePyramid pyramid;
+    private final RenderScheduler scheduler;
+    private final InFlightRenders inFlight;
+    private final RegionPrefetcher prefetcher;
 
     public TileManager(Path tilesDirectory) {
         this.storage = new TileStorage(tilesDirectory);
         this.cache = new TileCache(storage);
-        this.renderer = new TileRenderer();
+        // Decoded region surfaces live next to the tiles so restarts skip chunk decoding
+        this.renderer = new TileRenderer(new SurfaceSnapshotStore(tilesDirectory.resolve(".snapshots"), true));
         this.dirtyTracker = new DirtyTileTracker();
+        this.pyramid = new TilePyramid(cache, storage);
 
         // Auto-scale render threads based on CPU cores
         // Leave 2 cores for Minecraft server, cap at 16 for stability
         int cores = Runtime.getRuntime().availableProcessors();
         int renderThreads = Math.max(2, Math.min(cores - 2, 16));
 
-        this.renderExecutor = Executors.newFixedThreadPool(renderThreads,
-                r -> {
-                    Thread t = new Thread(r, "TileRenderer");
-                    t.setDaemon(true);
-                    return t;
-                });
+        this.scheduler = new RenderScheduler(renderThreads);
+        this.inFlight = new InFlightRenders(scheduler);
+
+        // Prefetch only while at least half the render threads are free
+        this.prefetcher = new RegionPrefetcher(RegionCache.getInstance(), this::needsRender,
+                scheduler::getPendingCount, renderThreads / 2, 1);
 
         LOGGER.info("TileManager initialized: tilesDir=" + tilesDirectory +
                 ", renderThreads=" + renderThreads + " (cores=" + cores + ")");
@@ -48,6 +59,13 @@ public final class TileManager {
      * Get a tile, loading from cache or disk, or rendering if necessary.
      */
     public CompletableFuture<Tile> getTile(TileCoord coord, Path worldDirectory) {
+        return getTile(coord, worldDirectory, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Get a tile, rendering it with the given priority if necessary.
+     */
+    public CompletableFuture<Tile> getTile(TileCoord coord, Path worldDirectory, Priority priority) {
         // Check cache first
         Tile tile = cache.get(coord);
         if (tile != null) {
@@ -55,14 +73,35 @@ public final class TileManager {
         }
 
         // Tile doesn't exist - need to render
-        return renderTile(coord, worldDirectory);
+        return renderTile(coord, worldDirectory, priority);
     }
 
     /**
-     * Render a tile asynchronously.
+     * Render a tile asynchronously for a waiting client.
      */
     public CompletableFuture<Tile> renderTile(TileCoord coord, Path worldDirectory) {
-        return CompletableFuture.supplyAsync(() -> {
+        return renderTile(coord, worldDirectory, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Render a tile asynchronously.
+     * Zoomed-out tiles are composed from their four children, rendering those first if needed.
+     *
+     * Concurrent calls for the same tile share one render. Cancel the returned
+     * future once the tile isn't needed anymore; a render nobody waits on is
+     * dropped if it hasn't started.
+     */
+    public CompletableFuture<Tile> renderTile(TileCoord coord, Path worldDirectory, Priority priority) {
+        if (coord.getZoom() < 0 || coord.getZoom() > TilePyramid.MAX_ZOOM) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Zoom out of range: " + coord));
+        }
+        return inFlight.join(coord, priority, () -> coord.getZoom() > 0
+                ? composeTile(coord, worldDirectory, priority)
+                : renderRegionTile(coord, worldDirectory, priority));
+    }
+
+    private CompletableFuture<Tile> renderRegionTile(TileCoord coord, Path worldDirectory, Priority priority) {
+        return scheduler.submit(priority, coord.getWorld(), () -> {
             long startTime = System.currentTimeMillis();
 
             // Render the tile
@@ -81,7 +120,90 @@ public final class TileManager {
             dirtyTracker.markClean(coord);
 
             return tile;
-        }, renderExecutor);
+        });
+    }
+
+    /**
+     * Build a zoomed-out tile by downsampling its children.
+     * Waits on the children without holding a render thread, so this can't starve the pool.
+     */
+    private CompletableFuture<Tile> composeTile(TileCoord coord, Path worldDirectory, Priority priority) {
+        List<CompletableFuture<Tile>> children = new ArrayList<>();
+        for (TileCoord child : TilePyramid.childrenOf(coord)) {
+            children.add(getTile(child, worldDirectory, priority));
+        }
+
+        CompletableFuture<Void> allChildren = CompletableFuture.allOf(children.toArray(CompletableFuture[]::new));
+        CompletableFuture<Tile> composed = allChildren.thenApplyAsync(ignored -> {
+            long startTime = System.currentTimeMillis();
+
+            Tile[] childTiles = new Tile[children.size()];
+            for (int i = 0; i < childTiles.length; i++) {
+                childTiles[i] = children.get(i).join();
+            }
+            Tile tile = pyramid.compose(coord, childTiles);
+
+            cache.put(coord, tile);
+            storage.save(tile);
+            tile.markClean();
+            dirtyTracker.markClean(coord);
+
+            LOGGER.fine(String.format("Composed tile %s in %dms", coord, System.currentTimeMillis() - startTime));
+            return tile;
+        }, scheduler.executor(priority, coord.getWorld()));
+
+        // Abandoned: stop waiting on the children, so their renders can be dropped too
+        composed.whenComplete((tile, error) -> {
+            if (composed.isCancelled()) {
+                for (CompletableFuture<Tile> child : children) {
+                    child.cancel(false);
+                }
+            }
+        });
+        return composed;
+    }
+
+    /**
+     * Update a tile in place, repainting only chunks that changed on disk since
+     * it was rendered. Falls back to a full render if the tile isn't available.
+     */
+    public CompletableFuture<Tile> updateTile(TileCoord coord, Path worldDirectory) {
+        return updateTile(coord, worldDirectory, null);
+    }
+
+    /**
+     * Update a tile in place (loading it from disk if it isn't cached), repainting
+     * exactly the given chunks. Falls back to a full render if the tile isn't available.
+     *
+     * @param chunkIndices Chunks to repaint, as {@code (z << 5) | x} within the tile;
+     *                     null to repaint whichever chunks changed since the tile was rendered
+     */
+    public CompletableFuture<Tile> updateTile(TileCoord coord, Path worldDirectory, int[] chunkIndices) {
+        return scheduler.submit(Priority.LIVE_UPDATE, coord.getWorld(), () -> {
+            Tile tile = cache.get(coord);
+            if (tile == null) {
+                return null;
+            }
+
+            long startTime = System.currentTimeMillis();
+            int repainted = chunkIndices != null
+                    ? renderer.updateChunks(tile, worldDirectory, chunkIndices)
+                    : renderer.updateTile(tile, worldDirectory);
+            if (repainted > 0) {
+                storage.save(tile);
+            }
+            tile.markClean();
+            if (chunkIndices == null) {
+                // Chunk-granular updates leave the tracker alone: chunks marked meanwhile still need painting
+                dirtyTracker.markClean(coord);
+            }
+
+            LOGGER.fine(String.format("Updated tile %s (%d chunks) in %dms", coord, repainted,
+                    System.currentTimeMillis() - startTime));
+            return tile;
+        }).thenCompose(tile -> tile != null
+                ? CompletableFuture.completedFuture(tile)
+                : renderTile(coord, worldDirectory, Priority.LIVE_UPDATE));
     }
 
     /**
@@ -91,23 +213,79 @@ public final class TileManager {
         dirtyTracker.markChunkDirty(world, chunkX, chunkZ, zoom);
     }
 
+    /**
+     * Mark a region's tile as changed without knowing which chunks did.
+     * Its chunks are repainted only where the region header no longer matches
+     * what the tile was rendered from; decoded chunks and generations are left alone.
+     */
+    public void markRegionDirty(String world, int regionX, int regionZ) {
+        dirtyTracker.markTileDirty(new TileCoord(world, 0, regionX, regionZ));
+        for (int zoom = 1; zoom <= TilePyramid.MAX_ZOOM; zoom++) {
+            dirtyTracker.markChunkDirty(world, regionX << 5, regionZ << 5, zoom);
+        }
+    }
+
+    /**
+     * Mark every region tile of a world held in memory as changed (see {@link #markRegionDirty}).
+     */
+    public void markWorldDirty(String world) {
+        for (TileCoord coord : cache.getCachedCoords()) {
+            if (coord.getZoom() == 0 && coord.getWorld().equals(world)) {
+                markRegionDirty(world, coord.getX(), coord.getZ());
+            }
+        }
+    }
+
     /**
      * Process all dirty tiles (render incrementally).
      */
     public CompletableFuture<Void> processDirtyTiles(Path worldDirectory) {
-        var dirtyTiles = dirtyTracker.getDirtyAndClear();
+        return processDirtyTiles(dirtyTracker.getDirtyAndClear(), worldDirectory);
+    }
 
-        if (dirtyTiles.isEmpty()) {
+    /**
+     * Process the given dirty tiles (render incrementally).
+     * Region-level tiles (zoom 0) repaint only the chunks marked dirty in them
+     * (or, for tiles dirtied as a whole, chunks whose region timestamps advanced);
+     * the changes are then downsampled up the pyramid, one quadrant per affected ancestor.
+     */
+    public CompletableFuture<Void> processDirtyTiles(Set<TileCoord> dirtyTiles, Path worldDirectory) {
+        // Zoomed-out tiles are derived from zoom 0, so only those need repainting
+        List<TileCoord> regionTiles = dirtyTiles.stream()
+                .filter(coord -> coord.getZoom() == 0)
+                .toList();
+
+        if (regionTiles.isEmpty()) {
             return CompletableFuture.completedFuture(null);
         }
 
-        LOGGER.info("Processing " + dirtyTiles.size() + " dirty tiles");
+        LOGGER.info("Processing " + regionTiles.size() + " dirty tiles");
 
-        var futures = dirtyTiles.stream()
-                .map(coord -> renderTile(coord, worldDirectory))
+        var futures = regionTiles.stream()
+                .map(coord -> updateTile(coord, worldDirectory, dirtyTracker.takeDirtyChunks(coord)))
                 .toArray(CompletableFuture[]::new);
 
-        return CompletableFuture.allOf(futures);
+        return CompletableFuture.allOf(futures)
+                .thenRunAsync(() -> {
+                    for (TileCoord ancestor : pyramid.propagate(regionTiles)) {
+                        dirtyTracker.markClean(ancestor);
+                    }
+                }, scheduler.executor(Priority.LIVE_UPDATE, regionTiles.get(0).getWorld()));
+    }
+
+    /**
+     * Check if a tile has never been rendered (not in memory and not on disk).
+     * Doesn't load anything.
+     */
+    public boolean needsRender(TileCoord coord) {
+        return !cache.isInHotCache(coord) && !cache.isInWarmCache(coord) && !storage.exists(coord);
+    }
+
+    /**
+     * Get the number of renders queued or running.
+     */
+    public int getPendingRenderCount() {
+        return scheduler.getPendingCount();
     }
 
     /**
@@ -144,8 +322,11 @@ public final class TileManager {
      */
     public void shutdown() {
         LOGGER.info("Shutting down TileManager");
-        renderExecutor.shutdown();
+        prefetcher.shutdown();
+        scheduler.shutdown();
         cache.clearCaches();
+        TileCodec.endPooledInflaters();
+        PngEncoder.endPooledDeflaters();
     }
 
     public TileCache getCache() {
@@ -156,6 +337,18 @@ public final class TileManager {
         return storage;
     }
 
+    public InFlightRenders getInFlightRenders() {
+        return inFlight;
+    }
+
+    public RenderScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public RegionPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
     public DirtyTileTracker getDirtyTracker() {
         return dirtyTracker;
     }
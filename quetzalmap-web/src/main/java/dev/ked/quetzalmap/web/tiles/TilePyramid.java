@@ -0,0 +1,120 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Zoom levels above 0 are built from the level below instead of from region data.
+ *
+ * Zoom 0 is one region per tile at one block per pixel. A zoom N+1 tile covers
+ * the 2×2 zoom N tiles below it, each shrunk into one quadrant (see
+ * {@link dev.ked.quetzalmap.web.rendering.TileDownsampler}). When a tile
+ * changes only its quadrant of each ancestor is recomputed, level by level.
+ */
+public final class TilePyramid {
+    private static final Logger LOGGER = Logger.getLogger(TilePyramid.class.getName());
+
+    /**
+     * Most zoomed-out level served (each tile covers 2^MAX_ZOOM regions per side).
+     */
+    public static final int MAX_ZOOM = 3;
+
+    private final TileCache cache;
+    private final TileStorage storage;
+
+    public TilePyramid(TileCache cache, TileStorage storage) {
+        this.cache = cache;
+        this.storage = storage;
+    }
+
+    /**
+     * The tile one level up whose quadrant contains this tile.
+     */
+    public static TileCoord parentOf(TileCoord coord) {
+        return new TileCoord(coord.getWorld(), coord.getZoom() + 1,
+                Math.floorDiv(coord.getX(), 2), Math.floorDiv(coord.getZ(), 2));
+    }
+
+    /**
+     * The four tiles one level down, in quadrant order (NW, NE, SW, SE).
+     */
+    public static TileCoord[] childrenOf(TileCoord coord) {
+        TileCoord[] children = new TileCoord[4];
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            children[quadrant] = new TileCoord(coord.getWorld(), coord.getZoom() - 1,
+                    coord.getX() * 2 + (quadrant & 1), coord.getZ() * 2 + (quadrant >> 1));
+        }
+        return children;
+    }
+
+    /**
+     * Build a tile from its four children (same order as {@link #childrenOf}).
+     * Missing children leave their quadrant empty.
+     */
+    public Tile compose(TileCoord coord, Tile[] children) {
+        Tile tile = new Tile(coord);
+        TileBuffer buffer = tile.edit();
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            if (children[quadrant] != null) {
+                buffer.downsampleFrom(children[quadrant], quadrant & 1, quadrant >> 1);
+            }
+        }
+        buffer.publish();
+        return tile;
+    }
+
+    /**
+     * Recompute the quadrants of every ancestor covering the changed tiles.
+     * Ancestors that were never built are skipped; they are composed when first requested.
+     *
+     * @return ancestors that were updated (and saved)
+     */
+    public Set<TileCoord> propagate(Collection<TileCoord> changed) {
+        Set<TileCoord> updated = new LinkedHashSet<>();
+        Collection<TileCoord> level = changed;
+
+        while (!level.isEmpty()) {
+            Map<TileCoord, List<TileCoord>> byParent = new LinkedHashMap<>();
+            for (TileCoord child : level) {
+                if (child.getZoom() < MAX_ZOOM) {
+                    byParent.computeIfAbsent(parentOf(child), p -> new ArrayList<>()).add(child);
+                }
+            }
+
+            List<TileCoord> next = new ArrayList<>();
+            for (Map.Entry<TileCoord, List<TileCoord>> entry : byParent.entrySet()) {
+                Tile parent = cache.get(entry.getKey());
+                if (parent == null) {
+                    continue;
+                }
+
+                TileBuffer buffer = parent.edit();
+                for (TileCoord childCoord : entry.getValue()) {
+                    Tile child = cache.get(childCoord);
+                    if (child != null) {
+                        // x & 1 is the quadrant for negative coordinates too
+                        buffer.downsampleFrom(child, childCoord.getX() & 1, childCoord.getZ() & 1);
+                    }
+                }
+                buffer.publish();
+                storage.save(parent);
+                parent.markClean();
+                next.add(entry.getKey());
+            }
+
+            updated.addAll(next);
+            level = next;
+        }
+
+        if (!updated.isEmpty()) {
+            LOGGER.fine("Propagated " + changed.size() + " tile changes to " + updated.size() + " ancestors");
+        }
+        return updated;
+    }
+}
@@ -1,15 +1,9 @@
 package dev.ked.quetzalmap.web.tiles;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,9 +15,24 @@ public final class TileStorage {
     private static final Logger LOGGER = Logger.getLogger(TileStorage.class.getName());
 
     private final Path tilesDirectory;
+    private final PngEncoder encoder;
 
+    /**
+     * Deflate level from {@code -Dquetzalmap.pngCompression} (0-9, default 6), parallel
+     * deflate bands from {@code -Dquetzalmap.pngBands} (default 4, 1 to disable).
+     */
     public TileStorage(Path tilesDirectory) {
+        this(tilesDirectory, Integer.getInteger("quetzalmap.pngCompression", PngEncoder.DEFAULT_LEVEL),
+                Integer.getInteger("quetzalmap.pngBands", PngEncoder.DEFAULT_BANDS));
+    }
+
+    /**
+     * @param compressionLevel PNG deflate level, 0 (fastest) to 9 (smallest)
+     * @param bands            Row bands deflated in parallel when saving on the render pool
+     */
+    public TileStorage(Path tilesDirectory, int compressionLevel, int bands) {
         this.tilesDirectory = tilesDirectory.toAbsolutePath().normalize();
+        this.encoder = new PngEncoder(compressionLevel, bands);
         try {
             Files.createDirectories(this.tilesDirectory);
         } catch (IOException e) {
@@ -46,29 +55,9 @@ public final class TileStorage {
             }
             Files.createDirectories(parentPath);
 
-            // Write to temporary file first (atomic operation)
+            // Write to temporary file first (atomic operation), encoding straight from the tile's pixels
             Path tempPath = tilePath.resolveSibling(tilePath.getFileName() + ".tmp");
-            BufferedImage image = tile.getImage();
-
-            // Save as PNG with compression (30-50% smaller files)
-            try (ImageOutputStream ios = ImageIO.createImageOutputStream(tempPath.toFile())) {
-                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
-                if (!writers.hasNext()) {
-                    throw new IOException("No PNG writer available");
-                }
-
-                ImageWriter writer = writers.next();
-                writer.setOutput(ios);
-
-                ImageWriteParam param = writer.getDefaultWriteParam();
-                if (param.canWriteCompressed()) {
-                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    param.setCompressionQuality(0.85f); // High quality, good compression
-                }
-
-                writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
-                writer.dispose();
-            }
+            TileCodec.write(tile, tempPath, encoder);
 
             // Atomic move
             Files.move(tempPath, tilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
@@ -94,16 +83,14 @@ public final class TileStorage {
         }
 
         try {
-            BufferedImage image = ImageIO.read(tilePath.toFile());
-            if (image == null) {
+            int[] pixels = TileCodec.read(tilePath);
+            if (pixels == null) {
                 LOGGER.warning("Failed to read tile image: " + coord);
                 return null;
             }
 
-            // Create tile and copy pixels
-            Tile tile = new Tile(coord);
-            int[] loadedPixels = image.getRGB(0, 0, Tile.TILE_SIZE, Tile.TILE_SIZE, null, 0, Tile.TILE_SIZE);
-            tile.setAllPixels(loadedPixels);
+            // Decoded array becomes the tile's pixels as is
+            Tile tile = new Tile(coord, pixels);
             tile.markClean();
 
             return tile;
@@ -1,27 +1,28 @@
 package dev.ked.quetzalmap.web.world;
 
+import dev.ked.quetzalmap.core.world.ChunkCache;
 import dev.ked.quetzalmap.core.world.MinecraftRegion;
+import dev.ked.quetzalmap.core.world.RegionCache;
 import org.bukkit.World;
 
-import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Bridges Paper World objects to MinecraftRegion objects.
- * Handles world directory resolution and Region caching.
+ * Handles world directory resolution; regions and decoded chunks are cached
+ * in the shared, memory-bounded {@link RegionCache}.
  */
 public final class WorldAdapter {
     private static final Logger LOGGER = Logger.getLogger(WorldAdapter.class.getName());
 
-    private final ConcurrentHashMap<RegionKey, MinecraftRegion> regionCache;
+    private final RegionCache regionCache;
     private final Path serverWorldsDirectory;
 
     public WorldAdapter(Path serverWorldsDirectory) {
         this.serverWorldsDirectory = serverWorldsDirectory;
-        this.regionCache = new ConcurrentHashMap<>();
+        this.regionCache = RegionCache.getInstance();
     }
 
     /**
@@ -36,27 +37,16 @@ public final class WorldAdapter {
      * Regions are cached for performance.
      */
     public MinecraftRegion getRegion(World world, int regionX, int regionZ) {
-        RegionKey key = new RegionKey(world.getName(), regionX, regionZ);
-
-        // Check cache first
-        MinecraftRegion cached = regionCache.get(key);
-        if (cached != null) {
-            return cached;
-        }
-
-        // Load region from disk
         Path worldDir = getWorldDirectory(world);
         Path regionFile = worldDir.resolve("region")
                 .resolve("r." + regionX + "." + regionZ + ".mca");
 
-        if (!regionFile.toFile().exists()) {
+        if (!Files.exists(regionFile)) {
             LOGGER.fine(String.format("Region file does not exist: %s", regionFile));
             return null;
         }
 
-        MinecraftRegion region = new MinecraftRegion(regionFile, regionX, regionZ);
-        regionCache.put(key, region);
-        return region;
+        return regionCache.getRegion(worldDir, regionX, regionZ);
     }
 
     /**
@@ -68,19 +58,26 @@ public final class WorldAdapter {
         return getRegion(world, regionX, regionZ);
     }
 
+    /**
+     * Record that a chunk changed: bumps its generation and drops its decoded
+     * entry, so the next render doesn't reuse the old chunk.
+     */
+    public long markChunkDirty(World world, int chunkX, int chunkZ) {
+        return regionCache.markChunkDirty(getWorldDirectory(world), chunkX, chunkZ);
+    }
+
     /**
      * Invalidate cached region (useful when region file changes).
      */
     public void invalidateRegion(String worldName, int regionX, int regionZ) {
-        RegionKey key = new RegionKey(worldName, regionX, regionZ);
-        regionCache.remove(key);
+        regionCache.invalidateRegion(serverWorldsDirectory.resolve(worldName), regionX, regionZ);
     }
 
     /**
      * Clear all cached regions for a world.
      */
     public void clearWorld(String worldName) {
-        regionCache.keySet().removeIf(key -> key.worldName.equals(worldName));
+        regionCache.clearWorld(serverWorldsDirectory.resolve(worldName));
     }
 
     /**
@@ -94,19 +91,23 @@ public final class WorldAdapter {
      * Get cache statistics.
      */
     public CacheStats getStats() {
-        return new CacheStats(regionCache.size());
+        RegionCache.CacheStats stats = regionCache.getStats();
+        return new CacheStats(stats.size(), stats.chunks().bytes(), stats.chunks().maximumBytes());
     }
 
     /**
-     * Cache key for regions.
+     * Get decoded chunk cache statistics for one world.
      */
-    private record RegionKey(String worldName, int regionX, int regionZ) {
+    public ChunkCache.WorldStats getStats(World world) {
+        ChunkCache.WorldStats stats = regionCache.getWorldStats().get(getWorldDirectory(world).toString());
+        return stats != null ? stats : new ChunkCache.WorldStats(0, 0, 0, 0, 0);
     }
 
-    public record CacheStats(int cachedRegions) {
+    public record CacheStats(long cachedRegions, long chunkBytes, long chunkBudgetBytes) {
         @Override
         public String toString() {
-            return String.format("WorldAdapter{cachedRegions=%d}", cachedRegions);
+            return String.format("WorldAdapter{cachedRegions=%d, chunks=%dMB/%dMB}",
+                    cachedRegions, chunkBytes >> 20, chunkBudgetBytes >> 20);
         }
     }
 }
@@ -0,0 +1,100 @@
+package dev.ked.quetzalmap.web.rendering;
+
+import dev.ked.quetzalmap.core.world.BlockRegistry;
+import dev.ked.quetzalmap.core.world.MinecraftChunk;
+
+import java.util.Random;
+
+/**
+ * Compares per-pixel shading with the batch kernels on one tile's worth of columns.
+ * Checks that all paths agree before timing anything.
+ *
+ * Lives in the test sources so it isn't shipped. After {@code mvn test-compile}, run with
+ * {@code java --add-modules jdk.incubator.vector -cp <web test-classes + classes + core jar>
+ * dev.ked.quetzalmap.web.rendering.ShadingBenchmark [rounds]}
+ * (without {@code --add-modules} the vector kernel is skipped).
+ */
+public final class ShadingBenchmark {
+    private static final int PIXELS = 512 * 512;
+
+    private ShadingBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        int[] columns = randomColumns(new Random(42));
+        int[] expected = new int[PIXELS];
+        int[] actual = new int[PIXELS];
+
+        perPixel(columns, expected);
+        ShadingKernel.shadeScalar(columns, actual, 0, PIXELS);
+        verify("scalar", expected, actual);
+        boolean vector = ShadingKernel.isVectorized();
+        if (vector) {
+            VectorShadingKernel.shade(columns, actual, 0, PIXELS);
+            verify("vector", expected, actual);
+        }
+
+        System.out.println("Shading " + PIXELS + " pixels x " + rounds + " rounds"
+                + (vector ? ", " + VectorShadingKernel.lanes() + " int lanes" : ", vector kernel unavailable"));
+        double baseline = time("per-pixel", rounds, () -> perPixel(columns, actual));
+        report("scalar LUT", baseline, time("scalar LUT", rounds, () -> ShadingKernel.shadeScalar(columns, actual, 0, PIXELS)));
+        if (vector) {
+            report("vector", baseline, time("vector", rounds, () -> VectorShadingKernel.shade(columns, actual, 0, PIXELS)));
+        }
+    }
+
+    /**
+     * Surface-like data: runs of the same block at slowly varying heights, with some air.
+     */
+    private static int[] randomColumns(Random random) {
+        int blockTypes = BlockRegistry.getInstance().size();
+        int[] columns = new int[PIXELS];
+        int blockId = 0;
+        int y = 64;
+        for (int i = 0; i < PIXELS; i++) {
+            if (random.nextInt(8) == 0) {
+                blockId = random.nextInt(blockTypes);
+            }
+            y = Math.max(-80, Math.min(330, y + random.nextInt(5) - 2));
+            columns[i] = MinecraftChunk.packColumn(blockId, y);
+        }
+        return columns;
+    }
+
+    private static void perPixel(int[] columns, int[] argb) {
+        for (int i = 0; i < columns.length; i++) {
+            argb[i] = ColorCalculator.calculatePixelColor(
+                    MinecraftChunk.columnBlockId(columns[i]), MinecraftChunk.columnHeight(columns[i]));
+        }
+    }
+
+    private static void verify(String name, int[] expected, int[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                throw new IllegalStateException(String.format("%s differs at %d: expected %08x, got %08x",
+                        name, i, expected[i], actual[i]));
+            }
+        }
+        System.out.println(name + ": output identical to per-pixel shading");
+    }
+
+    private static double time(String name, int rounds, Runnable kernel) {
+        // Warm up so every path is compiled before it's measured
+        for (int i = 0; i < Math.max(20, rounds / 4); i++) {
+            kernel.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            kernel.run();
+        }
+        double nanosPerPixel = (double) (System.nanoTime() - start) / rounds / PIXELS;
+        System.out.printf("%-10s %6.2f ns/pixel  %7.2f ms/tile%n", name, nanosPerPixel, nanosPerPixel * PIXELS / 1e6);
+        return nanosPerPixel;
+    }
+
+    private static void report(String name, double baseline, double nanosPerPixel) {
+        System.out.printf("%-10s %.1fx faster than per-pixel%n", name, baseline / nanosPerPixel);
+    }
+}
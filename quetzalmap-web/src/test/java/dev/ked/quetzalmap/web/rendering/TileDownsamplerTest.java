@@ -0,0 +1,125 @@
+package dev.ked.quetzalmap.web.rendering;
+
+import dev.ked.quetzalmap.web.tiles.Tile;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TileDownsamplerTest {
+    private static final int SIZE = Tile.TILE_SIZE;
+    private static final int HALF = SIZE / 2;
+    private static final int UNTOUCHED = 0x12345678;
+
+    @Test
+    void opaqueBlocksMatchScalarAverage() {
+        Random random = new Random(17);
+        int[] child = new int[SIZE * SIZE];
+        for (int i = 0; i < child.length; i++) {
+            child[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        // Extremes, where a carry between SWAR lanes would show
+        Arrays.fill(child, 0, SIZE * 2, 0xFFFFFFFF);
+        Arrays.fill(child, SIZE * 2, SIZE * 4, 0xFF000000);
+
+        assertMatchesReference(child);
+    }
+
+    @Test
+    void translucentBlocksAreWeightedByAlpha() {
+        Random random = new Random(18);
+        int[] child = new int[SIZE * SIZE];
+        for (int i = 0; i < child.length; i++) {
+            // Mostly opaque with transparent holes, like the edge of the explored map
+            int alpha = switch (random.nextInt(4)) {
+                case 0 -> 0;
+                case 1 -> random.nextInt(256);
+                default -> 0xFF;
+            };
+            child[i] = alpha << 24 | random.nextInt(0x1000000);
+        }
+
+        assertMatchesReference(child);
+    }
+
+    @Test
+    void fullyTransparentBlockStaysEmpty() {
+        int[] child = new int[SIZE * SIZE];
+        Arrays.fill(child, 0x00FFFFFF);
+        int[] parent = new int[SIZE * SIZE];
+        TileDownsampler.downsampleInto(child, parent, 0, 0);
+        assertEquals(0, parent[0]);
+    }
+
+    @Test
+    void opaqueNextToEmptyKeepsItsColor() {
+        int[] child = new int[SIZE * SIZE];
+        child[0] = 0xFF808040;
+        int[] parent = new int[SIZE * SIZE];
+        TileDownsampler.downsampleInto(child, parent, 0, 0);
+        // A quarter of the coverage, but the color of the one opaque pixel
+        assertEquals(0x40808040, parent[0]);
+    }
+
+    private static void assertMatchesReference(int[] child) {
+        for (int quadrantZ = 0; quadrantZ <= 1; quadrantZ++) {
+            for (int quadrantX = 0; quadrantX <= 1; quadrantX++) {
+                int[] parent = new int[SIZE * SIZE];
+                Arrays.fill(parent, UNTOUCHED);
+                TileDownsampler.downsampleInto(child, parent, quadrantX, quadrantZ);
+
+                for (int z = 0; z < SIZE; z++) {
+                    for (int x = 0; x < SIZE; x++) {
+                        int actual = parent[z * SIZE + x];
+                        if (x / HALF != quadrantX || z / HALF != quadrantZ) {
+                            assertEquals(UNTOUCHED, actual, "wrote outside quadrant at " + x + "," + z);
+                            continue;
+                        }
+                        int cx = (x - quadrantX * HALF) * 2;
+                        int cz = (z - quadrantZ * HALF) * 2;
+                        int expected = reference(child[cz * SIZE + cx], child[cz * SIZE + cx + 1],
+                                child[(cz + 1) * SIZE + cx], child[(cz + 1) * SIZE + cx + 1]);
+                        assertEquals(Integer.toHexString(expected), Integer.toHexString(actual),
+                                "pixel " + x + "," + z + " of quadrant " + quadrantX + "," + quadrantZ);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-channel scalar average: plain rounded mean when all four are opaque,
+     * otherwise colors weighted by alpha and alpha averaged.
+     */
+    private static int reference(int... pixels) {
+        int alpha = 0;
+        for (int p : pixels) {
+            alpha += p >>> 24;
+        }
+        if (alpha == 4 * 255) {
+            int result = 0xFF000000;
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int sum = 0;
+                for (int p : pixels) {
+                    sum += (p >> shift) & 0xFF;
+                }
+                result |= Math.round(sum / 4.0f) << shift;
+            }
+            return result;
+        }
+        if (alpha == 0) {
+            return 0;
+        }
+        int result = Math.round(alpha / 4.0f) << 24;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            long weighted = 0;
+            for (int p : pixels) {
+                weighted += (long) (p >>> 24) * ((p >> shift) & 0xFF);
+            }
+            result |= (int) Math.round((double) weighted / alpha) << shift;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirtyTileTrackerTest {
+    private static final String WORLD = "world";
+
+    private final DirtyTileTracker tracker = new DirtyTileTracker();
+
+    @Test
+    void chunkMapsToContainingTileAtEveryZoom() {
+        tracker.markChunkDirty(WORLD, -1, 33, 0);
+        tracker.markChunkDirty(WORLD, -1, 33, 1);
+        tracker.markChunkDirty(WORLD, -1, 33, 3);
+
+        assertTrue(tracker.isDirty(new TileCoord(WORLD, 0, -1, 1)));
+        assertTrue(tracker.isDirty(new TileCoord(WORLD, 1, -1, 0)));
+        assertTrue(tracker.isDirty(new TileCoord(WORLD, 3, -1, 0)));
+        assertEquals(3, tracker.getDirtyCount());
+    }
+
+    @Test
+    void recordsChunksWithinZoomZeroTile() {
+        TileCoord tile = new TileCoord(WORLD, 0, -1, 1);
+        tracker.markChunkDirty(WORLD, -1, 33, 0);  // x 31, z 1 within the tile
+        tracker.markChunkDirty(WORLD, -32, 63, 0); // x 0, z 31
+        tracker.markChunkDirty(WORLD, -1, 33, 0);
+
+        assertArrayEquals(new int[] {(1 << 5) | 31, 31 << 5}, tracker.takeDirtyChunks(tile));
+        // Taken once; the tile itself stays dirty until marked clean
+        assertNull(tracker.takeDirtyChunks(tile));
+        assertTrue(tracker.isDirty(tile));
+    }
+
+    @Test
+    void higherZoomsRecordNoChunks() {
+        tracker.markChunkDirty(WORLD, 5, 5, 2);
+        assertNull(tracker.takeDirtyChunks(new TileCoord(WORLD, 2, 0, 0)));
+        assertNull(tracker.takeDirtyChunks(new TileCoord(WORLD, 0, 0, 0)));
+    }
+
+    @Test
+    void wholeTileOverridesChunks() {
+        TileCoord tile = new TileCoord(WORLD, 0, 0, 0);
+        tracker.markChunkDirty(WORLD, 3, 4, 0);
+        tracker.markTileDirty(tile);
+        tracker.markChunkDirty(WORLD, 5, 6, 0);
+
+        assertNull(tracker.takeDirtyChunks(tile));
+        assertTrue(tracker.isDirty(tile));
+
+        // After the whole-tile mark is taken, chunks are tracked again
+        tracker.markChunkDirty(WORLD, 5, 6, 0);
+        assertArrayEquals(new int[] {(6 << 5) | 5}, tracker.takeDirtyChunks(tile));
+    }
+
+    @Test
+    void cleanAndDrain() {
+        TileCoord a = new TileCoord(WORLD, 0, 0, 0);
+        TileCoord b = new TileCoord("world_nether", 0, 0, 0);
+        tracker.markDirtyBatch(Set.of(a, b));
+
+        tracker.markClean(a);
+        assertFalse(tracker.isDirty(a));
+        assertEquals(Set.of(b), tracker.getDirtyAndClear());
+        assertEquals(0, tracker.getDirtyCount());
+
+        tracker.markChunkDirty(WORLD, 1, 1, 0);
+        tracker.clear();
+        assertEquals(0, tracker.getDirtyCount());
+        assertNull(tracker.takeDirtyChunks(a));
+    }
+
+    @Test
+    void concurrentMarksAreNotLost() throws Exception {
+        TileCoord tile = new TileCoord(WORLD, 0, 0, 0);
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // Each thread marks every 4th chunk of the tile
+                    for (int index = first; index < 1024; index += threads) {
+                        tracker.markChunkDirty(WORLD, index & 31, index >> 5, 0);
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int[] chunks = tracker.takeDirtyChunks(tile);
+        assertEquals(1024, chunks.length);
+        for (int i = 0; i < chunks.length; i++) {
+            assertEquals(i, chunks[i]);
+        }
+    }
+}
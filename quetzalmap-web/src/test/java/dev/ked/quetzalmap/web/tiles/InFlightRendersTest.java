@@ -0,0 +1,179 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler;
+import dev.ked.quetzalmap.web.scheduler.RenderScheduler.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightRendersTest {
+    private static final String WORLD = "world";
+    private static final TileCoord COORD = new TileCoord(WORLD, 0, 1, 2);
+
+    private final RenderScheduler scheduler = new RenderScheduler(1);
+    private final InFlightRenders renders = new InFlightRenders(scheduler);
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void concurrentCallersShareOneRender() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Tile> source = new CompletableFuture<>();
+
+        CompletableFuture<Tile> first = renders.join(COORD, Priority.INTERACTIVE, () -> {
+            calls.incrementAndGet();
+            return source;
+        });
+        CompletableFuture<Tile> second = renders.join(COORD, Priority.INTERACTIVE, () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        assertEquals(1, calls.get());
+        assertEquals(1, renders.size());
+
+        Tile tile = new Tile(COORD);
+        source.complete(tile);
+        assertSame(tile, first.get(1, TimeUnit.SECONDS));
+        assertSame(tile, second.get(1, TimeUnit.SECONDS));
+        assertEquals(0, renders.size());
+
+        InFlightRenders.InFlightStats stats = renders.getStats();
+        assertEquals(1, stats.started());
+        assertEquals(1, stats.coalesced());
+        assertEquals(0, stats.abandoned());
+    }
+
+    @Test
+    void cancellingOneTicketKeepsTheRender() throws Exception {
+        CompletableFuture<Tile> source = new CompletableFuture<>();
+        CompletableFuture<Tile> first = renders.join(COORD, Priority.INTERACTIVE, () -> source);
+        CompletableFuture<Tile> second = renders.join(COORD, Priority.INTERACTIVE, CompletableFuture::new);
+
+        first.cancel(false);
+        assertFalse(source.isCancelled());
+
+        Tile tile = new Tile(COORD);
+        source.complete(tile);
+        assertSame(tile, second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancellingEveryTicketCancelsTheRender() {
+        CompletableFuture<Tile> source = new CompletableFuture<>();
+        CompletableFuture<Tile> first = renders.join(COORD, Priority.INTERACTIVE, () -> source);
+        CompletableFuture<Tile> second = renders.join(COORD, Priority.INTERACTIVE, CompletableFuture::new);
+
+        first.cancel(false);
+        second.cancel(false);
+        assertTrue(source.isCancelled());
+        assertEquals(0, renders.size());
+        assertEquals(1, renders.getStats().abandoned());
+
+        // Cancelling again must not release twice
+        second.cancel(false);
+        assertEquals(1, renders.getStats().abandoned());
+
+        // The next caller starts a fresh render
+        CompletableFuture<Tile> fresh = new CompletableFuture<>();
+        CompletableFuture<Tile> third = renders.join(COORD, Priority.INTERACTIVE, () -> fresh);
+        assertEquals(1, renders.size());
+        assertFalse(third.isDone());
+        assertEquals(2, renders.getStats().started());
+    }
+
+    @Test
+    void failuresReachEveryTicket() {
+        CompletableFuture<Tile> source = new CompletableFuture<>();
+        CompletableFuture<Tile> first = renders.join(COORD, Priority.INTERACTIVE, () -> source);
+        CompletableFuture<Tile> second = renders.join(COORD, Priority.INTERACTIVE, CompletableFuture::new);
+
+        IllegalStateException failure = new IllegalStateException("render failed");
+        source.completeExceptionally(failure);
+        for (CompletableFuture<Tile> ticket : List.of(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> ticket.get(1, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(0, renders.size());
+
+        CompletableFuture<Tile> thrown = renders.join(COORD, Priority.INTERACTIVE, () -> {
+            throw failure;
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> thrown.get(1, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+        assertEquals(0, renders.size());
+    }
+
+    @Test
+    void abandonedRenderIsDroppedFromTheQueue() throws Exception {
+        CountDownLatch blocker = blockWorker();
+        AtomicBoolean ran = new AtomicBoolean();
+
+        CompletableFuture<Tile> ticket = renders.join(COORD, Priority.INTERACTIVE,
+                () -> scheduler.submit(Priority.INTERACTIVE, WORLD, () -> {
+                    ran.set(true);
+                    return new Tile(COORD);
+                }));
+        ticket.cancel(false);
+        blocker.countDown();
+
+        // Queued after the render, so once it ran the render had its turn
+        scheduler.submit(Priority.INTERACTIVE, WORLD, () -> null).get(5, TimeUnit.SECONDS);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void higherPriorityCallerPromotesQueuedRender() throws Exception {
+        CountDownLatch blocker = blockWorker();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Boolean> other = scheduler.submit(Priority.PREGEN, WORLD, () -> order.add("other"));
+        CompletableFuture<Tile> pregen = renders.join(COORD, Priority.PREGEN,
+                () -> scheduler.submit(Priority.PREGEN, WORLD, () -> {
+                    order.add("render");
+                    return new Tile(COORD);
+                }));
+        CompletableFuture<Tile> interactive = renders.join(COORD, Priority.INTERACTIVE, CompletableFuture::new);
+
+        blocker.countDown();
+        assertInstanceOf(Tile.class, interactive.get(5, TimeUnit.SECONDS));
+        assertSame(interactive.get(), pregen.get(5, TimeUnit.SECONDS));
+        other.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("render", "other"), order);
+    }
+
+    /**
+     * Occupy the scheduler's only worker until the returned latch is released.
+     */
+    private CountDownLatch blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        scheduler.submit(Priority.INTERACTIVE, WORLD, () -> {
+            started.countDown();
+            try {
+                return blocker.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocker;
+    }
+}
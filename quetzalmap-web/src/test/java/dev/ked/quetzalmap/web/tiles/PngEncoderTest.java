@@ -0,0 +1,302 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static dev.ked.quetzalmap.web.tiles.TestImages.SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PngEncoderTest {
+    private static final int MAX_IDAT_DATA = 64 * 1024;
+
+    @Test
+    void writesIndexedPngForUpTo256Colors() throws IOException {
+        int[] pixels = TestImages.paletted(new Random(24), 256);
+        Png png = Png.parse(encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL), pixels, SIZE, SIZE));
+
+        assertEquals(PngEncoder.COLOR_INDEXED, png.colorType());
+        assertEquals(List.of(PngEncoder.IHDR, PngEncoder.PLTE, PngEncoder.TRNS), png.types().subList(0, 3));
+        assertEquals(256 * 3, png.chunk(PngEncoder.PLTE).length);
+
+        // tRNS covers exactly the translucent entries, which come first
+        long translucent = Arrays.stream(pixels).distinct().filter(p -> p >>> 24 != 0xFF).count();
+        byte[] trns = png.chunk(PngEncoder.TRNS);
+        assertEquals(translucent, trns.length);
+        for (byte alpha : trns) {
+            assertTrue((alpha & 0xFF) != 0xFF);
+        }
+        assertEquals(SIZE * (1 + SIZE), png.inflate().length);
+    }
+
+    @Test
+    void opaquePaletteHasNoTrns() throws IOException {
+        int[] pixels = TestImages.paletted(new Random(25), 40);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
+        Png png = Png.parse(encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL), pixels, SIZE, SIZE));
+        assertEquals(PngEncoder.COLOR_INDEXED, png.colorType());
+        assertEquals(List.of(PngEncoder.IHDR, PngEncoder.PLTE, PngEncoder.IDAT), png.types().subList(0, 3));
+    }
+
+    @Test
+    void writesRgbaPast256Colors() throws IOException {
+        int[] pixels = TestImages.paletted(new Random(26), 256);
+        pixels[pixels.length - 1] = 0xFF123457; // the 257th color
+        Png png = Png.parse(encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL), pixels, SIZE, SIZE));
+
+        assertEquals(PngEncoder.COLOR_RGBA, png.colorType());
+        assertEquals(SIZE * (1 + SIZE * 4), png.inflate().length);
+        assertArrayEquals(pixels, decode(png.bytes(), SIZE, SIZE));
+    }
+
+    @Test
+    void chunksAreWellFormed() throws IOException {
+        for (int level : new int[] {0, 1, 9}) {
+            Png png = Png.parse(encode(new PngEncoder(level), TestImages.trueColor(new Random(level)), SIZE, SIZE));
+            // Store-only level 0 needs several IDATs for a full RGBA tile
+            assertTrue(png.types().stream().filter(t -> t == PngEncoder.IDAT).count() > (level == 0 ? 1 : 0));
+            for (Png.Chunk chunk : png.chunks()) {
+                if (chunk.type() == PngEncoder.IDAT) {
+                    assertTrue(chunk.data().length <= MAX_IDAT_DATA);
+                }
+            }
+            assertEquals(PngEncoder.IEND, png.types().get(png.types().size() - 1));
+        }
+    }
+
+    @Test
+    void encodesOddSizes() throws IOException {
+        Random random = new Random(27);
+        for (int[] size : new int[][] {{1, 1}, {3, 200}, {100, 37}, {700, 5}}) {
+            int width = size[0];
+            int height = size[1];
+            int[] rgba = new int[width * height];
+            int[] indexed = new int[width * height];
+            for (int i = 0; i < rgba.length; i++) {
+                rgba[i] = random.nextInt();
+                indexed[i] = 0xFF000000 | random.nextInt(3) * 0x404040;
+            }
+            for (int[] pixels : List.of(rgba, indexed)) {
+                byte[] png = encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL), pixels, width, height);
+                assertArrayEquals(pixels, decode(png, width, height), width + "x" + height);
+            }
+        }
+    }
+
+    @Test
+    void bandedEncodingMatchesUnbanded() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random random = new Random(28);
+            // 200 rows split into three uneven bands
+            for (int height : new int[] {SIZE, 200}) {
+                int[] rgba = new int[SIZE * height];
+                System.arraycopy(TestImages.trueColor(random), 0, rgba, 0, rgba.length);
+                int[] indexed = new int[SIZE * height];
+                System.arraycopy(TestImages.paletted(random, 200), 0, indexed, 0, indexed.length);
+
+                for (int[] pixels : List.of(rgba, indexed)) {
+                    for (int level : new int[] {1, PngEncoder.DEFAULT_LEVEL}) {
+                        PngEncoder encoder = new PngEncoder(level, 4);
+                        byte[] unbanded = encode(new PngEncoder(level), pixels, SIZE, height);
+                        byte[] banded = encodeOn(pool, encoder, pixels, height);
+                        assertFalse(Arrays.equals(unbanded, banded), "encoded without bands");
+
+                        // Inflater checks the combined Adler-32 against the whole stream
+                        byte[] raw = Png.parse(banded).inflate();
+                        assertArrayEquals(Png.parse(unbanded).inflate(), raw, "filtered rows, level " + level);
+                        assertArrayEquals(pixels, decode(banded, SIZE, height), "level " + level);
+
+                        // Again on the same pool, reusing the workers' pooled deflaters
+                        assertArrayEquals(banded, encodeOn(pool, encoder, pixels, height), "level " + level);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void encodesWithoutBandsOutsideDedicatedPools() throws Exception {
+        int[] pixels = TestImages.trueColor(new Random(29));
+        byte[] unbanded = encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL), pixels, SIZE, SIZE);
+        PngEncoder banded = new PngEncoder(PngEncoder.DEFAULT_LEVEL, 4);
+
+        assertArrayEquals(unbanded, encode(banded, pixels, SIZE, SIZE));
+        assertArrayEquals(unbanded, encodeOn(ForkJoinPool.commonPool(), banded, pixels, SIZE));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Stored blocks and short images are not split either
+            byte[] stored = encode(new PngEncoder(0), pixels, SIZE, SIZE);
+            assertArrayEquals(stored, encodeOn(pool, new PngEncoder(0, 4), pixels, SIZE));
+            int[] shortImage = Arrays.copyOf(pixels, SIZE * 100);
+            assertArrayEquals(encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL), shortImage, SIZE, 100),
+                    encodeOn(pool, banded, shortImage, 100));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void combinesAdler32() {
+        Random random = new Random(30);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[random.nextInt(200_000)];
+            random.nextBytes(data);
+            if (i % 2 == 0) {
+                // Long runs of 0xFF push the sums towards the modulus
+                Arrays.fill(data, 0, data.length / 2, (byte) 0xFF);
+            }
+            // Empty pieces at either end and in the middle
+            int split = switch (i % 4) {
+                case 0 -> 0;
+                case 1 -> data.length;
+                default -> random.nextInt(data.length + 1);
+            };
+
+            Adler32 first = new Adler32();
+            first.update(data, 0, split);
+            Adler32 second = new Adler32();
+            second.update(data, split, data.length - split);
+            Adler32 whole = new Adler32();
+            whole.update(data);
+
+            assertEquals(whole.getValue(),
+                    PngEncoder.combineAdler32(first.getValue(), second.getValue(), data.length - split),
+                    "split " + split + " of " + data.length);
+        }
+    }
+
+    @Test
+    void rejectsBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new PngEncoder(10));
+        assertThrows(IllegalArgumentException.class, () -> new PngEncoder(-1));
+        assertThrows(IllegalArgumentException.class, () -> new PngEncoder(6, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PngEncoder(6).encode(new int[10], 3, 3, new ByteArrayOutputStream()));
+    }
+
+    static byte[] encode(PngEncoder encoder, int[] pixels, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(pixels, width, height, out);
+        return out.toByteArray();
+    }
+
+    static byte[] encodeOn(ForkJoinPool pool, PngEncoder encoder, int[] pixels, int height)
+            throws InterruptedException, ExecutionException {
+        return pool.submit(() -> encode(encoder, pixels, SIZE, height)).get();
+    }
+
+    static int[] decode(byte[] png, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * A parsed PNG with every chunk CRC checked.
+     */
+    record Png(byte[] bytes, List<Chunk> chunks) {
+        record Chunk(int type, byte[] data) {
+        }
+
+        static Png parse(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            assertEquals(0x89504E470D0A1A0AL, buffer.getLong(), "signature");
+            List<Chunk> chunks = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                int length = buffer.getInt();
+                int type = buffer.getInt();
+                byte[] data = new byte[length];
+                buffer.get(data);
+
+                CRC32 crc = new CRC32();
+                crc.update(bytes, buffer.position() - length - 4, length + 4);
+                assertEquals((int) crc.getValue(), buffer.getInt(), "CRC of " + Integer.toHexString(type));
+                chunks.add(new Chunk(type, data));
+            }
+            return new Png(bytes, chunks);
+        }
+
+        List<Integer> types() {
+            return chunks.stream().map(Chunk::type).toList();
+        }
+
+        byte[] chunk(int type) {
+            return chunks.stream().filter(c -> c.type() == type).findFirst().orElseThrow().data();
+        }
+
+        int colorType() {
+            return chunk(PngEncoder.IHDR)[9];
+        }
+
+        /**
+         * The concatenated IDAT data as one zlib stream.
+         */
+        byte[] zlib() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (Chunk chunk : chunks) {
+                if (chunk.type() == PngEncoder.IDAT) {
+                    out.writeBytes(chunk.data());
+                }
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Inflate the image data. Inflater checks the zlib trailer, so a wrong
+         * Adler-32 fails here; the trailer is compared with a fresh checksum too.
+         */
+        byte[] inflate() {
+            byte[] zlib = zlib();
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(zlib);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[64 * 1024];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new AssertionError("Image data ends before the zlib stream does");
+                    }
+                    out.write(buffer, 0, n);
+                }
+                assertEquals(0, inflater.getRemaining(), "data after the zlib stream");
+
+                byte[] raw = out.toByteArray();
+                Adler32 adler = new Adler32();
+                adler.update(raw);
+                assertEquals((int) adler.getValue(), ByteBuffer.wrap(zlib).getInt(zlib.length - 4), "Adler-32");
+                return raw;
+            } catch (DataFormatException e) {
+                throw new AssertionError("Invalid zlib stream: " + e.getMessage(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
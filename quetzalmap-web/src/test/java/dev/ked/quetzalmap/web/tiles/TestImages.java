@@ -0,0 +1,53 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import java.util.Random;
+
+/**
+ * Tile-sized test images.
+ */
+final class TestImages {
+    static final int SIZE = Tile.TILE_SIZE;
+
+    private TestImages() {
+    }
+
+    /**
+     * Map-like image with {@code colors} (at most 256) distinct colors in
+     * blocky runs, including fully transparent and translucent ones, so it
+     * encodes as indexed.
+     */
+    static int[] paletted(Random random, int colors) {
+        int[] palette = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            int alpha = i == 0 ? 0 : i % 7 == 0 ? 0x80 : 0xFF;
+            palette[i] = alpha << 24 | (i * 0x010305 + random.nextInt(2)) & 0xFFFFFF;
+        }
+        int[] pixels = new int[SIZE * SIZE];
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                // 4×4 blocks, shifting every few rows so filters and matches both matter
+                pixels[z * SIZE + x] = palette[((x >> 2) * 31 + (z >> 2) * 17 + (z >> 5)) % colors];
+            }
+        }
+        // Make sure every entry appears
+        System.arraycopy(palette, 0, pixels, 0, colors);
+        return pixels;
+    }
+
+    /**
+     * Smooth gradients with noise and varying alpha: far more than 256 colors, so it encodes as RGBA.
+     */
+    static int[] trueColor(Random random) {
+        int[] pixels = new int[SIZE * SIZE];
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int alpha = x < 16 ? 0 : z < 16 ? x & 0xFF : 0xFF;
+                int r = (x / 2 + random.nextInt(4)) & 0xFF;
+                int g = (z / 2 + random.nextInt(4)) & 0xFF;
+                int b = (x + z) / 4 & 0xFF;
+                pixels[z * SIZE + x] = alpha << 24 | r << 16 | g << 8 | b;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,86 @@
+package dev.ked.quetzalmap.web.tiles;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static dev.ked.quetzalmap.web.tiles.TestImages.SIZE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TileCodecTest {
+    private static final TileCoord COORD = new TileCoord("world", 0, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsIndexedTiles() throws IOException {
+        for (int colors : new int[] {1, 2, 16, 200, 256}) {
+            assertRoundTrip(TestImages.paletted(new Random(colors), colors));
+        }
+    }
+
+    @Test
+    void roundTripsTrueColorTiles() throws IOException {
+        assertRoundTrip(TestImages.trueColor(new Random(23)));
+    }
+
+    @Test
+    void roundTripsEmptyTile() throws IOException {
+        assertRoundTrip(new int[SIZE * SIZE]);
+    }
+
+    @Test
+    void readsOtherPngsThroughImageIO() throws IOException {
+        // 8-bit RGB without alpha: not a format tiles are written in
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = TestImages.trueColor(new Random(5));
+        image.setRGB(0, 0, SIZE, SIZE, rgb, 0, SIZE);
+        Path file = directory.resolve("rgb.png");
+        ImageIO.write(image, "png", file.toFile());
+
+        int[] expected = Arrays.stream(rgb).map(p -> 0xFF000000 | p).toArray();
+        assertArrayEquals(expected, TileCodec.read(file));
+    }
+
+    @Test
+    void rejectsWrongSizeAndNonImages() throws IOException {
+        Path small = directory.resolve("small.png");
+        ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB), "png", small.toFile());
+        assertThrows(IOException.class, () -> TileCodec.read(small));
+
+        Path garbage = directory.resolve("garbage.png");
+        Files.write(garbage, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        assertNull(TileCodec.read(garbage));
+    }
+
+    @Test
+    void rejectsTruncatedTiles() throws IOException {
+        Path file = directory.resolve("tile.png");
+        TileCodec.write(new Tile(COORD, TestImages.trueColor(new Random(6))), file, new PngEncoder(PngEncoder.DEFAULT_LEVEL));
+        byte[] png = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(png, png.length / 2));
+        assertThrows(IOException.class, () -> TileCodec.read(file));
+    }
+
+    private void assertRoundTrip(int[] pixels) throws IOException {
+        for (int level : new int[] {0, 1, PngEncoder.DEFAULT_LEVEL, 9}) {
+            Path file = directory.resolve("tile-" + level + ".png");
+            TileCodec.write(new Tile(COORD, pixels.clone()), file, new PngEncoder(level));
+
+            assertArrayEquals(pixels, TileCodec.read(file), "level " + level);
+            // Other decoders must agree
+            BufferedImage image = ImageIO.read(file.toFile());
+            assertArrayEquals(pixels, image.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE), "ImageIO, level " + level);
+        }
+    }
+}